@@ -0,0 +1,39 @@
+package com.github.vikusku.happytires.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.vikusku.happytires.dto.DayIntervalsDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes days as newline-delimited JSON, flushing after every day so the client receives them as they are read.
+ */
+@Component
+public class NdjsonWriter {
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public NdjsonWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public <T> BiConsumer<LocalDate, List<T>> dayWriter(final OutputStream outputStream) {
+        return (date, intervals) -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(new DayIntervalsDto<>(date, intervals)));
+                outputStream.write('\n');
+                outputStream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
@@ -2,19 +2,31 @@ package com.github.vikusku.happytires.controller;
 
 import com.github.vikusku.happytires.dto.ReservableIntervalDto;
 import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.service.AvailabilitySearchService;
+import com.github.vikusku.happytires.service.AvailabilityVersionService;
 import com.github.vikusku.happytires.service.ReservableIntervalsService;
+import com.github.vikusku.happytires.service.SlotHoldService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.constraints.FutureOrPresent;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping(path = "/api/v1/reservable-intervals")
@@ -23,13 +35,68 @@ public class ReservableIntervalsController {
     @Autowired
     private ReservableIntervalsService reservableIntervalsService;
 
+    @Autowired
+    private AvailabilitySearchService availabilitySearchService;
+
+    @Autowired
+    private AvailabilityVersionService availabilityVersionService;
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    @Autowired
+    private NdjsonWriter ndjsonWriter;
+
     @GetMapping
     public ResponseEntity<Map<LocalDate, List<ReservableIntervalDto>>> findReservableIntervals(
+            @RequestParam @NotNull long serviceProviderId,
+            @RequestParam @NotNull ServiceType serviceType,
+            @RequestParam @NotNull @FutureOrPresent LocalDate from,
+            @RequestParam @NotNull @FutureOrPresent LocalDate until,
+            WebRequest webRequest) {
+
+        // read before the intervals, so that a concurrent write can only make the ETag older than the body
+        final String eTag = availabilityVersionService.eTag(serviceProviderId, from, until, serviceType,
+                slotHoldService.version(serviceProviderId));
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(reservableIntervalsService.findReservableIntervals(serviceProviderId, serviceType, from, until));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamReservableIntervals(
             @RequestParam @NotNull long serviceProviderId,
             @RequestParam @NotNull ServiceType serviceType,
             @RequestParam @NotNull @FutureOrPresent LocalDate from,
             @RequestParam @NotNull @FutureOrPresent LocalDate until) {
 
-        return ResponseEntity.ok(reservableIntervalsService.findReservableIntervals(serviceProviderId, serviceType, from, until));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> reservableIntervalsService.streamReservableIntervals(
+                        serviceProviderId, serviceType, from, until, ndjsonWriter.dayWriter(outputStream)));
+    }
+
+    @GetMapping(path = "/search")
+    public ResponseEntity<List<ReservableIntervalDto>> searchReservableIntervals(
+            @RequestParam @NotNull ServiceType serviceType,
+            @RequestParam @NotNull @FutureOrPresent LocalDate from,
+            @RequestParam @NotNull @FutureOrPresent LocalDate until,
+            @RequestParam(defaultValue = "100") @Min(1) @Max(1000) int limit) {
+
+        return ResponseEntity.ok(availabilitySearchService.searchReservableIntervals(serviceType, from, until, limit));
+    }
+
+    @GetMapping(path = "/next-available")
+    public ResponseEntity<List<ReservableIntervalDto>> findNextAvailable(
+            @RequestParam @NotNull ServiceType serviceType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(defaultValue = "1") @Min(1) @Max(100) int count) {
+
+        return ResponseEntity.ok(availabilitySearchService.findNextAvailable(
+                serviceType, Optional.ofNullable(from).orElseGet(LocalDateTime::now), count));
     }
 }
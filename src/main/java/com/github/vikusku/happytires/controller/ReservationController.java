@@ -1,9 +1,13 @@
 package com.github.vikusku.happytires.controller;
 
+import com.github.vikusku.happytires.dto.BulkReservationDto;
+import com.github.vikusku.happytires.dto.BulkReservationResultDto;
 import com.github.vikusku.happytires.dto.ReservationDto;
 import com.github.vikusku.happytires.model.Reservation;
+import com.github.vikusku.happytires.service.IdempotencyService;
 import com.github.vikusku.happytires.service.ReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
@@ -16,9 +20,14 @@ import java.net.URI;
 @RequestMapping(path = "/api/v1/reservations")
 public class ReservationController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Autowired
     private ReservationService reservationService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @GetMapping("/{id}")
     public ResponseEntity<ReservationDto> get(@PathVariable long id) {
         return reservationService.get(id)
@@ -27,24 +36,36 @@ public class ReservationController {
     }
 
     @PostMapping(consumes = "application/json", produces = "application/json")
-    public ResponseEntity<ReservationDto> create(@Valid @NotNull @RequestBody final ReservationDto reservationDto) {
-        return reservationService.create(reservationDto).map(persisted -> {
-            URI uri = ServletUriComponentsBuilder.fromCurrentRequest()
-                    .path("/{id}")
-                    .buildAndExpand(persisted.getId())
-                    .toUri();
+    public ResponseEntity<ReservationDto> create(@Valid @NotNull @RequestBody final ReservationDto reservationDto,
+                                                 @RequestParam(required = false) final String holdId,
+                                                 @RequestHeader(name = IDEMPOTENCY_KEY, required = false) final String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute(idempotencyKey, "POST /api/v1/reservations?holdId=" + holdId,
+                    reservationDto, ReservationDto.class, () -> create(reservationDto, holdId));
+        }
+        return create(reservationDto, holdId);
+    }
 
-            return ResponseEntity.created(uri).body(persisted);
-        }).orElseGet(() -> ResponseEntity.notFound().build());
+    @PostMapping(path = "/bulk", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<BulkReservationResultDto> createAll(@Valid @NotNull @RequestBody final BulkReservationDto bulkReservationDto) {
+        final BulkReservationResultDto result = reservationService.createAll(
+                bulkReservationDto.getReservations(), bulkReservationDto.getMode());
+
+        if (result.getCreated() == 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+        }
+        return ResponseEntity.status(result.getRejected() == 0 ? HttpStatus.CREATED : HttpStatus.OK).body(result);
     }
 
     @PutMapping(path = "/{id}", consumes = "application/json", produces = "application/json")
     public ResponseEntity<ReservationDto> update(
-            @PathVariable  long id, @Valid @NotNull @RequestBody final ReservationDto reservationDto) {
-
-        return reservationService.update(id, reservationDto)
-                .map(ResponseEntity::ok)
-                .orElseGet(() -> ResponseEntity.notFound().build());
+            @PathVariable  long id, @Valid @NotNull @RequestBody final ReservationDto reservationDto,
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) final String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotencyService.execute(idempotencyKey, "PUT /api/v1/reservations/" + id,
+                    reservationDto, ReservationDto.class, () -> update(id, reservationDto));
+        }
+        return update(id, reservationDto);
     }
 
     @DeleteMapping("/{id}")
@@ -53,4 +74,21 @@ public class ReservationController {
 
         return ResponseEntity.noContent().build();
     }
+
+    private ResponseEntity<ReservationDto> create(final ReservationDto reservationDto, final String holdId) {
+        return reservationService.create(reservationDto, holdId).map(persisted -> {
+            URI uri = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                    .path("/{id}")
+                    .buildAndExpand(persisted.getId())
+                    .toUri();
+
+            return ResponseEntity.created(uri).body(persisted);
+        }).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<ReservationDto> update(final long id, final ReservationDto reservationDto) {
+        return reservationService.update(id, reservationDto)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 }
@@ -1,12 +1,25 @@
 package com.github.vikusku.happytires.controller;
 
 import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.dto.DaySummaryDto;
+import com.github.vikusku.happytires.dto.ScheduleImportStatusDto;
 import com.github.vikusku.happytires.dto.ScheduleIntervalDto;
+import com.github.vikusku.happytires.dto.ScheduleTemplateDto;
+import com.github.vikusku.happytires.service.AvailabilityVersionService;
+import com.github.vikusku.happytires.service.ScheduleImportService;
 import com.github.vikusku.happytires.service.ScheduleService;
+import com.github.vikusku.happytires.service.ScheduleTemplateService;
+import com.github.vikusku.happytires.service.TimeSlotArchiver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.Valid;
 import javax.validation.constraints.FutureOrPresent;
@@ -25,8 +38,49 @@ public class ScheduleController {
     @Autowired
     private ScheduleService scheduleService;
 
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private AvailabilityVersionService availabilityVersionService;
+
+    @Autowired
+    private ScheduleImportService scheduleImportService;
+
+    @Autowired
+    private TimeSlotArchiver timeSlotArchiver;
+
+    @Autowired
+    private NdjsonWriter ndjsonWriter;
+
     @GetMapping(path = "{/serviceProviderId}")
     public ResponseEntity<Map<LocalDate, List<ScheduleIntervalDto>>> getScheduleForServiceProvider(
+            @PathVariable long serviceProviderId,
+            @Valid
+            @FutureOrPresent
+            @RequestParam
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    LocalDate from,
+            @Valid
+            @FutureOrPresent
+            @RequestParam
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                    LocalDate until,
+            WebRequest webRequest) {
+
+        // read before the schedule, so that a concurrent write can only make the ETag older than the body
+        final String eTag = availabilityVersionService.eTag(serviceProviderId, from, until);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .body(scheduleService.getScheduleForServiceProvider(serviceProviderId, from, until));
+    }
+
+    @GetMapping(path = "{/serviceProviderId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamScheduleForServiceProvider(
             @PathVariable long serviceProviderId,
             @Valid
             @FutureOrPresent
@@ -39,8 +93,10 @@ public class ScheduleController {
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
                     LocalDate until) {
 
-        return ResponseEntity.ok(
-                scheduleService.getScheduleForServiceProvider(serviceProviderId, from, until));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(outputStream -> scheduleService.streamScheduleForServiceProvider(
+                        serviceProviderId, from, until, ndjsonWriter.dayWriter(outputStream)));
     }
 
     @PostMapping(path = "{/serviceProviderId}")
@@ -60,4 +116,53 @@ public class ScheduleController {
         scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
         return ResponseEntity.noContent().build();
     }
+
+    @GetMapping(path = "/{serviceProviderId}/template")
+    public ResponseEntity<ScheduleTemplateDto> getScheduleTemplate(@PathVariable long serviceProviderId) {
+        return scheduleTemplateService.getTemplate(serviceProviderId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PutMapping(path = "/{serviceProviderId}/template")
+    public ResponseEntity<Void> saveScheduleTemplate(
+            @PathVariable long serviceProviderId,
+            @Valid @NotNull @RequestBody ScheduleTemplateDto template) {
+
+        scheduleTemplateService.saveTemplate(serviceProviderId, template);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping(path = "/{serviceProviderId}/template")
+    public ResponseEntity<Void> deleteScheduleTemplate(@PathVariable long serviceProviderId) {
+        scheduleTemplateService.deleteTemplate(serviceProviderId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping(path = "/{serviceProviderId}/history")
+    public ResponseEntity<List<DaySummaryDto>> getScheduleHistory(
+            @PathVariable long serviceProviderId,
+            @RequestParam @NotNull LocalDate from,
+            @RequestParam @NotNull LocalDate until) {
+
+        return ResponseEntity.ok(timeSlotArchiver.findDaySummaries(serviceProviderId, from, until));
+    }
+
+    @PostMapping(path = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ScheduleImportStatusDto> importSchedules(@RequestParam("file") MultipartFile file) {
+        final ScheduleImportStatusDto importStatus = scheduleImportService.startImport(file);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest()
+                        .path("/{jobId}")
+                        .buildAndExpand(importStatus.getJobId())
+                        .toUri())
+                .body(importStatus);
+    }
+
+    @GetMapping(path = "/import/{jobId}")
+    public ResponseEntity<ScheduleImportStatusDto> getScheduleImportStatus(@PathVariable String jobId) {
+        return scheduleImportService.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 }
@@ -0,0 +1,44 @@
+package com.github.vikusku.happytires.controller;
+
+import com.github.vikusku.happytires.dto.SlotHoldDto;
+import com.github.vikusku.happytires.service.SlotHoldService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.net.URI;
+
+@RestController
+@RequestMapping(path = "/api/v1/slot-holds")
+public class SlotHoldController {
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    @PostMapping(consumes = "application/json", produces = "application/json")
+    public ResponseEntity<SlotHoldDto> hold(@Valid @NotNull @RequestBody final SlotHoldDto slotHoldDto) {
+        final SlotHoldDto hold = slotHoldService.hold(
+                slotHoldDto.getServiceProviderId(), slotHoldDto.getStart(), slotHoldDto.getDuration());
+        final URI uri = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{id}")
+                .buildAndExpand(hold.getId())
+                .toUri();
+
+        return ResponseEntity.created(uri).body(hold);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> release(@PathVariable final String id) {
+        return slotHoldService.release(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
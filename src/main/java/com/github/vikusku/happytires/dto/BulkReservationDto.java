@@ -0,0 +1,22 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkReservationDto {
+    @NotNull
+    private BulkReservationMode mode;
+    @NotEmpty
+    @Size(max = 500)
+    private List<@Valid @NotNull ReservationDto> reservations;
+}
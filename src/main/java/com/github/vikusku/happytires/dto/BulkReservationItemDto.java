@@ -0,0 +1,15 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkReservationItemDto {
+    private int index;
+    private BulkReservationItemStatus status;
+    private ReservationDto reservation;
+    private String error;
+}
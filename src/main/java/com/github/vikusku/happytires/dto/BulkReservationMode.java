@@ -0,0 +1,6 @@
+package com.github.vikusku.happytires.dto;
+
+public enum BulkReservationMode {
+    ALL_OR_NOTHING,
+    BEST_EFFORT
+}
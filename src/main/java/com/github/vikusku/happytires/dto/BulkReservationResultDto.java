@@ -0,0 +1,17 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkReservationResultDto {
+    private BulkReservationMode mode;
+    private int created;
+    private int rejected;
+    private List<BulkReservationItemDto> items;
+}
@@ -0,0 +1,14 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class DayIntervalsDto<T> {
+    private LocalDate date;
+    private List<T> intervals;
+}
@@ -0,0 +1,16 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DaySummaryDto {
+    private LocalDate date;
+    private long freeTimeSlots;
+    private long reservedTimeSlots;
+}
@@ -0,0 +1,7 @@
+package com.github.vikusku.happytires.dto;
+
+public enum ImportStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -6,8 +6,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.FutureOrPresent;
-import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
 import java.time.Duration;
 import java.time.LocalDateTime;
 
@@ -16,7 +16,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class ReservationDto {
     private long id;
-    @NotEmpty(message = "Service provider id cannot be null")
+    @Positive(message = "Service provider id must be positive")
     private long serviceProviderId;
     @FutureOrPresent
     private LocalDateTime start;
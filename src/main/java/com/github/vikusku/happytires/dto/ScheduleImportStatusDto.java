@@ -0,0 +1,24 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScheduleImportStatusDto {
+    private String jobId;
+    private ImportStatus status;
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long timeSlotsWritten;
+    private double rowsPerSecond;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private List<String> errors;
+}
@@ -0,0 +1,24 @@
+package com.github.vikusku.happytires.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScheduleTemplateDto {
+    @NotNull
+    private LocalDate validFrom;
+    private LocalDate validUntil;
+    @NotNull
+    private Map<DayOfWeek, List<AvailabilityIntervalDto>> weeklyIntervals;
+    private Set<LocalDate> exceptions;
+}
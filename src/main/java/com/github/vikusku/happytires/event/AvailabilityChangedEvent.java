@@ -0,0 +1,16 @@
+package com.github.vikusku.happytires.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class AvailabilityChangedEvent {
+    private final long serviceProviderId;
+    private final Set<LocalDate> dates;
+}
@@ -0,0 +1,16 @@
+package com.github.vikusku.happytires.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The provider's template was created, replaced or deleted, which changes the availability of every day it covers.
+ * Days whose stored slots changed along with it are published separately as an {@link AvailabilityChangedEvent}.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ScheduleTemplateChangedEvent {
+    private final long serviceProviderId;
+}
@@ -0,0 +1,8 @@
+package com.github.vikusku.happytires.exception;
+
+public class InvalidSlotHoldException extends RuntimeException {
+
+    public InvalidSlotHoldException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.vikusku.happytires.exception;
+
+/**
+ * The requested time slots are missing, reserved or held by someone else.
+ */
+public class TimeSlotConflictException extends ReservationPersistenceException {
+
+    public TimeSlotConflictException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,12 @@
 package com.github.vikusku.happytires.exception.advice;
 
+import com.github.vikusku.happytires.exception.IdempotencyKeyConflictException;
+import com.github.vikusku.happytires.exception.InvalidIdempotencyKeyException;
+import com.github.vikusku.happytires.exception.InvalidSlotHoldException;
 import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.github.vikusku.happytires.exception.TimeSlotConflictException;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -8,6 +14,11 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import static com.github.vikusku.happytires.exception.advice.ErrorAdviceUtil.error;
 
+/**
+ * Consulted before {@link ServiceProviderServiceErrorAdvice}, whose RuntimeException handler would otherwise turn
+ * the conflicts below into 500s.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
 @ControllerAdvice
 public class ReservationServiceErrorAdvice {
 
@@ -15,4 +26,24 @@ public class ReservationServiceErrorAdvice {
     public ResponseEntity<String> handleReservationPersistenceException(ReservationPersistenceException e) {
         return error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
     }
+
+    @ExceptionHandler({IdempotencyKeyConflictException.class})
+    public ResponseEntity<String> handleIdempotencyKeyConflictException(IdempotencyKeyConflictException e) {
+        return error(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    @ExceptionHandler({TimeSlotConflictException.class})
+    public ResponseEntity<String> handleTimeSlotConflictException(TimeSlotConflictException e) {
+        return error(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    @ExceptionHandler({InvalidSlotHoldException.class})
+    public ResponseEntity<String> handleInvalidSlotHoldException(InvalidSlotHoldException e) {
+        return error(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    @ExceptionHandler({InvalidIdempotencyKeyException.class})
+    public ResponseEntity<String> handleInvalidIdempotencyKeyException(InvalidIdempotencyKeyException e) {
+        return error(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
 }
@@ -1,6 +1,8 @@
 package com.github.vikusku.happytires.exception.advice;
 
 import com.github.vikusku.happytires.exception.InvalidScheduleException;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -8,14 +10,14 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import static com.github.vikusku.happytires.exception.advice.ErrorAdviceUtil.error;
 
+/**
+ * Consulted before the other advices, as the first advice with a matching handler wins and
+ * {@link ServiceProviderServiceErrorAdvice} maps every RuntimeException to 500.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
 @ControllerAdvice
 public class TimeSlotServiceErrorAdvice {
 
-    @ExceptionHandler({RuntimeException.class})
-    public ResponseEntity<String> handleRuntimeException(RuntimeException e) {
-        return  error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
-    }
-
     @ExceptionHandler({InvalidScheduleException.class})
     public ResponseEntity<String> handleInvalidScheduleException(InvalidScheduleException e) {
         return error(HttpStatus.CONFLICT, e.getMessage());
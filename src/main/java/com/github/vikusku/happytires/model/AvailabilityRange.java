@@ -0,0 +1,65 @@
+package com.github.vikusku.happytires.model;
+
+import com.google.common.base.Objects;
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Run of adjacent time slots of one provider-day, either free or all held by the same reservation, stored as
+ * [startMinute, endMinute) minutes of the day. Ranges are a read-side cache derived from the {@link TimeSlot} rows,
+ * which stay the store of record, so the provider and reservation are plain ids rather than associations. Whether
+ * the ranges of a day are current is tracked by its {@link AvailabilityVersion}.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(indexes = @Index(name = "idx_availability_range_provider_date", columnList = "serviceProviderId, date"))
+public class AvailabilityRange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", updatable = false, nullable = false)
+    private long id;
+    @Column(nullable = false)
+    private long serviceProviderId;
+    @Column(nullable = false)
+    private LocalDate date;
+    private int startMinute;
+    private int endMinute;
+    private Long reservationId;
+
+    public LocalDateTime getStart() {
+        return LocalDateTime.of(date, LocalTime.MIN).plusMinutes(startMinute);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AvailabilityRange that = (AvailabilityRange) o;
+        return startMinute == that.startMinute &&
+                endMinute == that.endMinute &&
+                Objects.equal(date, that.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(date, startMinute, endMinute);
+    }
+
+    @Override
+    public String toString() {
+        return "AvailabilityRange{" +
+                "id=" + id +
+                ", date=" + date +
+                ", startMinute=" + startMinute +
+                ", endMinute=" + endMinute +
+                ", reservationId=" + reservationId +
+                '}';
+    }
+}
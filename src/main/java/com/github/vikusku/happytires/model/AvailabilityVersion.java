@@ -0,0 +1,28 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Monotonically increasing version of the availability of one provider-day, bumped on every write that changes it.
+ * Days without a row are at version 0. {@code rangeVersion} is the version the day's {@link AvailabilityRange}s were
+ * built at; ranges of a day where the two differ are stale.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Entity
+@Table
+@IdClass(AvailabilityVersionPK.class)
+public class AvailabilityVersion {
+    @Id
+    private long serviceProviderId;
+    @Id
+    private LocalDate date;
+    private long version;
+    private long rangeVersion;
+}
@@ -0,0 +1,34 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a request sent with an Idempotency-Key, replayed to retries of the same request until it expires. A
+ * status of 0 marks a request still being processed; its claim expires at lockedUntil, after which a retry may take
+ * the key over.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Entity
+@Table
+public class IdempotencyRecord {
+    @Id
+    @Column(length = 255)
+    private String idempotencyKey;
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+    private int status;
+    @Column(length = 2048)
+    private String location;
+    @Lob
+    private String response;
+    private LocalDateTime lockedUntil;
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
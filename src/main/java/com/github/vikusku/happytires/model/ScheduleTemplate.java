@@ -0,0 +1,58 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Standing weekly working hours of a service provider, valid in [validFrom, validUntil) or open-ended when
+ * validUntil is null. Exception dates are left to the explicitly stored time slots of that date.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table
+public class ScheduleTemplate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", updatable = false, nullable = false)
+    private long id;
+    @OneToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "serviceProviderId", referencedColumnName = "id", unique = true)
+    private ServiceProvider serviceProvider;
+    @Column(nullable = false)
+    private LocalDate validFrom;
+    private LocalDate validUntil;
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "schedule_template_interval", joinColumns = @JoinColumn(name = "scheduleTemplateId"))
+    private List<TemplateInterval> intervals;
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "schedule_template_exception", joinColumns = @JoinColumn(name = "scheduleTemplateId"))
+    @Column(name = "date")
+    private Set<LocalDate> exceptionDates;
+    /**
+     * Template days before this date are stored as time slots, see {@code TimeSlotMaterializer}.
+     */
+    private LocalDate materializedUntil;
+
+    public boolean covers(final LocalDate date) {
+        return !date.isBefore(validFrom)
+                && (validUntil == null || date.isBefore(validUntil))
+                && !exceptionDates.contains(date);
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduleTemplate [id=" + id +
+                ", validFrom=" + validFrom +
+                ", validUntil=" + validUntil +
+                ", intervals=" + intervals +
+                ", exceptionDates=" + exceptionDates +
+                ", materializedUntil=" + materializedUntil + "]";
+    }
+}
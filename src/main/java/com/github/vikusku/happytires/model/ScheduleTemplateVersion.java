@@ -0,0 +1,22 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * Monotonically increasing version of the provider's template, bumped whenever it is saved or deleted. Kept apart
+ * from the template so that it survives a delete. Providers without a row are at version 0.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Entity
+@Table
+public class ScheduleTemplateVersion {
+    @Id
+    private long serviceProviderId;
+    private long version;
+}
@@ -0,0 +1,27 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.*;
+
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalTime;
+
+/**
+ * Working hours of one weekday in a {@link ScheduleTemplate}.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Embeddable
+public class TemplateInterval {
+    @Enumerated(EnumType.STRING)
+    private DayOfWeek dayOfWeek;
+    private LocalTime start;
+    private Duration duration;
+}
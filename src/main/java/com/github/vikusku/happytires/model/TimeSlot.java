@@ -24,9 +24,19 @@ public class TimeSlot {
     @JoinColumn(name = "serviceProviderId", referencedColumnName = "id")
     private ServiceProvider serviceProvider;
     private Duration duration;
-    @ManyToOne(optional = false)
+    @ManyToOne
     @JoinColumn(name = "reservationId", referencedColumnName = "id")
     private Reservation reservation;
+    /**
+     * Bumped by every write of the slot, bulk claims included, so that a stale entity is never written back.
+     */
+    @Version
+    private long version;
+
+    public TimeSlot(final LocalDateTime start, final ServiceProvider serviceProvider, final Duration duration,
+                    final Reservation reservation) {
+        this(start, serviceProvider, duration, reservation, 0L);
+    }
 
     @Override
     public String toString() {
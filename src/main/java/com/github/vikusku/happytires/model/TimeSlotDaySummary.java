@@ -0,0 +1,27 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Slot counts of an archived provider-day. Its free slots are deleted on archival, its reserved slots stay in the
+ * time slot table for the reservations' sake.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Entity
+@Table
+@IdClass(TimeSlotDaySummaryPK.class)
+public class TimeSlotDaySummary {
+    @Id
+    private long serviceProviderId;
+    @Id
+    private LocalDate date;
+    private long freeTimeSlots;
+    private long reservedTimeSlots;
+}
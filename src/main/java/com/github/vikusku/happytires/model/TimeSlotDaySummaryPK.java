@@ -0,0 +1,16 @@
+package com.github.vikusku.happytires.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class TimeSlotDaySummaryPK implements Serializable {
+    private long serviceProviderId;
+    private LocalDate date;
+}
@@ -0,0 +1,48 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.AvailabilityRange;
+import com.google.common.collect.Lists;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Inserts availability ranges with JDBC batches of {@code batchSize} rows, bypassing the persistence context, so a
+ * refresh or migration costs one round trip per batch instead of one identity insert per range.
+ */
+@Repository
+public class AvailabilityRangeBatchWriter {
+
+    private static final String INSERT_AVAILABILITY_RANGE =
+            "insert into availability_range (service_provider_id, date, start_minute, end_minute, reservation_id) " +
+                    "values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public AvailabilityRangeBatchWriter(JdbcTemplate jdbcTemplate,
+                                        @Value("${happytires.time-slot-batch-writer.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return number of inserted ranges
+     */
+    public int insert(final List<AvailabilityRange> ranges) {
+        for (List<AvailabilityRange> chunk : Lists.partition(ranges, batchSize)) {
+            jdbcTemplate.batchUpdate(INSERT_AVAILABILITY_RANGE, chunk.stream()
+                    .map(range -> new Object[]{range.getServiceProviderId(), Date.valueOf(range.getDate()),
+                            range.getStartMinute(), range.getEndMinute(), range.getReservationId()})
+                    .collect(Collectors.toList()));
+        }
+
+        return ranges.size();
+    }
+}
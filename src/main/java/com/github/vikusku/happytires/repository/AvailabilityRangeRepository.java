@@ -0,0 +1,32 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.AvailabilityRange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface AvailabilityRangeRepository extends JpaRepository<AvailabilityRange, Long> {
+
+    @Query("select ar from AvailabilityRange ar " +
+            "where ar.serviceProviderId = :serviceProviderId and ar.date >= :from and ar.date < :until " +
+            "order by ar.date, ar.startMinute")
+    List<AvailabilityRange> findAvailabilityRanges(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("from") final LocalDate from,
+            @Param("until") final LocalDate until);
+
+    @Modifying
+    @Query("delete from AvailabilityRange ar where ar.serviceProviderId = :serviceProviderId and ar.date in :dates")
+    int deleteAvailabilityRanges(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("dates") final Collection<LocalDate> dates);
+
+    @Modifying
+    @Query("delete from AvailabilityRange ar where ar.serviceProviderId = :serviceProviderId")
+    int deleteAvailabilityRanges(@Param("serviceProviderId") final long serviceProviderId);
+}
@@ -0,0 +1,49 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.AvailabilityVersion;
+import com.github.vikusku.happytires.model.AvailabilityVersionPK;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface AvailabilityVersionRepository extends JpaRepository<AvailabilityVersion, AvailabilityVersionPK> {
+
+    @Query("select v from AvailabilityVersion v " +
+            "where v.serviceProviderId = :serviceProviderId and v.date >= :from and v.date < :until")
+    List<AvailabilityVersion> findAvailabilityVersions(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("from") final LocalDate from,
+            @Param("until") final LocalDate until);
+
+    /**
+     * Starts the day at version 1 or increments it, in one statement that cannot fail on the primary key when two
+     * writers touch the same new day. Bypasses the persistence context, so it is flushed before and cleared after.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "insert into availability_version (service_provider_id, date, version, range_version) " +
+            "values (:serviceProviderId, :date, 1, 0) " +
+            "on duplicate key update version = version + 1",
+            nativeQuery = true)
+    int incrementAvailabilityVersion(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("date") final LocalDate date);
+
+    /**
+     * Marks the ranges of the days as built at their current version.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update AvailabilityVersion v set v.rangeVersion = v.version " +
+            "where v.serviceProviderId = :serviceProviderId and v.date in :dates")
+    int markAvailabilityRangesBuilt(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("dates") final Collection<LocalDate> dates);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update AvailabilityVersion v set v.rangeVersion = v.version where v.serviceProviderId = :serviceProviderId")
+    int markAvailabilityRangesBuilt(@Param("serviceProviderId") final long serviceProviderId);
+}
@@ -2,6 +2,45 @@ package com.github.vikusku.happytires.repository;
 
 import com.github.vikusku.happytires.model.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
+
+    String FIND_ID_BY_EMAIL = "select c.id from Customer c where c.email = :email";
+
+    @Query(FIND_ID_BY_EMAIL)
+    Optional<Long> findIdByEmail(@Param("email") final String email);
+
+    /**
+     * Overwrites the contact details of the customer with the id, as long as it still has the email.
+     *
+     * @return 1 when the customer was updated, 0 when it is gone or has another email
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Customer c set c.name = :name, c.address = :address, c.phoneNumber = :phoneNumber " +
+            "where c.id = :id and c.email = :email")
+    int updateDetails(
+            @Param("id") final long id,
+            @Param("name") final String name,
+            @Param("address") final String address,
+            @Param("email") final String email,
+            @Param("phoneNumber") final String phoneNumber);
+
+    /**
+     * Inserts the customer or, when the email is taken, overwrites the contact details of the existing row, in one
+     * statement that cannot fail on the unique email.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into customer (name, address, email, phone_number) values (:name, :address, :email, :phoneNumber) " +
+            "on duplicate key update name = values(name), address = values(address), phone_number = values(phone_number)",
+            nativeQuery = true)
+    int upsert(
+            @Param("name") final String name,
+            @Param("address") final String address,
+            @Param("email") final String email,
+            @Param("phoneNumber") final String phoneNumber);
 }
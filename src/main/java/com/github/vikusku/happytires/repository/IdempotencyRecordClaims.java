@@ -0,0 +1,17 @@
+package com.github.vikusku.happytires.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyRecordClaims {
+
+    /**
+     * Plain insert, so that a concurrent claim of the same key fails on the primary key instead of being merged. The
+     * claim expires with its lease; lockedUntil also identifies the claim to
+     * {@link IdempotencyRecordRepository#complete} and {@link IdempotencyRecordRepository#release}.
+     *
+     * @throws DuplicateKeyException when the key is already claimed
+     */
+    void claim(String idempotencyKey, String requestHash, LocalDateTime lockedUntil);
+}
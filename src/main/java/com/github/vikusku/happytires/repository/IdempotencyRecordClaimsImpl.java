@@ -0,0 +1,31 @@
+package com.github.vikusku.happytires.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Claims with JDBC rather than a JPA query, whose translation reports a taken key only as a generic integrity
+ * violation.
+ */
+public class IdempotencyRecordClaimsImpl implements IdempotencyRecordClaims {
+
+    private static final String CLAIM_IDEMPOTENCY_KEY =
+            "insert into idempotency_record (idempotency_key, request_hash, status, locked_until, expires_at) " +
+                    "values (?, ?, 0, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public IdempotencyRecordClaimsImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void claim(final String idempotencyKey, final String requestHash, final LocalDateTime lockedUntil) {
+        jdbcTemplate.update(CLAIM_IDEMPOTENCY_KEY, idempotencyKey, requestHash,
+                Timestamp.valueOf(lockedUntil), Timestamp.valueOf(lockedUntil));
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String>, IdempotencyRecordClaims {
+
+    /**
+     * @return 0 when the claim was taken over by a retry after its lease ran out
+     */
+    @Modifying
+    @Query("update IdempotencyRecord r set r.status = :status, r.location = :location, r.response = :response, " +
+            "r.lockedUntil = null, r.expiresAt = :expiresAt " +
+            "where r.idempotencyKey = :idempotencyKey and r.status = 0 and r.lockedUntil = :lockedUntil")
+    int complete(
+            @Param("idempotencyKey") final String idempotencyKey,
+            @Param("lockedUntil") final LocalDateTime lockedUntil,
+            @Param("status") final int status,
+            @Param("location") final String location,
+            @Param("response") final String response,
+            @Param("expiresAt") final LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r " +
+            "where r.idempotencyKey = :idempotencyKey and r.status = 0 and r.lockedUntil = :lockedUntil")
+    int release(
+            @Param("idempotencyKey") final String idempotencyKey,
+            @Param("lockedUntil") final LocalDateTime lockedUntil);
+
+    /**
+     * Deletes the record of the key only while it is expired, so that of two retries taking over the same lapsed
+     * claim only one deletes it and the other fails to insert its own claim.
+     */
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.idempotencyKey = :idempotencyKey and r.expiresAt <= :now")
+    int releaseExpired(
+            @Param("idempotencyKey") final String idempotencyKey,
+            @Param("now") final LocalDateTime now);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt < :now")
+    int deleteExpired(@Param("now") final LocalDateTime now);
+}
@@ -2,8 +2,23 @@ package com.github.vikusku.happytires.repository;
 
 import com.github.vikusku.happytires.model.Reservation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+
+    /**
+     * One statement for any number of reservations, unlike {@link #findAllById} which also loads the eager
+     * time slots of every reservation.
+     */
+    @Query("select new com.github.vikusku.happytires.repository.ReservationView(" +
+            "r.id, r.start, r.duration, r.serviceType, c.name, c.address, c.email, c.phoneNumber) " +
+            "from Reservation r join r.customer c " +
+            "where r.id in :ids")
+    List<ReservationView> findReservationViews(@Param("ids") final Collection<Long> ids);
 }
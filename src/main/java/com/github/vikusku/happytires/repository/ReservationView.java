@@ -0,0 +1,29 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.ServiceType;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Flat read-only projection of a {@link com.github.vikusku.happytires.model.Reservation} joined with its customer,
+ * loaded without the eager time slot collection of the entity.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class ReservationView {
+    private final long id;
+    private final LocalDateTime start;
+    private final Duration duration;
+    private final ServiceType serviceType;
+    private final String customerName;
+    private final String customerAddress;
+    private final String customerEmail;
+    private final String customerPhoneNumber;
+}
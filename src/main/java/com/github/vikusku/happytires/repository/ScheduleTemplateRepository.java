@@ -0,0 +1,51 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface ScheduleTemplateRepository extends JpaRepository<ScheduleTemplate, Long> {
+
+    Optional<ScheduleTemplate> findByServiceProviderId(final long serviceProviderId);
+
+    @Query("select t.serviceProvider.id from ScheduleTemplate t")
+    List<Long> findServiceProviderIds();
+
+    /**
+     * Templates valid on some day of [from, until), with their intervals and exceptions.
+     */
+    @Query("select distinct t from ScheduleTemplate t left join fetch t.intervals left join fetch t.exceptionDates " +
+            "where t.validFrom < :until and (t.validUntil is null or t.validUntil > :from)")
+    List<ScheduleTemplate> findTemplatesValidBetween(
+            @Param("from") final LocalDate from,
+            @Param("until") final LocalDate until);
+
+    /**
+     * Templates still valid after today that are not materialized up to the horizon or to their end.
+     */
+    @Query("select t.id from ScheduleTemplate t " +
+            "where (t.validUntil is null or t.validUntil > :today) " +
+            "and (t.materializedUntil is null or (t.materializedUntil < :horizon " +
+            "and (t.validUntil is null or t.materializedUntil < t.validUntil)))")
+    List<Long> findTemplateIdsToMaterialize(
+            @Param("today") final LocalDate today,
+            @Param("horizon") final LocalDate horizon);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from ScheduleTemplate t where t.id = :id")
+    Optional<ScheduleTemplate> findByIdForUpdate(@Param("id") final long id);
+
+    /**
+     * The provider's template, locked like {@link #findByIdForUpdate}.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from ScheduleTemplate t where t.serviceProvider.id = :serviceProviderId")
+    Optional<ScheduleTemplate> findByServiceProviderIdForUpdate(@Param("serviceProviderId") final long serviceProviderId);
+}
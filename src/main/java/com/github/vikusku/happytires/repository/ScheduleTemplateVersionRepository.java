@@ -0,0 +1,20 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.ScheduleTemplateVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ScheduleTemplateVersionRepository extends JpaRepository<ScheduleTemplateVersion, Long> {
+
+    /**
+     * Starts the provider at version 1 or increments it, see
+     * {@link AvailabilityVersionRepository#incrementAvailabilityVersion}.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "insert into schedule_template_version (service_provider_id, version) values (:serviceProviderId, 1) " +
+            "on duplicate key update version = version + 1",
+            nativeQuery = true)
+    int incrementScheduleTemplateVersion(@Param("serviceProviderId") final long serviceProviderId);
+}
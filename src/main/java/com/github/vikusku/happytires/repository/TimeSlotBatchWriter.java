@@ -0,0 +1,88 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.UnmodifiableIterator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Inserts new time slots with JDBC batches of {@code batchSize} rows, bypassing the persistence context. Slots are
+ * pulled from the stream one chunk at a time, so memory stays bounded by the chunk however long the schedule is.
+ * On MySQL, rewriteBatchedStatements turns each chunk into a single multi-row insert.
+ */
+@Slf4j
+@Repository
+public class TimeSlotBatchWriter {
+
+    private static final String INSERT_TIME_SLOT =
+            "insert into time_slot (start, service_provider_id, duration, reservation_id, version) values (?, ?, ?, ?, 0)";
+    private static final String CLAIM_TIME_SLOT =
+            "update time_slot set reservation_id = ?, version = version + 1 " +
+                    "where service_provider_id = ? and start = ? and reservation_id is null";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public TimeSlotBatchWriter(JdbcTemplate jdbcTemplate,
+                               @Value("${happytires.time-slot-batch-writer.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return number of inserted slots
+     */
+    public long insert(final long serviceProviderId, final Stream<TimeSlot> timeSlots) {
+        return insert(serviceProviderId, timeSlots, inserted -> { });
+    }
+
+    /**
+     * @param progress called after each chunk with the number of slots inserted so far
+     * @return number of inserted slots
+     */
+    public long insert(final long serviceProviderId, final Stream<TimeSlot> timeSlots, final LongConsumer progress) {
+        long inserted = 0;
+
+        final UnmodifiableIterator<List<TimeSlot>> chunks = Iterators.partition(timeSlots.iterator(), batchSize);
+        while (chunks.hasNext()) {
+            final List<TimeSlot> chunk = chunks.next();
+            jdbcTemplate.batchUpdate(INSERT_TIME_SLOT, chunk.stream()
+                    .map(ts -> new Object[]{Timestamp.valueOf(ts.getStart()), serviceProviderId, ts.getDuration().toNanos(),
+                            ts.getReservation() == null ? null : ts.getReservation().getId()})
+                    .collect(Collectors.toList()));
+
+            inserted += chunk.size();
+            progress.accept(inserted);
+        }
+
+        log.debug("Inserted {} time slots of service provider {} in batches of {}", inserted, serviceProviderId, batchSize);
+        return inserted;
+    }
+
+    /**
+     * Assigns free slots to their reservations with JDBC batches of {@code batchSize} updates. A slot that is no
+     * longer free is left alone; with rewriteBatchedStatements the driver may not report per-row counts, so callers
+     * verify the outcome with a count query.
+     */
+    public void claim(final List<TimeSlotClaim> claims) {
+        for (List<TimeSlotClaim> chunk : Lists.partition(claims, batchSize)) {
+            jdbcTemplate.batchUpdate(CLAIM_TIME_SLOT, chunk.stream()
+                    .map(claim -> new Object[]{claim.getReservationId(), claim.getServiceProviderId(), Timestamp.valueOf(claim.getStart())})
+                    .collect(Collectors.toList()));
+        }
+
+        log.debug("Claimed {} time slots in batches of {}", claims.size(), batchSize);
+    }
+}
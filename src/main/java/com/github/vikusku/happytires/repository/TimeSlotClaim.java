@@ -0,0 +1,21 @@
+package com.github.vikusku.happytires.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A free slot to be assigned to a reservation by {@link TimeSlotBatchWriter#claim}.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class TimeSlotClaim {
+    private final long serviceProviderId;
+    private final LocalDateTime start;
+    private final long reservationId;
+}
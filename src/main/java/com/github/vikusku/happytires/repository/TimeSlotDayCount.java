@@ -0,0 +1,14 @@
+package com.github.vikusku.happytires.repository;
+
+/**
+ * Free and reserved slots of one provider within a day, as returned by
+ * {@link TimeSlotRepository#countTimeSlotsStartingBetween}.
+ */
+public interface TimeSlotDayCount {
+
+    long getServiceProviderId();
+
+    long getFreeTimeSlots();
+
+    long getReservedTimeSlots();
+}
@@ -0,0 +1,25 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.TimeSlotDaySummary;
+import com.github.vikusku.happytires.model.TimeSlotDaySummaryPK;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface TimeSlotDaySummaryRepository extends JpaRepository<TimeSlotDaySummary, TimeSlotDaySummaryPK> {
+
+    @Query("select s from TimeSlotDaySummary s " +
+            "where s.serviceProviderId = :serviceProviderId and s.date >= :from and s.date < :until " +
+            "order by s.date")
+    List<TimeSlotDaySummary> findDaySummaries(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("from") final LocalDate from,
+            @Param("until") final LocalDate until);
+
+    @Query("select max(s.date) from TimeSlotDaySummary s")
+    Optional<LocalDate> findLastArchivedDate();
+}
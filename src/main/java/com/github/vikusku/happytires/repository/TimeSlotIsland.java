@@ -0,0 +1,14 @@
+package com.github.vikusku.happytires.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Run of adjacent free time slots within one day, as returned by
+ * {@link TimeSlotRepository#findFreeTimeSlotIslands}.
+ */
+public interface TimeSlotIsland {
+
+    LocalDateTime getStart();
+
+    long getRunLength();
+}
@@ -1,22 +1,248 @@
 package com.github.vikusku.happytires.repository;
 
-import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.Reservation;
 import com.github.vikusku.happytires.model.TimeSlot;
 import com.github.vikusku.happytires.model.TimeSlotPK;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface TimeSlotRepository extends JpaRepository<TimeSlot, TimeSlotPK> {
 
-    List<TimeSlot> findByServiceProviderAndStartAfterAndStartBefore(
-            final ServiceProvider serviceProvider,
-            final LocalDateTime after,
-            final LocalDateTime before);
+    String TIME_SLOT_VIEW_QUERY = "select new com.github.vikusku.happytires.repository.TimeSlotView(" +
+            "ts.serviceProvider.id, ts.start, ts.duration, r.id) " +
+            "from TimeSlot ts left join ts.reservation r ";
+
+    String STREAM_FETCH_SIZE = "500";
+
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id = :serviceProviderId and ts.start > :after and ts.start < :before " +
+            "order by ts.start")
+    List<TimeSlotView> findTimeSlotViews(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("after") final LocalDateTime after,
+            @Param("before") final LocalDateTime before);
+
+    /**
+     * Slots starting in [from, until), unlike the exclusive bounds of {@link #findTimeSlotViews}.
+     */
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id = :serviceProviderId and ts.start >= :from and ts.start < :until " +
+            "order by ts.start")
+    List<TimeSlotView> findTimeSlotViewsStartingBetween(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    /**
+     * Claims the slots among the starts that are free or already held by the reservation, in one statement; the
+     * whole interval was claimable if every start was matched.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update TimeSlot ts set ts.reservation = :reservation, ts.version = ts.version + 1 " +
+            "where ts.serviceProvider.id = :serviceProviderId and ts.start in :starts " +
+            "and (ts.reservation is null or ts.reservation = :reservation)")
+    int claimTimeSlots(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("starts") final Collection<LocalDateTime> starts,
+            @Param("reservation") final Reservation reservation);
+
+    /**
+     * Frees the reservation's slots among the starts, in one statement.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update TimeSlot ts set ts.reservation = null, ts.version = ts.version + 1 " +
+            "where ts.reservation = :reservation and ts.start in :starts")
+    int releaseTimeSlots(
+            @Param("reservation") final Reservation reservation,
+            @Param("starts") final Collection<LocalDateTime> starts);
+
+    /**
+     * Frees all slots of the reservation, in one statement. Clears the persistence context, so that the
+     * reservation can be removed without managed slots still pointing at it.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update TimeSlot ts set ts.reservation = null, ts.version = ts.version + 1 where ts.reservation = :reservation")
+    int releaseTimeSlots(@Param("reservation") final Reservation reservation);
+
+    @Query("select count(ts) from TimeSlot ts where ts.serviceProvider.id = :serviceProviderId and ts.start in :starts")
+    long countTimeSlots(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("starts") final Collection<LocalDateTime> starts);
+
+    @Query("select count(ts) from TimeSlot ts where ts.reservation.id in :reservationIds")
+    long countTimeSlotsOfReservations(@Param("reservationIds") final Collection<Long> reservationIds);
+
+    @Query("select count(ts) from TimeSlot ts where ts.serviceProvider.id = :serviceProviderId and ts.start in :starts " +
+            "and ts.reservation is not null")
+    long countReservedTimeSlots(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("starts") final Collection<LocalDateTime> starts);
+
+    /**
+     * Reserved slots among the starts are kept, so a delete planned from an earlier read cannot take a slot that
+     * was booked since; callers compare the returned count with the number of starts.
+     */
+    @Modifying
+    @Query("delete from TimeSlot ts where ts.serviceProvider.id = :serviceProviderId and ts.start in :starts " +
+            "and ts.reservation is null")
+    int deleteFreeTimeSlots(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("starts") final Collection<LocalDateTime> starts);
+
+    @Query("select ts.start from TimeSlot ts where ts.serviceProvider.id = :serviceProviderId and ts.reservation is null " +
+            "and ts.start >= :from and ts.start < :until")
+    List<LocalDateTime> findFreeTimeSlotStartsBetween(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    @Modifying
+    @Query("delete from TimeSlot ts where ts.serviceProvider.id = :serviceProviderId and ts.reservation is null " +
+            "and ts.start >= :from and ts.start < :until")
+    int deleteFreeTimeSlotsStartingBetween(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    @Modifying
+    @Query("delete from TimeSlot ts where ts.serviceProvider.id in :serviceProviderIds and ts.reservation is null " +
+            "and ts.start >= :from and ts.start < :until")
+    int deleteFreeTimeSlotsStartingBetween(
+            @Param("serviceProviderIds") final Collection<Long> serviceProviderIds,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    @Query("select min(ts.start) from TimeSlot ts where ts.start >= :from and ts.start < :until")
+    Optional<LocalDateTime> findFirstTimeSlotStart(
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    /**
+     * Providers with a free or reserved slot starting in [from, until), in id order after {@code afterServiceProviderId}.
+     */
+    @Query("select distinct ts.serviceProvider.id from TimeSlot ts " +
+            "where ts.serviceProvider.id > :afterServiceProviderId and ts.start >= :from and ts.start < :until " +
+            "order by ts.serviceProvider.id")
+    List<Long> findServiceProviderIdsWithTimeSlots(
+            @Param("afterServiceProviderId") final long afterServiceProviderId,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until,
+            final Pageable pageable);
+
+    @Query("select ts.serviceProvider.id as serviceProviderId, " +
+            "sum(case when ts.reservation is null then 1 else 0 end) as freeTimeSlots, " +
+            "sum(case when ts.reservation is null then 0 else 1 end) as reservedTimeSlots " +
+            "from TimeSlot ts " +
+            "where ts.serviceProvider.id in :serviceProviderIds and ts.start >= :from and ts.start < :until " +
+            "group by ts.serviceProvider.id")
+    List<TimeSlotDayCount> countTimeSlotsStartingBetween(
+            @Param("serviceProviderIds") final Collection<Long> serviceProviderIds,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    /**
+     * Cursor over {@link #findTimeSlotViews}; must be consumed and closed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id = :serviceProviderId and ts.start > :after and ts.start < :before " +
+            "order by ts.start")
+    Stream<TimeSlotView> streamTimeSlotViews(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("after") final LocalDateTime after,
+            @Param("before") final LocalDateTime before);
+
+    /**
+     * Cursor over all of the provider's slots; must be consumed and closed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id = :serviceProviderId " +
+            "order by ts.start")
+    Stream<TimeSlotView> streamTimeSlotViews(@Param("serviceProviderId") final long serviceProviderId);
+
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id = :serviceProviderId and ts.start > :after and ts.start < :before " +
+            "and r is null " +
+            "order by ts.start")
+    List<TimeSlotView> findFreeTimeSlotViews(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("after") final LocalDateTime after,
+            @Param("before") final LocalDateTime before);
+
+    /**
+     * Cursor over the provider's free slots; must be consumed and closed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id = :serviceProviderId and ts.start > :after and ts.start < :before " +
+            "and r is null " +
+            "order by ts.start")
+    Stream<TimeSlotView> streamFreeTimeSlotViews(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("after") final LocalDateTime after,
+            @Param("before") final LocalDateTime before);
+
+    /**
+     * Free slots of all providers starting in [from, until).
+     */
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.start >= :from and ts.start < :until and r is null " +
+            "order by ts.start")
+    List<TimeSlotView> findFreeTimeSlotViewsStartingBetween(
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    /**
+     * Reserved slots of the providers starting in [from, until), ordered by start.
+     */
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.serviceProvider.id in :serviceProviderIds and ts.start >= :from and ts.start < :until " +
+            "and r is not null " +
+            "order by ts.start")
+    List<TimeSlotView> findReservedTimeSlotViewsStartingBetween(
+            @Param("serviceProviderIds") final Collection<Long> serviceProviderIds,
+            @Param("from") final LocalDateTime from,
+            @Param("until") final LocalDateTime until);
+
+    @Query(TIME_SLOT_VIEW_QUERY +
+            "where ts.start > :after and r is null")
+    List<TimeSlotView> findFreeTimeSlotViews(@Param("after") final LocalDateTime after);
 
-    List<TimeSlot> findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-            final ServiceProvider serviceProvider,
-            final LocalDateTime after,
-            final LocalDateTime before);
+    /**
+     * Gaps-and-islands over the provider's free slots: within a day, consecutive slots keep a constant
+     * difference between their minute of day and slotMinutes * their row number, so grouping by that
+     * difference yields one row per run of adjacent slots.
+     */
+    @Query(value = "SELECT MIN(island.start) AS start, COUNT(*) AS runLength " +
+            "FROM (SELECT ts.start AS start, " +
+            "             CAST(ts.start AS DATE) AS day, " +
+            "             HOUR(ts.start) * 60 + MINUTE(ts.start) " +
+            "               - :slotMinutes * ROW_NUMBER() OVER (PARTITION BY CAST(ts.start AS DATE) ORDER BY ts.start) AS island_key " +
+            "      FROM time_slot ts " +
+            "      WHERE ts.service_provider_id = :serviceProviderId " +
+            "        AND ts.reservation_id IS NULL " +
+            "        AND ts.start > :after " +
+            "        AND ts.start < :before) island " +
+            "GROUP BY island.day, island.island_key " +
+            "ORDER BY start",
+            nativeQuery = true)
+    List<TimeSlotIsland> findFreeTimeSlotIslands(
+            @Param("serviceProviderId") final long serviceProviderId,
+            @Param("after") final LocalDateTime after,
+            @Param("before") final LocalDateTime before,
+            @Param("slotMinutes") final long slotMinutes);
 }
@@ -0,0 +1,28 @@
+package com.github.vikusku.happytires.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a {@link com.github.vikusku.happytires.model.TimeSlot} row. Unlike the entity it
+ * is never managed, so loading it does not hydrate the service provider, reservation or customer.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class TimeSlotView {
+    private final long serviceProviderId;
+    private final LocalDateTime start;
+    private final Duration duration;
+    private final Long reservationId;
+
+    public boolean isReserved() {
+        return reservationId != null;
+    }
+}
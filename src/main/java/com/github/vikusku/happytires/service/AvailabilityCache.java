@@ -0,0 +1,125 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reservable intervals per provider, service type and day. Entries are dropped on {@link AvailabilityChangedEvent}s
+ * for the affected provider-days and on {@link ScheduleTemplateChangedEvent}s for the whole provider; results loaded
+ * before such an event are never stored.
+ */
+@Component
+public class AvailabilityCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final Cache<Key, List<ReservableIntervalDto>> cache;
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AvailabilityCache(@Value("${happytires.availability-cache.enabled:true}") boolean enabled,
+                             @Value("${happytires.availability-cache.maximum-size:100000}") long maximumSize,
+                             @Value("${happytires.availability-cache.time-to-live:10m}") Duration timeToLive) {
+        this.enabled = enabled;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Cached days of the range, empty when the cache is bypassed.
+     */
+    public Map<LocalDate, List<ReservableIntervalDto>> getAllPresent(
+            long serviceProviderId, ServiceType serviceType, LocalDate from, LocalDate until) {
+        if (!enabled) {
+            return Maps.newHashMap();
+        }
+
+        final List<Key> keys = Lists.newArrayList();
+        for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+            keys.add(new Key(serviceProviderId, serviceType, date));
+        }
+
+        final Map<LocalDate, List<ReservableIntervalDto>> present = Maps.newHashMap();
+        cache.getAllPresent(keys).forEach((key, intervals) -> present.put(key.date, intervals));
+
+        return present;
+    }
+
+    /**
+     * To be read before loading availability from the database and handed back to {@link #putAll}.
+     */
+    public long generation(long serviceProviderId) {
+        return generations.computeIfAbsent(serviceProviderId, id -> new AtomicLong()).get();
+    }
+
+    public void putAll(long serviceProviderId, ServiceType serviceType,
+                       Map<LocalDate, List<ReservableIntervalDto>> intervals, long generation) {
+        if (!enabled || generation(serviceProviderId) != generation) {
+            return;
+        }
+
+        intervals.forEach((date, dateIntervals) ->
+                cache.put(new Key(serviceProviderId, serviceType, date), ImmutableList.copyOf(dateIntervals)));
+
+        // an invalidation may have slipped in between the generation check and the puts
+        if (generation(serviceProviderId) != generation) {
+            intervals.keySet().forEach(date -> invalidate(serviceProviderId, date));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAvailabilityChanged(final AvailabilityChangedEvent event) {
+        generations.computeIfAbsent(event.getServiceProviderId(), id -> new AtomicLong()).incrementAndGet();
+        event.getDates().forEach(date -> invalidate(event.getServiceProviderId(), date));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleTemplateChanged(final ScheduleTemplateChangedEvent event) {
+        generations.computeIfAbsent(event.getServiceProviderId(), id -> new AtomicLong()).incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.serviceProviderId == event.getServiceProviderId());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, cache, "availability");
+    }
+
+    private void invalidate(final long serviceProviderId, final LocalDate date) {
+        for (ServiceType serviceType : ServiceType.values()) {
+            cache.invalidate(new Key(serviceProviderId, serviceType, date));
+        }
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class Key {
+        private final long serviceProviderId;
+        private final ServiceType serviceType;
+        private final LocalDate date;
+    }
+}
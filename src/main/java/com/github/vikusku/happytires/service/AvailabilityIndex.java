@@ -0,0 +1,206 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.repository.ScheduleTemplateRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * In-memory availability of every provider, one bit per free time slot of a day packed into long words.
+ * Built on startup and refreshed per provider-day on {@link AvailabilityChangedEvent}s, so reservable
+ * intervals for indexed providers are answered without touching the database.
+ * <p>
+ * Only stored slots are indexed: providers with a template and ranges with held slots are not covered and are
+ * read from the database. Past days are dropped as the index advances every midnight.
+ */
+@Slf4j
+@Component
+public class AvailabilityIndex {
+
+    static final int SLOTS_PER_DAY = (int) (24 * 60 / DEFAULT_TIME_SLOT_DURATION.toMinutes());
+    static final int WORDS_PER_DAY = (SLOTS_PER_DAY + Long.SIZE - 1) / Long.SIZE;
+
+    private static final long[] NO_AVAILABILITY = new long[WORDS_PER_DAY];
+
+    private final TimeSlotRepository timeSlotRepository;
+    private final ServiceProviderRepository spRepository;
+    private final ScheduleTemplateRepository scheduleTemplateRepository;
+    private final SlotHoldService slotHoldService;
+    private final boolean enabled;
+
+    private final Map<Long, Map<LocalDate, long[]>> availability = new ConcurrentHashMap<>();
+    private final Set<Long> templateServiceProviderIds = ConcurrentHashMap.newKeySet();
+    private volatile LocalDate indexedFrom;
+
+    @Autowired
+    public AvailabilityIndex(TimeSlotRepository timeSlotRepository,
+                             ServiceProviderRepository spRepository,
+                             ScheduleTemplateRepository scheduleTemplateRepository,
+                             SlotHoldService slotHoldService,
+                             @Value("${happytires.availability-index.enabled:false}") boolean enabled) {
+        this.timeSlotRepository = timeSlotRepository;
+        this.spRepository = spRepository;
+        this.scheduleTemplateRepository = scheduleTemplateRepository;
+        this.slotHoldService = slotHoldService;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+
+        final LocalDate today = LocalDate.now();
+        spRepository.findAll().forEach(sp -> availability.putIfAbsent(sp.getId(), new ConcurrentHashMap<>()));
+        templateServiceProviderIds.addAll(scheduleTemplateRepository.findServiceProviderIds());
+
+        final List<TimeSlotView> freeTimeSlots = timeSlotRepository.findFreeTimeSlotViews(
+                LocalDateTime.of(today, LocalTime.MIN));
+        final Map<Long, Map<LocalDate, long[]>> built = new ConcurrentHashMap<>();
+        freeTimeSlots.forEach(ts -> setFree(
+                built.computeIfAbsent(ts.getServiceProviderId(), id -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(ts.getStart().toLocalDate(), date -> new long[WORDS_PER_DAY]),
+                ts.getStart().toLocalTime()));
+
+        availability.putAll(built);
+        indexedFrom = today;
+        log.info("Availability index built with {} free time slots of {} service providers",
+                freeTimeSlots.size(), availability.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAvailabilityChanged(final AvailabilityChangedEvent event) {
+        if (!enabled || indexedFrom == null) {
+            return;
+        }
+
+        final Map<LocalDate, long[]> spAvailability =
+                availability.computeIfAbsent(event.getServiceProviderId(), id -> new ConcurrentHashMap<>());
+
+        event.getDates().stream()
+                .filter(date -> !date.isBefore(indexedFrom))
+                .forEach(date -> {
+                    final long[] words = new long[WORDS_PER_DAY];
+                    timeSlotRepository.findFreeTimeSlotViews(event.getServiceProviderId(),
+                            LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX))
+                            .forEach(ts -> setFree(words, ts.getStart().toLocalTime()));
+                    spAvailability.put(date, words);
+                });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onScheduleTemplateChanged(final ScheduleTemplateChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        if (scheduleTemplateRepository.findByServiceProviderId(event.getServiceProviderId()).isPresent()) {
+            templateServiceProviderIds.add(event.getServiceProviderId());
+        } else {
+            templateServiceProviderIds.remove(event.getServiceProviderId());
+        }
+    }
+
+    /**
+     * Drops the days before today, so that the index neither grows with past days nor answers for them.
+     */
+    @Scheduled(cron = "${happytires.availability-index.advance-cron:0 0 0 * * *}")
+    public void advance() {
+        advance(LocalDate.now());
+    }
+
+    void advance(final LocalDate today) {
+        if (!enabled || indexedFrom == null || !today.isAfter(indexedFrom)) {
+            return;
+        }
+
+        indexedFrom = today;
+        availability.values().forEach(spAvailability -> spAvailability.keySet().removeIf(date -> date.isBefore(today)));
+    }
+
+    /**
+     * Whether the reservable intervals of [from, until) can be answered from the index.
+     */
+    public boolean isIndexed(final long serviceProviderId, final LocalDate from, final LocalDate until) {
+        return enabled && indexedFrom != null && !from.isBefore(indexedFrom)
+                && availability.containsKey(serviceProviderId)
+                && !templateServiceProviderIds.contains(serviceProviderId)
+                && !slotHoldService.isHeld(serviceProviderId, from.atStartOfDay(), until.atStartOfDay());
+    }
+
+    /**
+     * Starts of all windows of {@code adjacentSlots} free slots on the given date, in ascending order.
+     */
+    public List<LocalDateTime> findReservableStarts(final long serviceProviderId, final LocalDate date, final int adjacentSlots) {
+        final long[] free = availability.getOrDefault(serviceProviderId, Collections.emptyMap())
+                .getOrDefault(date, NO_AVAILABILITY);
+
+        final long[] windows = free.clone();
+        for (int shift = 1; shift < adjacentSlots; shift++) {
+            and(windows, shiftRight(free, shift));
+        }
+
+        final List<LocalDateTime> starts = Lists.newArrayList();
+        for (int wordIndex = 0; wordIndex < windows.length; wordIndex++) {
+            long word = windows[wordIndex];
+            while (word != 0) {
+                final int slotIndex = wordIndex * Long.SIZE + Long.numberOfTrailingZeros(word);
+                starts.add(LocalDateTime.of(date, LocalTime.MIN).plus(DEFAULT_TIME_SLOT_DURATION.multipliedBy(slotIndex)));
+                word &= word - 1;
+            }
+        }
+
+        return starts;
+    }
+
+    private static void setFree(final long[] words, final LocalTime slotStart) {
+        final int slotIndex = (int) (slotStart.toSecondOfDay() / DEFAULT_TIME_SLOT_DURATION.getSeconds());
+        words[slotIndex / Long.SIZE] |= 1L << (slotIndex % Long.SIZE);
+    }
+
+    static long[] shiftRight(final long[] words, final int shift) {
+        final long[] shifted = new long[words.length];
+        final int wordShift = shift / Long.SIZE;
+        final int bitShift = shift % Long.SIZE;
+
+        for (int wordIndex = 0; wordIndex + wordShift < words.length; wordIndex++) {
+            shifted[wordIndex] = words[wordIndex + wordShift] >>> bitShift;
+            if (bitShift != 0 && wordIndex + wordShift + 1 < words.length) {
+                shifted[wordIndex] |= words[wordIndex + wordShift + 1] << (Long.SIZE - bitShift);
+            }
+        }
+
+        return shifted;
+    }
+
+    private static void and(final long[] target, final long[] mask) {
+        for (int wordIndex = 0; wordIndex < target.length; wordIndex++) {
+            target[wordIndex] &= mask[wordIndex];
+        }
+    }
+}
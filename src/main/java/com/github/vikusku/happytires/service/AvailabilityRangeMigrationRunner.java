@@ -0,0 +1,32 @@
+package com.github.vikusku.happytires.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the availability range cache from the time slot table, run on startup with
+ * {@code --happytires.availability-range.migrate-on-startup=true}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "happytires.availability-range.migrate-on-startup", havingValue = "true")
+public class AvailabilityRangeMigrationRunner implements ApplicationRunner {
+
+    private final AvailabilityRangeService availabilityRangeService;
+
+    @Autowired
+    public AvailabilityRangeMigrationRunner(AvailabilityRangeService availabilityRangeService) {
+        this.availabilityRangeService = availabilityRangeService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        final long startedAt = System.currentTimeMillis();
+        final long rangeCount = availabilityRangeService.migrate();
+        log.info("Availability range migration wrote {} ranges in {} ms", rangeCount, System.currentTimeMillis() - startedAt);
+    }
+}
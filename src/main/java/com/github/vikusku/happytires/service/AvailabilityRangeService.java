@@ -0,0 +1,270 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.model.AvailabilityRange;
+import com.github.vikusku.happytires.model.AvailabilityVersion;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.repository.AvailabilityRangeBatchWriter;
+import com.github.vikusku.happytires.repository.AvailabilityRangeRepository;
+import com.github.vikusku.happytires.repository.AvailabilityVersionRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotIsland;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * Read-side cache of the schedule: one {@link AvailabilityRange} row per run of free or equally reserved slots, so
+ * availability reads load a few ranges per provider-day instead of every slot. Time slots stay the store of record,
+ * as bookings claim, hold and materialize them slot by slot; the ranges are extra rows next to them, built by
+ * {@link #migrate()} and refreshed on {@link AvailabilityChangedEvent}s.
+ * <p>
+ * A refresh replaces the ranges of a day in one transaction while holding the {@link BookingLockManager} locks of
+ * that provider-day, so two refreshes of the same day cannot interleave their deletes and inserts. Bookings publish
+ * their event while still holding those locks, which are reentrant.
+ * <p>
+ * The ranges of a day are only read while its {@link AvailabilityVersion} is the one they were built at. Reads
+ * serve stale days from the time slots and rebuild them, so a refresh that failed or was lost is repaired by the
+ * next read of the day.
+ */
+@Slf4j
+@Service
+public class AvailabilityRangeService {
+
+    private final AvailabilityRangeRepository availabilityRangeRepository;
+    private final AvailabilityRangeBatchWriter availabilityRangeBatchWriter;
+    private final AvailabilityVersionRepository availabilityVersionRepository;
+    private final TimeSlotRepository timeSlotRepository;
+    private final ServiceProviderRepository spRepository;
+    private final BookingLockManager bookingLockManager;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+
+    private final Counter staleDays;
+    private final Counter refreshFailures;
+
+    @Autowired
+    public AvailabilityRangeService(AvailabilityRangeRepository availabilityRangeRepository,
+                                    AvailabilityRangeBatchWriter availabilityRangeBatchWriter,
+                                    AvailabilityVersionRepository availabilityVersionRepository,
+                                    TimeSlotRepository timeSlotRepository,
+                                    ServiceProviderRepository spRepository,
+                                    BookingLockManager bookingLockManager,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${happytires.availability-range.enabled:false}") boolean enabled) {
+        this.availabilityRangeRepository = availabilityRangeRepository;
+        this.availabilityRangeBatchWriter = availabilityRangeBatchWriter;
+        this.availabilityVersionRepository = availabilityVersionRepository;
+        this.timeSlotRepository = timeSlotRepository;
+        this.spRepository = spRepository;
+        this.bookingLockManager = bookingLockManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+
+        this.staleDays = meterRegistry.counter("availability.range.stale.days");
+        this.refreshFailures = meterRegistry.counter("availability.range.refresh.failures");
+    }
+
+    /**
+     * Whether ranges are kept in sync with the time slots and may serve reads.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Rebuilds the ranges of every service provider from its time slots, one transaction per provider. Meant to run
+     * before ranges serve reads, e.g. at startup; it does not take the booking locks.
+     *
+     * @return number of ranges written
+     */
+    public long migrate() {
+        long rangeCount = 0;
+        for (ServiceProvider sp : spRepository.findAll()) {
+            final long spRangeCount = transactionTemplate.execute(status -> migrate(sp.getId()));
+            log.info("Migrated time slots of service provider {} into {} availability ranges", sp.getId(), spRangeCount);
+            rangeCount += spRangeCount;
+        }
+
+        return rangeCount;
+    }
+
+    private long migrate(final long serviceProviderId) {
+        availabilityVersionRepository.markAvailabilityRangesBuilt(serviceProviderId);
+        availabilityRangeRepository.deleteAvailabilityRanges(serviceProviderId);
+
+        long rangeCount = 0;
+        try (Stream<TimeSlotView> timeSlots = timeSlotRepository.streamTimeSlotViews(serviceProviderId)) {
+            final PeekingIterator<TimeSlotView> timeSlotIterator = Iterators.peekingIterator(timeSlots.iterator());
+            while (timeSlotIterator.hasNext()) {
+                final LocalDate date = timeSlotIterator.peek().getStart().toLocalDate();
+                final List<TimeSlotView> dayTimeSlots = Lists.newArrayList();
+                while (timeSlotIterator.hasNext() && timeSlotIterator.peek().getStart().toLocalDate().equals(date)) {
+                    dayTimeSlots.add(timeSlotIterator.next());
+                }
+
+                rangeCount += availabilityRangeBatchWriter.insert(compact(serviceProviderId, dayTimeSlots));
+            }
+        }
+
+        return rangeCount;
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAvailabilityChanged(final AvailabilityChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+
+        refresh(event.getServiceProviderId(), event.getDates());
+    }
+
+    /**
+     * Runs after the change is committed or while reading, so a failure must not reach the caller; the days stay
+     * stale until their next read.
+     */
+    private void refresh(final long serviceProviderId, final Set<LocalDate> dates) {
+        try {
+            bookingLockManager.withLocks(serviceProviderId, dates, () -> transactionTemplate.execute(status -> {
+                // marked first, so a writer bumping one of the days from here on waits and leaves it stale
+                availabilityVersionRepository.markAvailabilityRangesBuilt(serviceProviderId, dates);
+                availabilityRangeRepository.deleteAvailabilityRanges(serviceProviderId, dates);
+
+                dates.forEach(date -> availabilityRangeBatchWriter.insert(
+                        compact(serviceProviderId, findDayTimeSlotViews(serviceProviderId, date))));
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            refreshFailures.increment();
+            log.warn("Refreshing availability ranges of service provider {} on {} failed, they are rebuilt on their next read",
+                    serviceProviderId, dates, e);
+        }
+    }
+
+    /**
+     * Slot-level view of the stored ranges, equal to what {@link TimeSlotRepository#findTimeSlotViews} returns
+     * for [from, until).
+     */
+    @Transactional(readOnly = true)
+    public List<TimeSlotView> findTimeSlotViews(final long serviceProviderId, final LocalDate from, final LocalDate until) {
+        final List<TimeSlotView> timeSlots = Lists.newArrayList();
+
+        findAvailabilityRanges(serviceProviderId, from, until).forEach(range -> {
+            for (int minute = range.getStartMinute(); minute < range.getEndMinute(); minute += DEFAULT_TIME_SLOT_DURATION.toMinutes()) {
+                timeSlots.add(new TimeSlotView(serviceProviderId, LocalDateTime.of(range.getDate(), LocalTime.MIN).plusMinutes(minute),
+                        DEFAULT_TIME_SLOT_DURATION, range.getReservationId()));
+            }
+        });
+
+        return timeSlots;
+    }
+
+    /**
+     * Free ranges are maximal runs of free slots, so they are exactly the islands of
+     * {@link TimeSlotRepository#findFreeTimeSlotIslands}. Reserved ranges are filtered here rather than in the query
+     * so that it always runs on the provider-date index.
+     */
+    @Transactional(readOnly = true)
+    public List<TimeSlotIsland> findFreeTimeSlotIslands(final long serviceProviderId, final LocalDate from, final LocalDate until) {
+        return findAvailabilityRanges(serviceProviderId, from, until).stream()
+                .filter(range -> range.getReservationId() == null)
+                .map(range -> new RangeIsland(range.getStart(),
+                        (range.getEndMinute() - range.getStartMinute()) / DEFAULT_TIME_SLOT_DURATION.toMinutes()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Stored ranges of the current days and ranges compacted from the time slots of the stale ones, which are
+     * rebuilt afterwards.
+     */
+    private List<AvailabilityRange> findAvailabilityRanges(final long serviceProviderId, final LocalDate from, final LocalDate until) {
+        final Set<LocalDate> staleDates = availabilityVersionRepository.findAvailabilityVersions(serviceProviderId, from, until)
+                .stream()
+                .filter(version -> version.getRangeVersion() != version.getVersion())
+                .map(AvailabilityVersion::getDate)
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (staleDates.isEmpty()) {
+            return availabilityRangeRepository.findAvailabilityRanges(serviceProviderId, from, until);
+        }
+
+        staleDays.increment(staleDates.size());
+        final List<AvailabilityRange> ranges = availabilityRangeRepository.findAvailabilityRanges(serviceProviderId, from, until)
+                .stream()
+                .filter(range -> !staleDates.contains(range.getDate()))
+                .collect(Collectors.toList());
+        staleDates.forEach(date -> ranges.addAll(compact(serviceProviderId, findDayTimeSlotViews(serviceProviderId, date))));
+        ranges.sort(Comparator.comparing(AvailabilityRange::getDate).thenComparingInt(AvailabilityRange::getStartMinute));
+
+        refresh(serviceProviderId, staleDates);
+        return ranges;
+    }
+
+    private List<TimeSlotView> findDayTimeSlotViews(final long serviceProviderId, final LocalDate date) {
+        return timeSlotRepository.findTimeSlotViews(serviceProviderId,
+                LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
+    }
+
+    /**
+     * Merges the ordered slots of one day into ranges of adjacent slots with the same reservation.
+     */
+    List<AvailabilityRange> compact(final long serviceProviderId, final List<TimeSlotView> dayTimeSlots) {
+        final List<AvailabilityRange> ranges = Lists.newArrayList();
+
+        AvailabilityRange range = null;
+        for (TimeSlotView timeSlot : dayTimeSlots) {
+            final int startMinute = timeSlot.getStart().toLocalTime().toSecondOfDay() / 60;
+            final int endMinute = startMinute + (int) timeSlot.getDuration().toMinutes();
+
+            if (range != null && range.getEndMinute() == startMinute
+                    && Objects.equals(range.getReservationId(), timeSlot.getReservationId())) {
+                range.setEndMinute(endMinute);
+            } else {
+                range = new AvailabilityRange(0L, serviceProviderId, timeSlot.getStart().toLocalDate(),
+                        startMinute, endMinute, timeSlot.getReservationId());
+                ranges.add(range);
+            }
+        }
+
+        return ranges;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class RangeIsland implements TimeSlotIsland {
+        private final LocalDateTime start;
+        private final long runLength;
+    }
+}
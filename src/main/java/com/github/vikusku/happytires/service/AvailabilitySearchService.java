@@ -0,0 +1,211 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static java.util.stream.Collectors.groupingBy;
+
+@Service
+public class AvailabilitySearchService {
+
+    private static final Comparator<ReservableIntervalDto> BY_START_AND_SERVICE_PROVIDER =
+            Comparator.comparing(ReservableIntervalDto::getStart)
+                    .thenComparingLong(ReservableIntervalDto::getServiceProviderId);
+
+    private final TimeSlotRepository timeSlotRepository;
+    private final DurationService durationService;
+    private final ReservableIntervalsEngine reservableIntervalsEngine;
+    private final ScheduleTemplateService scheduleTemplateService;
+    private final SlotHoldService slotHoldService;
+    private final ForkJoinPool searchPool;
+    private final int nextAvailableHorizonDays;
+
+    @Autowired
+    public AvailabilitySearchService(TimeSlotRepository timeSlotRepository,
+                                     DurationService durationService,
+                                     ReservableIntervalsEngine reservableIntervalsEngine,
+                                     ScheduleTemplateService scheduleTemplateService,
+                                     SlotHoldService slotHoldService,
+                                     @Value("${happytires.availability-search.parallelism:4}") int parallelism,
+                                     @Value("${happytires.availability-search.next-available-horizon-days:60}") int nextAvailableHorizonDays) {
+        this.timeSlotRepository = timeSlotRepository;
+        this.durationService = durationService;
+        this.reservableIntervalsEngine = reservableIntervalsEngine;
+        this.scheduleTemplateService = scheduleTemplateService;
+        this.slotHoldService = slotHoldService;
+        this.searchPool = new ForkJoinPool(parallelism);
+        this.nextAvailableHorizonDays = nextAvailableHorizonDays;
+    }
+
+    /**
+     * Earliest {@code limit} reservable intervals of any service provider on the days in [from, until). Intervals
+     * overlapping a held slot are left out.
+     */
+    @Transactional(readOnly = true)
+    public List<ReservableIntervalDto> searchReservableIntervals(
+            final ServiceType serviceType, final LocalDate from, final LocalDate until, final int limit) {
+        final Map<Long, List<TimeSlotView>> timeSlotsByServiceProvider = findFreeTimeSlots(
+                scheduleTemplateService.findTemplates(from, until), from.atStartOfDay(), until.atStartOfDay());
+        final int minimumAdjacentSlots = getMinimumAdjacentSlots(serviceType);
+
+        final List<List<ReservableIntervalDto>> intervalsByServiceProvider;
+        try {
+            intervalsByServiceProvider = searchPool.submit(() -> timeSlotsByServiceProvider.entrySet()
+                    .parallelStream()
+                    .map(e -> findReservableIntervals(e.getKey(), e.getValue(), minimumAdjacentSlots))
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reservable intervals search was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reservable intervals search failed", e.getCause());
+        }
+
+        final List<ReservableIntervalDto> reservableIntervals = Lists.newArrayList();
+        mergeEarliest(intervalsByServiceProvider, limit, reservableIntervals);
+        return reservableIntervals;
+    }
+
+    /**
+     * Earliest {@code count} reservable intervals of any service provider starting at or after {@code from}.
+     * Walks forward one day at a time and stops at the first day that completes the answer,
+     * or after the configured horizon. Intervals overlapping a held slot are left out.
+     */
+    @Transactional(readOnly = true)
+    public List<ReservableIntervalDto> findNextAvailable(
+            final ServiceType serviceType, final LocalDateTime from, final int count) {
+        final int minimumAdjacentSlots = getMinimumAdjacentSlots(serviceType);
+        final List<ReservableIntervalDto> nextAvailable = Lists.newArrayList();
+        final List<ScheduleTemplate> templates = scheduleTemplateService.findTemplates(
+                from.toLocalDate(), from.toLocalDate().plusDays(nextAvailableHorizonDays));
+
+        LocalDateTime dayFrom = from;
+        for (int day = 0; day < nextAvailableHorizonDays && nextAvailable.size() < count; day++) {
+            final LocalDate date = dayFrom.toLocalDate();
+
+            final List<List<ReservableIntervalDto>> intervalsByServiceProvider = Lists.newArrayList();
+            findFreeTimeSlots(templates, dayFrom, date.plusDays(1).atStartOfDay())
+                    .forEach((serviceProviderId, timeSlots) -> intervalsByServiceProvider.add(slotHoldService.withoutHeld(serviceProviderId,
+                            reservableIntervalsEngine.createReservableIntervals(minimumAdjacentSlots, timeSlots, serviceProviderId))));
+            mergeEarliest(intervalsByServiceProvider, count, nextAvailable);
+
+            dayFrom = date.plusDays(1).atStartOfDay();
+        }
+
+        return nextAvailable;
+    }
+
+    /**
+     * Free slots starting in [from, until) by provider, each sorted by start. Days covered by one of the templates
+     * are expanded from the template and the provider's stored reservations, as the per-provider reads do, so
+     * providers on a template are found without materialized slots.
+     */
+    private Map<Long, List<TimeSlotView>> findFreeTimeSlots(final List<ScheduleTemplate> templates,
+                                                            final LocalDateTime from, final LocalDateTime until) {
+        final Map<Long, List<TimeSlotView>> timeSlotsByServiceProvider = timeSlotRepository
+                .findFreeTimeSlotViewsStartingBetween(from, until).stream()
+                .collect(groupingBy(TimeSlotView::getServiceProviderId));
+
+        final LocalDate fromDate = from.toLocalDate();
+        final LocalDate untilDate = until.toLocalTime().equals(LocalTime.MIDNIGHT) ? until.toLocalDate() : until.toLocalDate().plusDays(1);
+        final Map<Long, ScheduleTemplate> templatesByServiceProvider = templates.stream()
+                .filter(template -> template.getValidFrom().isBefore(untilDate)
+                        && (template.getValidUntil() == null || template.getValidUntil().isAfter(fromDate)))
+                .collect(Collectors.toMap(template -> template.getServiceProvider().getId(), template -> template));
+        if (templatesByServiceProvider.isEmpty()) {
+            return timeSlotsByServiceProvider;
+        }
+
+        final Map<Long, List<TimeSlotView>> reservedByServiceProvider = timeSlotRepository
+                .findReservedTimeSlotViewsStartingBetween(templatesByServiceProvider.keySet(), fromDate.atStartOfDay(), untilDate.atStartOfDay())
+                .stream()
+                .collect(groupingBy(TimeSlotView::getServiceProviderId));
+        templatesByServiceProvider.forEach((serviceProviderId, template) -> {
+            final List<TimeSlotView> stored = Lists.newArrayList(timeSlotsByServiceProvider.getOrDefault(serviceProviderId, Lists.newArrayList()));
+            stored.addAll(reservedByServiceProvider.getOrDefault(serviceProviderId, Lists.newArrayList()));
+            stored.sort(Comparator.comparing(TimeSlotView::getStart));
+
+            final List<TimeSlotView> free = scheduleTemplateService.expand(template, fromDate, untilDate, stored).stream()
+                    .filter(ts -> !ts.isReserved() && !ts.getStart().isBefore(from) && ts.getStart().isBefore(until))
+                    .collect(Collectors.toList());
+            if (free.isEmpty()) {
+                timeSlotsByServiceProvider.remove(serviceProviderId);
+            } else {
+                timeSlotsByServiceProvider.put(serviceProviderId, free);
+            }
+        });
+
+        return timeSlotsByServiceProvider;
+    }
+
+    /**
+     * K-way merge of per-provider lists, each sorted by start, appending to {@code merged} until it holds
+     * {@code limit} intervals.
+     */
+    private void mergeEarliest(final List<List<ReservableIntervalDto>> sortedIntervals, final int limit,
+                               final List<ReservableIntervalDto> merged) {
+        final PriorityQueue<PeekingIterator<ReservableIntervalDto>> candidates = new PriorityQueue<>(
+                (a, b) -> BY_START_AND_SERVICE_PROVIDER.compare(a.peek(), b.peek()));
+        sortedIntervals.forEach(intervals -> {
+            if (!intervals.isEmpty()) {
+                candidates.add(Iterators.peekingIterator(intervals.iterator()));
+            }
+        });
+
+        while (!candidates.isEmpty() && merged.size() < limit) {
+            final PeekingIterator<ReservableIntervalDto> earliest = candidates.poll();
+            merged.add(earliest.next());
+            if (earliest.hasNext()) {
+                candidates.add(earliest);
+            }
+        }
+    }
+
+    /**
+     * @return the provider's reservable intervals sorted by start
+     */
+    private List<ReservableIntervalDto> findReservableIntervals(
+            final long serviceProviderId, final List<TimeSlotView> timeSlots, final int minimumAdjacentSlots) {
+        return slotHoldService.withoutHeld(serviceProviderId, timeSlots.stream()
+                .collect(groupingBy(ts -> ts.getStart().toLocalDate(), TreeMap::new, Collectors.toList()))
+                .values()
+                .stream()
+                .flatMap(dateTimeSlots -> reservableIntervalsEngine.createReservableIntervals(
+                        minimumAdjacentSlots, dateTimeSlots, serviceProviderId).stream())
+                .collect(Collectors.toList()));
+    }
+
+    private int getMinimumAdjacentSlots(ServiceType serviceType) {
+        return (int) (durationService.getServiceDuration(serviceType) / DEFAULT_TIME_SLOT_DURATION.toMinutes());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchPool.shutdown();
+    }
+}
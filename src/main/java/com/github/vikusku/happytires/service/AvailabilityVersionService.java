@@ -0,0 +1,85 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.model.AvailabilityVersion;
+import com.github.vikusku.happytires.model.ScheduleTemplateVersion;
+import com.github.vikusku.happytires.repository.AvailabilityVersionRepository;
+import com.github.vikusku.happytires.repository.ScheduleTemplateVersionRepository;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Per provider-day availability versions backing the ETags of the schedule and reservable interval reads, so that
+ * a conditional GET is answered from one small lookup instead of a slot range scan. A template change affects days
+ * without bound, so it bumps one per-provider template version that every ETag of the provider includes.
+ */
+@Service
+public class AvailabilityVersionService {
+
+    private final AvailabilityVersionRepository availabilityVersionRepository;
+    private final ScheduleTemplateVersionRepository scheduleTemplateVersionRepository;
+
+    @Autowired
+    public AvailabilityVersionService(AvailabilityVersionRepository availabilityVersionRepository,
+                                      ScheduleTemplateVersionRepository scheduleTemplateVersionRepository) {
+        this.availabilityVersionRepository = availabilityVersionRepository;
+        this.scheduleTemplateVersionRepository = scheduleTemplateVersionRepository;
+    }
+
+    /**
+     * Strong ETag of the availability of [from, until); the discriminators tell apart different views of the
+     * same days, e.g. the service type.
+     */
+    @Transactional(readOnly = true)
+    public String eTag(final long serviceProviderId, final LocalDate from, final LocalDate until, final Object... discriminators) {
+        final Map<LocalDate, Long> versions = availabilityVersionRepository.findAvailabilityVersions(serviceProviderId, from, until)
+                .stream()
+                .collect(Collectors.toMap(AvailabilityVersion::getDate, AvailabilityVersion::getVersion));
+        final long templateVersion = scheduleTemplateVersionRepository.findById(serviceProviderId)
+                .map(ScheduleTemplateVersion::getVersion)
+                .orElse(0L);
+
+        final Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putLong(serviceProviderId)
+                .putLong(from.toEpochDay())
+                .putLong(until.toEpochDay())
+                .putLong(templateVersion);
+        for (Object discriminator : discriminators) {
+            hasher.putString(String.valueOf(discriminator), StandardCharsets.UTF_8);
+        }
+        for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+            hasher.putLong(versions.getOrDefault(date, 0L));
+        }
+
+        return "\"" + hasher.hash() + "\"";
+    }
+
+    /**
+     * Bumps the changed days inside the writing transaction, so that a new ETag is never visible before the data.
+     * Days are upserted in date order, so two writers touching the same days lock their rows in the same order.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    @Transactional
+    public void onAvailabilityChanged(final AvailabilityChangedEvent event) {
+        new TreeSet<>(event.getDates()).forEach(date ->
+                availabilityVersionRepository.incrementAvailabilityVersion(event.getServiceProviderId(), date));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    @Transactional
+    public void onScheduleTemplateChanged(final ScheduleTemplateChangedEvent event) {
+        scheduleTemplateVersionRepository.incrementScheduleTemplateVersion(event.getServiceProviderId());
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes bookings of the same provider-day inside the JVM, so that conflicting requests queue here instead of
+ * each holding a database connection while waiting for row locks. The database claim still decides who gets a slot;
+ * this only keeps the losers off the connection pool.
+ * <p>
+ * Keys are hashed onto a fixed array of fair locks. Unrelated provider-days may share a stripe, which only costs
+ * some extra waiting. The stripes of one call are taken in index order, so multi-day bookings cannot deadlock.
+ */
+@Component
+public class BookingLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final Duration timeout;
+
+    private final Timer waitTimer;
+    private final Counter timeouts;
+
+    @Autowired
+    public BookingLockManager(MeterRegistry meterRegistry,
+                              @Value("${happytires.booking-lock.stripes:1024}") int stripes,
+                              @Value("${happytires.booking-lock.timeout:2s}") Duration timeout) {
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock(true);
+        }
+        this.timeout = timeout;
+
+        this.waitTimer = meterRegistry.timer("booking.lock.wait");
+        this.timeouts = meterRegistry.counter("booking.lock.timeouts");
+    }
+
+    /**
+     * Runs {@code action} holding the locks of the given days of the provider.
+     *
+     * @throws ReservationPersistenceException when the locks are not acquired within the timeout
+     */
+    public <T> T withLocks(final long serviceProviderId, final Collection<LocalDate> dates, final Supplier<T> action) {
+        return withLocks(ImmutableSetMultimap.<Long, LocalDate>builder().putAll(serviceProviderId, dates).build(), action);
+    }
+
+    /**
+     * Runs {@code action} holding the locks of the given days of each provider.
+     *
+     * @throws ReservationPersistenceException when the locks are not acquired within the timeout
+     */
+    public <T> T withLocks(final SetMultimap<Long, LocalDate> providerDates, final Supplier<T> action) {
+        final SortedSet<Integer> indices = new TreeSet<>();
+        providerDates.forEach((serviceProviderId, date) -> indices.add(stripe(serviceProviderId, date)));
+
+        final long startedAt = System.nanoTime();
+        final long deadline = startedAt + timeout.toNanos();
+        int locked = 0;
+        try {
+            for (int index : indices) {
+                if (!stripes[index].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    timeouts.increment();
+                    throw new ReservationPersistenceException("TIME_SLOTS_LOCK_TIMEOUT");
+                }
+                locked++;
+            }
+            waitTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+            return action.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReservationPersistenceException("TIME_SLOTS_LOCK_INTERRUPTED");
+        } finally {
+            for (int index : indices) {
+                if (locked-- == 0) {
+                    break;
+                }
+                stripes[index].unlock();
+            }
+        }
+    }
+
+    int stripe(final long serviceProviderId, final LocalDate date) {
+        final int hash = Objects.hash(serviceProviderId, date);
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.CustomerDto;
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.repository.CustomerRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Resolves the customer of a booking by email. A returning customer's id comes from a bounded email to id cache, so
+ * the booking only writes its details onto that row; otherwise one upsert stores the details and a lookup fetches
+ * the id. Either way every booking writes its details, so the last booking wins whichever node served the previous
+ * one.
+ */
+@Service
+public class CustomerService implements MeterBinder {
+
+    private final CustomerRepository customerRepository;
+    private final Cache<String, Long> customers;
+
+    @Autowired
+    public CustomerService(CustomerRepository customerRepository,
+                           @Value("${happytires.customer-cache.maximum-size:100000}") long maximumSize) {
+        this.customerRepository = customerRepository;
+        this.customers = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * To be called inside the booking's transaction; the id is only cached once it commits.
+     *
+     * @return a reference to the stored customer
+     */
+    public Customer resolve(final CustomerDto customerDto) {
+        final Long cachedId = customers.getIfPresent(customerDto.getEmail());
+        if (cachedId != null) {
+            if (customerRepository.updateDetails(cachedId, customerDto.getName(), customerDto.getAddress(),
+                    customerDto.getEmail(), customerDto.getPhoneNumber()) == 1) {
+                return customerRepository.getOne(cachedId);
+            }
+            // deleted or re-keyed since it was cached
+            customers.invalidate(customerDto.getEmail());
+        }
+
+        customerRepository.upsert(customerDto.getName(), customerDto.getAddress(), customerDto.getEmail(), customerDto.getPhoneNumber());
+        final long id = customerRepository.findIdByEmail(customerDto.getEmail())
+                .orElseThrow(() -> new IllegalStateException("Customer vanished after upsert: " + customerDto.getEmail()));
+        cacheAfterCommit(customerDto.getEmail(), id);
+
+        return customerRepository.getOne(id);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, customers, "customers");
+    }
+
+    private void cacheAfterCommit(final String email, final long id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            customers.put(email, id);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                customers.put(email, id);
+            }
+        });
+    }
+}
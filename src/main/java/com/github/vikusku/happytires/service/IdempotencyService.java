@@ -0,0 +1,214 @@
+package com.github.vikusku.happytires.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.vikusku.happytires.exception.IdempotencyKeyConflictException;
+import com.github.vikusku.happytires.exception.InvalidIdempotencyKeyException;
+import com.github.vikusku.happytires.model.IdempotencyRecord;
+import com.github.vikusku.happytires.repository.IdempotencyRecordRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Runs a request sent with an Idempotency-Key once and replays its stored response to retries within the time to
+ * live, so a client retrying a booking gets the booking instead of a conflict with itself.
+ * <p>
+ * The key is claimed in its own transaction before the request runs, so a concurrent retry is turned away instead
+ * of running twice. The claim is a short lease rather than the full time to live: when the instance running the
+ * request dies, a retry after the lease takes the key over instead of being turned away for a day. Completed
+ * responses are kept in the database, with a bounded in-memory cache in front that answers most retries without a
+ * query. A request that fails releases its key and may be retried.
+ */
+@Slf4j
+@Service
+public class IdempotencyService implements MeterBinder {
+
+    /**
+     * Length of the key column.
+     */
+    static final int MAXIMUM_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration timeToLive;
+    private final Duration lease;
+    private final boolean cleanupEnabled;
+    private final Cache<String, StoredResponse> responses;
+
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${happytires.idempotency.time-to-live:24h}") Duration timeToLive,
+                              @Value("${happytires.idempotency.lease:30s}") Duration lease,
+                              @Value("${happytires.idempotency.maximum-size:100000}") long maximumSize,
+                              @Value("${happytires.idempotency.cleanup-enabled:true}") boolean cleanupEnabled) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.timeToLive = timeToLive;
+        this.lease = lease;
+        this.cleanupEnabled = cleanupEnabled;
+        this.responses = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Runs {@code action} unless a response is stored for the key.
+     *
+     * @param operation tells apart requests that may share a body, e.g. method and path
+     * @throws InvalidIdempotencyKeyException  when the key is blank or longer than {@value #MAXIMUM_KEY_LENGTH}
+     *                                         characters
+     * @throws IdempotencyKeyConflictException when the key was used for a different request or its first request is
+     *                                         still running
+     */
+    public <T> ResponseEntity<T> execute(final String idempotencyKey, final String operation, final Object request,
+                                         final Class<T> responseType, final Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey.trim().isEmpty() || idempotencyKey.length() > MAXIMUM_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(String.format(
+                    "Idempotency-Key must be a non-blank value of at most %d characters", MAXIMUM_KEY_LENGTH));
+        }
+
+        final String requestHash = Hashing.sha256()
+                .hashString(operation + "\n" + toJson(request), StandardCharsets.UTF_8)
+                .toString();
+
+        final StoredResponse cached = responses.getIfPresent(idempotencyKey);
+        if (cached != null) {
+            return replay(cached, requestHash, responseType);
+        }
+
+        final LocalDateTime lockedUntil = LocalDateTime.now().plus(lease).truncatedTo(ChronoUnit.MILLIS);
+        final Optional<IdempotencyRecord> existing;
+        try {
+            existing = transactionTemplate.execute(status -> claim(idempotencyKey, requestHash, lockedUntil));
+        } catch (DuplicateKeyException e) {
+            throw new IdempotencyKeyConflictException("IDEMPOTENCY_KEY_IN_PROGRESS");
+        }
+        if (existing.isPresent()) {
+            if (existing.get().getStatus() == 0 && existing.get().getRequestHash().equals(requestHash)) {
+                throw new IdempotencyKeyConflictException("IDEMPOTENCY_KEY_IN_PROGRESS");
+            }
+            final StoredResponse stored = new StoredResponse(existing.get().getRequestHash(), existing.get().getStatus(),
+                    existing.get().getLocation(), existing.get().getResponse());
+            if (stored.status != 0) {
+                responses.put(idempotencyKey, stored);
+            }
+            return replay(stored, requestHash, responseType);
+        }
+
+        final ResponseEntity<T> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            transactionTemplate.execute(status -> idempotencyRecordRepository.release(idempotencyKey, lockedUntil));
+            throw e;
+        }
+
+        final StoredResponse stored = new StoredResponse(requestHash, response.getStatusCodeValue(),
+                Optional.ofNullable(response.getHeaders().getLocation()).map(URI::toString).orElse(null),
+                response.hasBody() ? toJson(response.getBody()) : null);
+        final int completed = transactionTemplate.execute(status -> idempotencyRecordRepository.complete(idempotencyKey,
+                lockedUntil, stored.status, stored.location, stored.response, LocalDateTime.now().plus(timeToLive)));
+        if (completed == 0) {
+            log.warn("Idempotency key {} was taken over by a retry before its request completed", idempotencyKey);
+        } else {
+            responses.put(idempotencyKey, stored);
+        }
+
+        return response;
+    }
+
+    @Scheduled(cron = "${happytires.idempotency.cleanup-cron:0 15 * * * *}")
+    public void deleteExpiredScheduled() {
+        if (cleanupEnabled) {
+            final int deleted = transactionTemplate.execute(status -> idempotencyRecordRepository.deleteExpired(LocalDateTime.now()));
+            log.info("Deleted {} expired idempotency records", deleted);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, responses, "idempotency");
+    }
+
+    /**
+     * @return the live record of the key, or empty when the key is now claimed for this request until {@code lockedUntil}
+     */
+    private Optional<IdempotencyRecord> claim(final String idempotencyKey, final String requestHash,
+                                              final LocalDateTime lockedUntil) {
+        final LocalDateTime now = LocalDateTime.now();
+        final Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findById(idempotencyKey);
+        if (existing.isPresent() && existing.get().getExpiresAt().isAfter(now)) {
+            return existing;
+        }
+
+        existing.ifPresent(record -> idempotencyRecordRepository.releaseExpired(idempotencyKey, now));
+        idempotencyRecordRepository.claim(idempotencyKey, requestHash, lockedUntil);
+        return Optional.empty();
+    }
+
+    private <T> ResponseEntity<T> replay(final StoredResponse stored, final String requestHash, final Class<T> responseType) {
+        if (!stored.requestHash.equals(requestHash)) {
+            throw new IdempotencyKeyConflictException("IDEMPOTENCY_KEY_REUSED");
+        }
+
+        final HttpHeaders headers = new HttpHeaders();
+        if (stored.location != null) {
+            headers.setLocation(URI.create(stored.location));
+        }
+        try {
+            return ResponseEntity.status(stored.status)
+                    .headers(headers)
+                    .body(stored.response == null ? null : objectMapper.readValue(stored.response, responseType));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String toJson(final Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class StoredResponse {
+        private final String requestHash;
+        private final int status;
+        private final String location;
+        private final String response;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+
+import java.util.List;
+
+/**
+ * Strategy for turning one day of free time slots into reservable intervals.
+ *
+ * Implementations receive the day's free slots sorted by start and must emit every start
+ * from which {@code minimumAdjacentSlots} adjacent slots are free, in ascending order.
+ */
+public interface ReservableIntervalsEngine {
+
+    List<ReservableIntervalDto> createReservableIntervals(
+            int minimumAdjacentSlots, List<TimeSlotView> dateTimeSlots, long serviceProviderId);
+}
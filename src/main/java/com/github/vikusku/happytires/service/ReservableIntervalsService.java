@@ -2,98 +2,237 @@ package com.github.vikusku.happytires.service;
 
 import com.github.vikusku.happytires.dto.ReservableIntervalDto;
 import com.github.vikusku.happytires.exception.ServiceProviderNotFoundException;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
 import com.github.vikusku.happytires.model.ServiceProvider;
 import com.github.vikusku.happytires.model.ServiceType;
-import com.github.vikusku.happytires.model.TimeSlot;
 import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotIsland;
 import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.github.vikusku.happytires.util.TimeSlotStreams;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
 import static java.util.stream.Collectors.groupingBy;
 
-@AllArgsConstructor
 @Service
 public class ReservableIntervalsService {
 
-    @Autowired
-    private TimeSlotRepository timeSlotRepository;
-
-    @Autowired
-    private ServiceProviderRepository spRepository;
+    private final TimeSlotRepository timeSlotRepository;
+    private final ServiceProviderRepository spRepository;
+    private final DurationService durationService;
+    private final ReservableIntervalsEngine reservableIntervalsEngine;
+    private final AvailabilityIndex availabilityIndex;
+    private final AvailabilityCache availabilityCache;
+    private final AvailabilityRangeService availabilityRangeService;
+    private final ScheduleTemplateService scheduleTemplateService;
+    private final SlotHoldService slotHoldService;
+    private final boolean useIslandQuery;
 
     @Autowired
-    private DurationService durationService;
+    public ReservableIntervalsService(TimeSlotRepository timeSlotRepository,
+                                      ServiceProviderRepository spRepository,
+                                      DurationService durationService,
+                                      ReservableIntervalsEngine reservableIntervalsEngine,
+                                      AvailabilityIndex availabilityIndex,
+                                      AvailabilityCache availabilityCache,
+                                      AvailabilityRangeService availabilityRangeService,
+                                      ScheduleTemplateService scheduleTemplateService,
+                                      SlotHoldService slotHoldService,
+                                      @Value("${happytires.reservable-intervals.island-query.enabled:false}") boolean useIslandQuery) {
+        this.timeSlotRepository = timeSlotRepository;
+        this.spRepository = spRepository;
+        this.durationService = durationService;
+        this.reservableIntervalsEngine = reservableIntervalsEngine;
+        this.availabilityIndex = availabilityIndex;
+        this.availabilityCache = availabilityCache;
+        this.availabilityRangeService = availabilityRangeService;
+        this.scheduleTemplateService = scheduleTemplateService;
+        this.slotHoldService = slotHoldService;
+        this.useIslandQuery = useIslandQuery;
+    }
 
+    /**
+     * Intervals overlapping a slot held by a customer in checkout are left out; the cache keeps them.
+     */
+    @Transactional(readOnly = true)
     public Map<LocalDate, List<ReservableIntervalDto>> findReservableIntervals(
             long serviceProviderId, ServiceType serviceType, LocalDate from, LocalDate until) {
 
+        final Map<LocalDate, List<ReservableIntervalDto>> cachedIntervals =
+                availabilityCache.getAllPresent(serviceProviderId, serviceType, from, until);
+        if (cachedIntervals.size() == ChronoUnit.DAYS.between(from, until)) {
+            final Map<LocalDate, List<ReservableIntervalDto>> availableIntervals = Maps.newLinkedHashMap();
+            for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+                availableIntervals.put(date, cachedIntervals.get(date));
+            }
+
+            return slotHoldService.withoutHeld(serviceProviderId, availableIntervals);
+        }
+
+        final long cacheGeneration = availabilityCache.generation(serviceProviderId);
+        final Map<LocalDate, List<ReservableIntervalDto>> availableIntervals =
+                loadReservableIntervals(serviceProviderId, serviceType, from, until);
+        availabilityCache.putAll(serviceProviderId, serviceType, availableIntervals, cacheGeneration);
+
+        return slotHoldService.withoutHeld(serviceProviderId, availableIntervals);
+    }
+
+    /**
+     * Streaming variant of {@link #findReservableIntervals} handing one day at a time to the consumer. Reads the
+     * free slots through a database cursor and bypasses the availability cache and index.
+     */
+    @Transactional(readOnly = true)
+    public void streamReservableIntervals(
+            long serviceProviderId, ServiceType serviceType, LocalDate from, LocalDate until,
+            BiConsumer<LocalDate, List<ReservableIntervalDto>> dayConsumer) {
+        final ServiceProvider sp = spRepository.findById(serviceProviderId)
+                .orElseThrow(() -> new ServiceProviderNotFoundException(String.format("Service provider with %d does not exist", serviceProviderId)));
+        final int minimumAdjacentSlots = getMinimumAdjacentSlots(serviceType);
+
+        final Optional<ScheduleTemplate> template = scheduleTemplateService.findTemplate(sp.getId());
+        if (template.isPresent()) {
+            try (Stream<TimeSlotView> timeSlots = timeSlotRepository.streamTimeSlotViews(
+                    sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX))) {
+                TimeSlotStreams.forEachDay(timeSlots, from, until, (date, storedDayTimeSlots) -> dayConsumer.accept(date,
+                        slotHoldService.withoutHeld(sp.getId(), reservableIntervalsEngine.createReservableIntervals(minimumAdjacentSlots,
+                                free(scheduleTemplateService.expandDay(template.get(), date, storedDayTimeSlots)), sp.getId()))));
+            }
+            return;
+        }
+
+        try (Stream<TimeSlotView> timeSlots = timeSlotRepository.streamFreeTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX))) {
+            TimeSlotStreams.forEachDay(timeSlots, from, until, (date, dayTimeSlots) -> dayConsumer.accept(date,
+                    slotHoldService.withoutHeld(sp.getId(),
+                            reservableIntervalsEngine.createReservableIntervals(minimumAdjacentSlots, dayTimeSlots, sp.getId()))));
+        }
+    }
+
+    private Map<LocalDate, List<ReservableIntervalDto>> loadReservableIntervals(
+            long serviceProviderId, ServiceType serviceType, LocalDate from, LocalDate until) {
+        if (availabilityIndex.isIndexed(serviceProviderId, from, until)) {
+            return findReservableIntervalsFromIndex(serviceProviderId, serviceType, from, until);
+        }
+
+        // islands and ranges only know stored slots
+        final Optional<ScheduleTemplate> template = scheduleTemplateService.findTemplate(serviceProviderId);
+
         return spRepository.findById(serviceProviderId)
             .map(sp -> {
-                final Map<LocalDate, List<TimeSlot>> groupedTimeSlots = getGroupedTimeSlots(sp, from, until);
                 int minimumAdjacentSlots = getMinimumAdjacentSlots(serviceType);
+                final Map<LocalDate, List<ReservableIntervalDto>> groupedIntervals;
+                if (template.isPresent()) {
+                    groupedIntervals = findReservableIntervalsFromTemplate(sp, minimumAdjacentSlots, template.get(), from, until);
+                } else if (availabilityRangeService.isEnabled()) {
+                    groupedIntervals = findReservableIntervalsFromIslands(sp, minimumAdjacentSlots,
+                            availabilityRangeService.findFreeTimeSlotIslands(sp.getId(), from, until));
+                } else if (useIslandQuery) {
+                    groupedIntervals = findReservableIntervalsFromIslands(sp, minimumAdjacentSlots,
+                            timeSlotRepository.findFreeTimeSlotIslands(sp.getId(), LocalDateTime.of(from, LocalTime.MIN),
+                                    LocalDateTime.of(until, LocalTime.MAX), DEFAULT_TIME_SLOT_DURATION.toMinutes()));
+                } else {
+                    groupedIntervals = findReservableIntervalsFromTimeSlots(sp, minimumAdjacentSlots, from, until);
+                }
 
                 final Map<LocalDate, List<ReservableIntervalDto>> availableIntervals = Maps.newLinkedHashMap();
 
                 for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
-                    availableIntervals.put(date, createReservableIntervals(
-                            minimumAdjacentSlots, groupedTimeSlots.getOrDefault(date, Lists.newArrayList()), sp));
+                    availableIntervals.put(date, groupedIntervals.getOrDefault(date, Lists.newArrayList()));
                 }
 
-
                 return  availableIntervals;
 
             })
             .orElseThrow(() -> new ServiceProviderNotFoundException(String.format("Service provider with %d does not exist", serviceProviderId)));
     }
 
-    private List<ReservableIntervalDto> createReservableIntervals(int minimumAdjacentSlots, List<TimeSlot> dateTimeSlots, ServiceProvider sp) {
-        final List<ReservableIntervalDto> reservableIntervals = Lists.newArrayList();
+    private Map<LocalDate, List<ReservableIntervalDto>> findReservableIntervalsFromTimeSlots(
+            ServiceProvider sp, int minimumAdjacentSlots, LocalDate from, LocalDate until) {
+        final Map<LocalDate, List<ReservableIntervalDto>> groupedIntervals = Maps.newHashMap();
 
-            for (int intervalStartIndex = 0; intervalStartIndex <= dateTimeSlots.size() - minimumAdjacentSlots; intervalStartIndex++ ) {
-                TimeSlot intervalStartSlot = dateTimeSlots.get(intervalStartIndex);
-                TimeSlot currentSlot = intervalStartSlot;
-                int adjacentSlotCount = 1;
+        getGroupedTimeSlots(sp, from, until).forEach((date, dateTimeSlots) -> groupedIntervals.put(date,
+                reservableIntervalsEngine.createReservableIntervals(minimumAdjacentSlots, dateTimeSlots, sp.getId())));
 
-                List<TimeSlot> timeSlotsSlice = dateTimeSlots.subList(intervalStartIndex + 1, intervalStartIndex + minimumAdjacentSlots);
-                for (int nextSlotIndex = 0; nextSlotIndex < timeSlotsSlice.size(); nextSlotIndex++ ) {
-                    TimeSlot nextSlot = timeSlotsSlice.get(nextSlotIndex);
+        return groupedIntervals;
+    }
 
-                    if (currentSlot.getStart().plusMinutes(currentSlot.getDuration().toMinutes()).isEqual(nextSlot.getStart())) {
-                        adjacentSlotCount++;
-                    }
+    private Map<LocalDate, List<ReservableIntervalDto>> findReservableIntervalsFromTemplate(
+            ServiceProvider sp, int minimumAdjacentSlots, ScheduleTemplate template, LocalDate from, LocalDate until) {
+        final List<TimeSlotView> storedTimeSlots = timeSlotRepository.findTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+        final Map<LocalDate, List<ReservableIntervalDto>> groupedIntervals = Maps.newHashMap();
 
-                    currentSlot = nextSlot;
-                }
+        free(scheduleTemplateService.expand(template, from, until, storedTimeSlots)).stream()
+                .collect(groupingBy(ts -> ts.getStart().toLocalDate()))
+                .forEach((date, dateTimeSlots) -> groupedIntervals.put(date,
+                        reservableIntervalsEngine.createReservableIntervals(minimumAdjacentSlots, dateTimeSlots, sp.getId())));
 
-                if (adjacentSlotCount == minimumAdjacentSlots) {
-                    reservableIntervals.add(new ReservableIntervalDto(
-                            intervalStartSlot.getStart(),
-                            Duration.ofMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes() * minimumAdjacentSlots),
-                            sp.getId()
-                    ));
-                }
+        return groupedIntervals;
+    }
+
+    private static List<TimeSlotView> free(final List<TimeSlotView> timeSlots) {
+        return timeSlots.stream().filter(ts -> !ts.isReserved()).collect(Collectors.toList());
+    }
+
+    private Map<LocalDate, List<ReservableIntervalDto>> findReservableIntervalsFromIslands(
+            ServiceProvider sp, int minimumAdjacentSlots, List<TimeSlotIsland> islands) {
+        final Duration intervalDuration = Duration.ofMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes() * minimumAdjacentSlots);
+        final Map<LocalDate, List<ReservableIntervalDto>> groupedIntervals = Maps.newHashMap();
+
+        islands.forEach(island -> {
+            final List<ReservableIntervalDto> dateIntervals = groupedIntervals.computeIfAbsent(
+                    island.getStart().toLocalDate(), date -> Lists.newArrayList());
+
+            for (long offset = 0; offset <= island.getRunLength() - minimumAdjacentSlots; offset++) {
+                dateIntervals.add(new ReservableIntervalDto(
+                        island.getStart().plus(DEFAULT_TIME_SLOT_DURATION.multipliedBy(offset)),
+                        intervalDuration,
+                        sp.getId()));
             }
+        });
 
-        return reservableIntervals;
+        return groupedIntervals;
     }
 
+    private Map<LocalDate, List<ReservableIntervalDto>> findReservableIntervalsFromIndex(
+            long serviceProviderId, ServiceType serviceType, LocalDate from, LocalDate until) {
+        final int minimumAdjacentSlots = getMinimumAdjacentSlots(serviceType);
+        final Duration intervalDuration = Duration.ofMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes() * minimumAdjacentSlots);
+
+        final Map<LocalDate, List<ReservableIntervalDto>> availableIntervals = Maps.newLinkedHashMap();
+
+        for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+            availableIntervals.put(date, availabilityIndex.findReservableStarts(serviceProviderId, date, minimumAdjacentSlots)
+                    .stream()
+                    .map(start -> new ReservableIntervalDto(start, intervalDuration, serviceProviderId))
+                    .collect(Collectors.toList()));
+        }
+
+        return availableIntervals;
+    }
 
-    private Map<LocalDate, List<TimeSlot>> getGroupedTimeSlots(
+    private Map<LocalDate, List<TimeSlotView>> getGroupedTimeSlots(
             ServiceProvider sp, LocalDate from, LocalDate until) {
-        List<TimeSlot> availableTimeSlots = timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                sp, LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+        List<TimeSlotView> availableTimeSlots = timeSlotRepository.findFreeTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
 
         return availableTimeSlots.stream()
                 .collect(groupingBy(ts -> ts.getStart().toLocalDate()));
@@ -1,26 +1,51 @@
 package com.github.vikusku.happytires.service;
 
+import com.github.vikusku.happytires.dto.BulkReservationItemDto;
+import com.github.vikusku.happytires.dto.BulkReservationItemStatus;
+import com.github.vikusku.happytires.dto.BulkReservationMode;
+import com.github.vikusku.happytires.dto.BulkReservationResultDto;
 import com.github.vikusku.happytires.dto.CustomerDto;
 import com.github.vikusku.happytires.dto.ReservationDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
 import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.github.vikusku.happytires.exception.TimeSlotConflictException;
 import com.github.vikusku.happytires.model.Customer;
 import com.github.vikusku.happytires.model.Reservation;
 import com.github.vikusku.happytires.model.TimeSlot;
-import com.github.vikusku.happytires.model.TimeSlotPK;
 import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
+import com.github.vikusku.happytires.repository.TimeSlotClaim;
 import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
 
-// TODO add tests
 @Service
 @AllArgsConstructor
 public class ReservationService {
@@ -31,92 +56,389 @@ public class ReservationService {
     @Autowired
     private TimeSlotRepository timeSlotRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private RetryingTransactionTemplate transactionTemplate;
+
+    @Autowired
+    private BookingLockManager bookingLockManager;
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    @Autowired
+    private TimeSlotBatchWriter timeSlotBatchWriter;
+
+    /**
+     * A reservation that no longer holds any slot has no service provider to report and is not found.
+     */
     public Optional<ReservationDto> get(final long id) {
-        return reservationRepository.findById(id).map(this::fromReservation);
+        return reservationRepository.findById(id).flatMap(this::fromReservation);
     }
 
-    // TODO add transaction
     public Optional<ReservationDto> create(final ReservationDto reservationDto) {
-        final Customer customer = new Customer();
-        customer.setName(reservationDto.getCustomerDto().getName());
-        customer.setEmail(reservationDto.getCustomerDto().getEmail());
-        customer.setAddress(reservationDto.getCustomerDto().getAddress());
-        customer.setPhoneNumber(reservationDto.getCustomerDto().getPhoneNumber());
+        return create(reservationDto, null);
+    }
+
+    /**
+     * Runs as one transaction, retried when it loses a race for the slots to a concurrent booking. The provider-day
+     * locks are held around the whole transaction, so queued bookings do not hold a connection.
+     * <p>
+     * Slots held by another checkout are refused; the booking's own hold, if given, is dropped as soon as the booking
+     * commits, still under the locks, so the hold cannot expire and free slots that are already booked.
+     */
+    public Optional<ReservationDto> create(final ReservationDto reservationDto, final String holdId) {
+        final Set<LocalDate> dates = getDates(reservationDto.getStart(), reservationDto.getDuration());
+        return bookingLockManager.withLocks(reservationDto.getServiceProviderId(), dates, () -> {
+            slotHoldService.checkNotHeldByOthers(reservationDto.getServiceProviderId(),
+                    reservationDto.getStart(), reservationDto.getDuration(), holdId);
+            return transactionTemplate.execute(status -> {
+                final Optional<ReservationDto> created = createReservation(reservationDto);
+                convertAfterCommit(holdId);
+                return created;
+            });
+        });
+    }
+
+    private void convertAfterCommit(final String holdId) {
+        if (holdId == null) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                slotHoldService.convert(holdId);
+            }
+        });
+    }
 
+    private Optional<ReservationDto> createReservation(final ReservationDto reservationDto) {
         final Reservation reservation = new Reservation();
-        reservation.setCustomer(customer);
+        reservation.setCustomer(customerService.resolve(reservationDto.getCustomerDto()));
         reservation.setStart(reservationDto.getStart());
         reservation.setDuration(reservationDto.getDuration());
         reservation.setServiceType(reservationDto.getServiceType());
 
-        List<TimeSlot> timeSlots = updateTimeSlots(reservation, reservationDto.getServiceProviderId());
-        reservation.setTimeSlots(timeSlots);
+        final Reservation persisted = reservationRepository.save(reservation);
+        claimTimeSlots(persisted, reservationDto.getServiceProviderId());
+        publishAvailabilityChanged(reservationDto.getServiceProviderId(), getReservationDates(persisted));
 
-        return Optional.ofNullable(fromReservation(reservationRepository.save(reservation)));
+        return Optional.of(toReservationDto(persisted, reservationDto.getServiceProviderId(), reservationDto.getCustomerDto()));
     }
 
-    private List<TimeSlot> updateTimeSlots(final Reservation reservation, final long serviceProviderId) {
-        final List<TimeSlot> slots = Lists.newArrayList();
-        final LocalDateTime reservationStart = reservation.getStart();
-        final LocalDateTime reservationEnd = reservationStart.plusMinutes(reservation.getDuration().toMinutes());
-
-        for(LocalDateTime slotStart = reservationStart;
-            !slotStart.isEqual(reservationEnd);
-            slotStart = slotStart.plusMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes())) {
+    /**
+     * Books a fleet in one transaction: the slots of all target provider-days are read once, the reservations are
+     * planned against them in memory in request order, and all claims go out as one JDBC batch. In
+     * {@link BulkReservationMode#ALL_OR_NOTHING} mode a single rejected item leaves everything unbooked.
+     * <p>
+     * Items share a customer by email, so an item whose customer details differ from an earlier item with the same
+     * email is rejected rather than stored under the earlier item's details.
+     */
+    public BulkReservationResultDto createAll(final List<ReservationDto> reservationDtos, final BulkReservationMode mode) {
+        final SetMultimap<Long, LocalDate> providerDates = HashMultimap.create();
+        reservationDtos.forEach(reservationDto -> providerDates.putAll(
+                reservationDto.getServiceProviderId(), getDates(reservationDto.getStart(), reservationDto.getDuration())));
 
-            final Optional<TimeSlot> tsOpt = timeSlotRepository.findById(new TimeSlotPK(slotStart, serviceProviderId));
+        final String[] customerErrors = new String[reservationDtos.size()];
+        final Map<String, CustomerDto> customerDtos = Maps.newHashMap();
+        for (int i = 0; i < reservationDtos.size(); i++) {
+            final CustomerDto customerDto = reservationDtos.get(i).getCustomerDto();
+            if (!customerDtos.computeIfAbsent(customerDto.getEmail(), email -> customerDto).equals(customerDto)) {
+                customerErrors[i] = "CONFLICTING_CUSTOMER_DETAILS";
+            }
+        }
 
-            if (tsOpt.isPresent()) {
-                final TimeSlot ts = tsOpt.get();
-                if (ts.getReservation() != null && ts.getReservation().getId() != reservation.getId()) {
-                    throw new ReservationPersistenceException("TIME_SLOTS_ALREADY_RESERVED");
+        return bookingLockManager.withLocks(providerDates, () -> {
+            final String[] errors = customerErrors.clone();
+            for (int i = 0; i < reservationDtos.size(); i++) {
+                final ReservationDto reservationDto = reservationDtos.get(i);
+                try {
+                    if (errors[i] == null) {
+                        slotHoldService.checkNotHeldByOthers(reservationDto.getServiceProviderId(),
+                                reservationDto.getStart(), reservationDto.getDuration(), null);
+                    }
+                } catch (ReservationPersistenceException e) {
+                    errors[i] = e.getMessage();
                 }
+            }
 
-                ts.setReservation(reservation);
-                slots.add(ts);
-            } else {
-                throw new ReservationPersistenceException("NO_AVAILABLE_TIME_SLOTS");
+            return transactionTemplate.execute(status ->
+                    createAllReservations(reservationDtos, mode, providerDates, errors.clone(), status));
+        });
+    }
+
+    private BulkReservationResultDto createAllReservations(final List<ReservationDto> reservationDtos,
+                                                           final BulkReservationMode mode,
+                                                           final SetMultimap<Long, LocalDate> providerDates,
+                                                           final String[] errors,
+                                                           final TransactionStatus status) {
+        // start -> free, per provider
+        final Map<Long, Map<LocalDateTime, Boolean>> timeSlots = Maps.newHashMap();
+        providerDates.asMap().forEach((serviceProviderId, dates) -> {
+            dates.forEach(date -> scheduleTemplateService.materialize(serviceProviderId, date));
+            timeSlots.put(serviceProviderId, timeSlotRepository.findTimeSlotViewsStartingBetween(serviceProviderId,
+                    Collections.min(dates).atStartOfDay(), Collections.max(dates).plusDays(1).atStartOfDay())
+                    .stream()
+                    .collect(Collectors.toMap(TimeSlotView::getStart, ts -> !ts.isReserved())));
+        });
+
+        final List<List<LocalDateTime>> plannedStarts = Lists.newArrayList();
+        for (int i = 0; i < reservationDtos.size(); i++) {
+            final ReservationDto reservationDto = reservationDtos.get(i);
+            final Map<LocalDateTime, Boolean> providerTimeSlots = timeSlots.get(reservationDto.getServiceProviderId());
+            final List<LocalDateTime> starts = getSlotStarts(reservationDto.getStart(), reservationDto.getDuration());
+            if (errors[i] == null && !providerTimeSlots.keySet().containsAll(starts)) {
+                errors[i] = "NO_AVAILABLE_TIME_SLOTS";
+            } else if (errors[i] == null && !starts.stream().allMatch(providerTimeSlots::get)) {
+                errors[i] = "TIME_SLOTS_ALREADY_RESERVED";
+            } else if (errors[i] == null) {
+                starts.forEach(start -> providerTimeSlots.put(start, false));
             }
+            plannedStarts.add(errors[i] == null ? starts : null);
         }
 
-        timeSlotRepository.saveAll(slots);
+        final int rejected = (int) Arrays.stream(errors).filter(Objects::nonNull).count();
+        final List<BulkReservationItemDto> items = Lists.newArrayList();
+        if (rejected > 0 && mode == BulkReservationMode.ALL_OR_NOTHING) {
+            status.setRollbackOnly();
+            for (int i = 0; i < reservationDtos.size(); i++) {
+                final BulkReservationItemStatus itemStatus = errors[i] == null
+                        ? BulkReservationItemStatus.NOT_CREATED
+                        : BulkReservationItemStatus.REJECTED;
+                items.add(new BulkReservationItemDto(i, itemStatus, reservationDtos.get(i), errors[i]));
+            }
+            return new BulkReservationResultDto(mode, 0, rejected, items);
+        }
 
-        return slots;
+        final Map<String, Customer> customers = Maps.newHashMap();
+        final Reservation[] reservations = new Reservation[reservationDtos.size()];
+        for (int i = 0; i < reservationDtos.size(); i++) {
+            if (plannedStarts.get(i) != null) {
+                final ReservationDto reservationDto = reservationDtos.get(i);
+                final Reservation reservation = new Reservation();
+                reservation.setCustomer(customers.computeIfAbsent(reservationDto.getCustomerDto().getEmail(),
+                        email -> customerService.resolve(reservationDto.getCustomerDto())));
+                reservation.setStart(reservationDto.getStart());
+                reservation.setDuration(reservationDto.getDuration());
+                reservation.setServiceType(reservationDto.getServiceType());
+                reservations[i] = reservation;
+            }
+        }
+        reservationRepository.saveAll(Arrays.stream(reservations).filter(Objects::nonNull).collect(Collectors.toList()));
+        reservationRepository.flush();
+
+        final List<TimeSlotClaim> claims = Lists.newArrayList();
+        final SetMultimap<Long, LocalDate> changedDates = HashMultimap.create();
+        for (int i = 0; i < reservationDtos.size(); i++) {
+            if (reservations[i] != null) {
+                final long serviceProviderId = reservationDtos.get(i).getServiceProviderId();
+                final long reservationId = reservations[i].getId();
+                plannedStarts.get(i).forEach(start -> claims.add(new TimeSlotClaim(serviceProviderId, start, reservationId)));
+                changedDates.putAll(serviceProviderId, getReservationDates(reservations[i]));
+            }
+        }
+        if (!claims.isEmpty()) {
+            timeSlotBatchWriter.claim(claims);
+            final List<Long> reservationIds = Arrays.stream(reservations)
+                    .filter(Objects::nonNull)
+                    .map(Reservation::getId)
+                    .collect(Collectors.toList());
+            if (timeSlotRepository.countTimeSlotsOfReservations(reservationIds) < claims.size()) {
+                // another instance booked a planned slot, the retry plans again
+                throw new OptimisticLockingFailureException("Time slots changed while booking a fleet");
+            }
+        }
+        changedDates.asMap().forEach((serviceProviderId, dates) -> publishAvailabilityChanged(serviceProviderId, Sets.newHashSet(dates)));
+
+        for (int i = 0; i < reservationDtos.size(); i++) {
+            items.add(reservations[i] != null
+                    ? new BulkReservationItemDto(i, BulkReservationItemStatus.CREATED,
+                            toReservationDto(reservations[i], reservationDtos.get(i).getServiceProviderId(),
+                                    reservationDtos.get(i).getCustomerDto()), null)
+                    : new BulkReservationItemDto(i, BulkReservationItemStatus.REJECTED, reservationDtos.get(i), errors[i]));
+        }
+
+        return new BulkReservationResultDto(mode, reservationDtos.size() - rejected, rejected, items);
+    }
+
+    /**
+     * Claims the reservation's slots with a single conditional update, so a booking costs the same number of
+     * statements whatever its duration. The slots are only read again to tell why a claim fell short.
+     */
+    private void claimTimeSlots(final Reservation reservation, final long serviceProviderId) {
+        claimTimeSlots(reservation, serviceProviderId, getSlotStarts(reservation.getStart(), reservation.getDuration()));
+    }
+
+    private void claimTimeSlots(final Reservation reservation, final long serviceProviderId, final Collection<LocalDateTime> starts) {
+        starts.stream()
+                .map(LocalDateTime::toLocalDate)
+                .distinct()
+                .forEach(date -> scheduleTemplateService.materialize(serviceProviderId, date));
+
+        if (timeSlotRepository.claimTimeSlots(serviceProviderId, starts, reservation) < starts.size()) {
+            throw new TimeSlotConflictException(timeSlotRepository.countTimeSlots(serviceProviderId, starts) < starts.size()
+                    ? "NO_AVAILABLE_TIME_SLOTS"
+                    : "TIME_SLOTS_ALREADY_RESERVED");
+        }
     }
 
     public Optional<ReservationDto> update(final long id, final ReservationDto reservationDto) {
+        final SetMultimap<Long, LocalDate> providerDates = HashMultimap.create();
+        providerDates.putAll(reservationDto.getServiceProviderId(), getDates(reservationDto.getStart(), reservationDto.getDuration()));
+        reservationRepository.findById(id).ifPresent(reservation -> getServiceProviderId(reservation)
+                .ifPresent(serviceProviderId -> providerDates.putAll(serviceProviderId, getReservationDates(reservation))));
+
+        return bookingLockManager.withLocks(providerDates, () -> {
+            slotHoldService.checkNotHeldByOthers(reservationDto.getServiceProviderId(),
+                    reservationDto.getStart(), reservationDto.getDuration(), null);
+            return transactionTemplate.execute(status -> updateReservation(id, reservationDto));
+        });
+    }
+
+    /**
+     * Moves the reservation by diffing its old and new slots: only the slots it leaves are released and only the
+     * ones it enters are claimed, each in one statement, so a 15 minute shift touches two slot rows.
+     */
+    private Optional<ReservationDto> updateReservation(final long id, final ReservationDto reservationDto) {
         return reservationRepository.findById(id)
                 .map(existingReservation -> {
+                    final long serviceProviderId = reservationDto.getServiceProviderId();
+                    final Optional<Long> previousServiceProviderId = getServiceProviderId(existingReservation);
+                    final Set<LocalDateTime> previousStarts = existingReservation.getTimeSlots().stream()
+                            .map(TimeSlot::getStart)
+                            .collect(Collectors.toSet());
 
                     existingReservation.setStart(reservationDto.getStart());
                     existingReservation.setDuration(reservationDto.getDuration());
                     existingReservation.setServiceType(reservationDto.getServiceType());
+                    final Reservation persisted = reservationRepository.save(existingReservation);
 
-                    List<TimeSlot> timeSlots = updateTimeSlots(existingReservation, reservationDto.getServiceProviderId());
-                    existingReservation.setTimeSlots(timeSlots);
+                    final Set<LocalDateTime> starts = Sets.newHashSet(getSlotStarts(persisted.getStart(), persisted.getDuration()));
+                    if (previousServiceProviderId.isPresent() && previousServiceProviderId.get() != serviceProviderId) {
+                        timeSlotRepository.releaseTimeSlots(persisted, previousStarts);
+                        claimTimeSlots(persisted, serviceProviderId, starts);
+                        publishAvailabilityChanged(previousServiceProviderId.get(), getDates(previousStarts));
+                        publishAvailabilityChanged(serviceProviderId, getDates(starts));
+                    } else {
+                        final Set<LocalDateTime> releasedStarts = Sets.difference(previousStarts, starts).immutableCopy();
+                        final Set<LocalDateTime> claimedStarts = Sets.difference(starts, previousStarts).immutableCopy();
+                        if (!releasedStarts.isEmpty()) {
+                            timeSlotRepository.releaseTimeSlots(persisted, releasedStarts);
+                        }
+                        if (!claimedStarts.isEmpty()) {
+                            claimTimeSlots(persisted, serviceProviderId, claimedStarts);
+                        }
+                        final Set<LocalDate> changedDates = getDates(Sets.union(releasedStarts, claimedStarts));
+                        if (!changedDates.isEmpty()) {
+                            publishAvailabilityChanged(serviceProviderId, changedDates);
+                        }
+                    }
 
-                    return Optional.ofNullable(fromReservation(reservationRepository.save(existingReservation)));
-                })
-                .orElseGet(Optional::empty);
+                    return toReservationDto(persisted, serviceProviderId);
+                });
     }
 
+    /**
+     * Frees all of the reservation's slots in one statement before removing it. Deleting an unknown reservation
+     * does nothing.
+     */
     public void delete(final long id) {
-        reservationRepository.deleteById(id);
+        final SetMultimap<Long, LocalDate> providerDates = HashMultimap.create();
+        reservationRepository.findById(id).ifPresent(reservation -> getServiceProviderId(reservation)
+                .ifPresent(serviceProviderId -> providerDates.putAll(serviceProviderId, getReservationDates(reservation))));
+
+        bookingLockManager.withLocks(providerDates, () -> transactionTemplate.execute(status -> {
+            reservationRepository.findById(id).ifPresent(reservation -> {
+                final Optional<Long> serviceProviderId = getServiceProviderId(reservation);
+                final Set<LocalDate> dates = getDates(reservation.getTimeSlots().stream()
+                        .map(TimeSlot::getStart)
+                        .collect(Collectors.toSet()));
+
+                timeSlotRepository.releaseTimeSlots(reservation);
+                reservationRepository.deleteById(id);
+                serviceProviderId.ifPresent(spId -> publishAvailabilityChanged(spId, dates));
+            });
+            return null;
+        }));
+    }
+
+    private static Optional<Long> getServiceProviderId(final Reservation reservation) {
+        return reservation.getTimeSlots() == null || reservation.getTimeSlots().isEmpty()
+                ? Optional.empty()
+                : Optional.of(reservation.getTimeSlots().get(0).getServiceProvider().getId());
+    }
+
+    private static Set<LocalDate> getDates(final Collection<LocalDateTime> starts) {
+        return starts.stream().map(LocalDateTime::toLocalDate).collect(Collectors.toSet());
+    }
+
+    private Set<LocalDate> getReservationDates(final Reservation reservation) {
+        return getDates(reservation.getStart(), reservation.getDuration());
+    }
+
+    private Set<LocalDate> getDates(final LocalDateTime start, final Duration duration) {
+        final Set<LocalDate> dates = Sets.newHashSet();
+        final LocalDateTime end = start.plusMinutes(duration.toMinutes());
+
+        for (LocalDate date = start.toLocalDate();
+             date.atStartOfDay().isBefore(end);
+             date = date.plusDays(1)) {
+            dates.add(date);
+        }
+
+        return dates;
     }
 
-    public ReservationDto fromReservation(final Reservation reservation) {
+    private static List<LocalDateTime> getSlotStarts(final LocalDateTime start, final Duration duration) {
+        final List<LocalDateTime> starts = Lists.newArrayList();
+        final LocalDateTime end = start.plusMinutes(duration.toMinutes());
+        for (LocalDateTime slotStart = start;
+             slotStart.isBefore(end);
+             slotStart = slotStart.plusMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes())) {
+            starts.add(slotStart);
+        }
+
+        return starts;
+    }
+
+    private void publishAvailabilityChanged(final long serviceProviderId, final Set<LocalDate> dates) {
+        eventPublisher.publishEvent(new AvailabilityChangedEvent(serviceProviderId, dates));
+    }
+
+    public Optional<ReservationDto> fromReservation(final Reservation reservation) {
+        return getServiceProviderId(reservation).map(serviceProviderId -> toReservationDto(reservation, serviceProviderId));
+    }
+
+    private ReservationDto toReservationDto(final Reservation reservation, final long serviceProviderId) {
+        return toReservationDto(reservation, serviceProviderId, new CustomerDto(
+                reservation.getCustomer().getName(),
+                reservation.getCustomer().getAddress(),
+                reservation.getCustomer().getEmail(),
+                reservation.getCustomer().getPhoneNumber()
+        ));
+    }
+
+    /**
+     * With the customer as just resolved, so that the customer reference is not loaded only to be echoed back.
+     */
+    private ReservationDto toReservationDto(final Reservation reservation, final long serviceProviderId, final CustomerDto customerDto) {
         final ReservationDto reservationDto = new ReservationDto();
         reservationDto.setId(reservation.getId());
         reservationDto.setStart(reservation.getStart());
         reservationDto.setDuration(reservation.getDuration());
         reservationDto.setServiceType(reservation.getServiceType());
-        reservationDto.setServiceProviderId(reservation.getTimeSlots().get(0).getServiceProvider().getId());
+        reservationDto.setServiceProviderId(serviceProviderId);
         reservationDto.setCustomerDto(new CustomerDto(
-                reservation.getCustomer().getName(),
-                reservation.getCustomer().getAddress(),
-                reservation.getCustomer().getEmail(),
-                reservation.getCustomer().getPhoneNumber()
-        ));
+                customerDto.getName(), customerDto.getAddress(), customerDto.getEmail(), customerDto.getPhoneNumber()));
 
         return reservationDto;
     }
@@ -0,0 +1,61 @@
+package com.github.vikusku.happytires.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs a callback in a transaction and runs it again in a new one when it loses a race: a lock timeout, deadlock,
+ * stale version or a concurrent insert of the same key. Attempts are bounded and spaced by exponential backoff with
+ * full jitter, so that contending writers do not retry in lockstep.
+ */
+@Slf4j
+@Component
+public class RetryingTransactionTemplate {
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final Duration backoff;
+
+    @Autowired
+    public RetryingTransactionTemplate(PlatformTransactionManager transactionManager,
+                                       @Value("${happytires.transaction-retry.max-attempts:5}") int maxAttempts,
+                                       @Value("${happytires.transaction-retry.backoff:20ms}") Duration backoff) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+    }
+
+    public <T> T execute(final TransactionCallback<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(action);
+            } catch (ConcurrencyFailureException | DuplicateKeyException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+
+                log.debug("Transaction attempt {} of {} lost a race, retrying", attempt, maxAttempts, e);
+                sleep(ThreadLocalRandom.current().nextLong((backoff.toMillis() << Math.min(attempt - 1, 10)) + 1));
+            }
+        }
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry a transaction", e);
+        }
+    }
+}
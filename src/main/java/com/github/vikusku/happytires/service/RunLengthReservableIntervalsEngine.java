@@ -0,0 +1,50 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * Single pass over the day's slots. Tracks the length of the current run of adjacent slots and
+ * emits the start of the window ending at the current slot once the run is long enough, O(n) per day.
+ */
+@Component
+@ConditionalOnProperty(name = "happytires.reservable-intervals.engine", havingValue = "run-length", matchIfMissing = true)
+public class RunLengthReservableIntervalsEngine implements ReservableIntervalsEngine {
+
+    @Override
+    public List<ReservableIntervalDto> createReservableIntervals(
+            int minimumAdjacentSlots, List<TimeSlotView> dateTimeSlots, long serviceProviderId) {
+        final List<ReservableIntervalDto> reservableIntervals = Lists.newArrayList();
+        final Duration intervalDuration = Duration.ofMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes() * minimumAdjacentSlots);
+
+        int runLength = 0;
+        long expectedStartMinute = 0;
+
+        for (int slotIndex = 0; slotIndex < dateTimeSlots.size(); slotIndex++) {
+            final TimeSlotView slot = dateTimeSlots.get(slotIndex);
+            final long startMinute = slot.getStart().toEpochSecond(ZoneOffset.UTC) / 60;
+
+            runLength = runLength > 0 && startMinute == expectedStartMinute ? runLength + 1 : 1;
+            expectedStartMinute = startMinute + slot.getDuration().toMinutes();
+
+            if (runLength >= minimumAdjacentSlots) {
+                reservableIntervals.add(new ReservableIntervalDto(
+                        dateTimeSlots.get(slotIndex - minimumAdjacentSlots + 1).getStart(),
+                        intervalDuration,
+                        serviceProviderId
+                ));
+            }
+        }
+
+        return reservableIntervals;
+    }
+}
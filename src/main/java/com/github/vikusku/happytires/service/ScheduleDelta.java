@@ -0,0 +1,62 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.exception.InvalidScheduleException;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.github.vikusku.happytires.model.TimeSlotPK;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between the stored slots of the updated days and the slots of a schedule update, computed in
+ * one pass over each side by hashing on {@link TimeSlotPK}.
+ */
+@Getter
+public class ScheduleDelta {
+
+    private final List<TimeSlot> inserts;
+    private final List<LocalDateTime> deletes;
+
+    private ScheduleDelta(final List<TimeSlot> inserts, final List<LocalDateTime> deletes) {
+        this.inserts = inserts;
+        this.deletes = deletes;
+    }
+
+    /**
+     * Free slots missing from the update are deleted and updated slots not stored yet are inserted.
+     * Reserved slots are kept, and an update containing one of them is rejected.
+     *
+     * @param currentTimeSlots stored slots of the days in the update
+     * @param updatedTimeSlots available slots of the update
+     */
+    public static ScheduleDelta compute(final List<TimeSlotView> currentTimeSlots, final List<TimeSlot> updatedTimeSlots) {
+        final Map<TimeSlotPK, TimeSlotView> current = Maps.newHashMapWithExpectedSize(currentTimeSlots.size());
+        currentTimeSlots.forEach(ts -> current.put(new TimeSlotPK(ts.getStart(), ts.getServiceProviderId()), ts));
+
+        final List<TimeSlot> inserts = Lists.newArrayList();
+        for (TimeSlot ts : updatedTimeSlots) {
+            final TimeSlotView currentTs = current.remove(new TimeSlotPK(ts.getStart(), ts.getServiceProvider().getId()));
+            if (currentTs == null) {
+                inserts.add(ts);
+            } else if (currentTs.isReserved()) {
+                throw new InvalidScheduleException("Updating time slots with reservation is not allowed");
+            }
+        }
+
+        final List<LocalDateTime> deletes = Lists.newArrayList();
+        current.values().stream()
+                .filter(ts -> !ts.isReserved())
+                .forEach(ts -> deletes.add(ts.getStart()));
+
+        return new ScheduleDelta(inserts, deletes);
+    }
+
+    public boolean isEmpty() {
+        return inserts.isEmpty() && deletes.isEmpty();
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ImportStatus;
+import com.github.vikusku.happytires.dto.ScheduleImportStatusDto;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one schedule import. Counters are updated by the importing thread and read by status requests; only
+ * the first {@code maxErrors} error messages are kept.
+ */
+class ScheduleImportJob {
+
+    private final String id = UUID.randomUUID().toString();
+    private final Instant startedAt = Instant.now();
+    private final int maxErrors;
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsImported = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong timeSlotsWritten = new AtomicLong();
+    private final List<String> errors = Lists.newArrayList();
+
+    private volatile ImportStatus status = ImportStatus.RUNNING;
+    private volatile Instant finishedAt;
+
+    ScheduleImportJob(final int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    void imported(final long rows, final long timeSlots) {
+        rowsImported.addAndGet(rows);
+        timeSlotsWritten.addAndGet(timeSlots);
+    }
+
+    void rejected(final long rows, final String error) {
+        rowsRejected.addAndGet(rows);
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(error);
+            }
+        }
+    }
+
+    void finish(final ImportStatus status) {
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+
+    double rowsPerSecond() {
+        final long millis = Duration.between(startedAt, finishedAt == null ? Instant.now() : finishedAt).toMillis();
+        return rowsRead.get() * 1000.0 / Math.max(millis, 1);
+    }
+
+    ScheduleImportStatusDto toStatusDto() {
+        final List<String> errorsSnapshot;
+        synchronized (errors) {
+            errorsSnapshot = ImmutableList.copyOf(errors);
+        }
+
+        return new ScheduleImportStatusDto(id, status, rowsRead.get(), rowsImported.get(), rowsRejected.get(),
+                timeSlotsWritten.get(), rowsPerSecond(), startedAt, finishedAt, errorsSnapshot);
+    }
+}
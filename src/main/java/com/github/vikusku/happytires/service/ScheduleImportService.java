@@ -0,0 +1,381 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ImportStatus;
+import com.github.vikusku.happytires.dto.ScheduleImportStatusDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
+import com.google.common.collect.UnmodifiableIterator;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * Bulk schedule import from CSV rows of {@code serviceProviderId,date,start,durationMin}, each row an availability
+ * interval as in the schedule API. The file is read one line at a time and written in chunks of
+ * {@code chunkSize} rows, so memory stays bounded by the chunk however large the file is.
+ * <p>
+ * Each run of consecutive rows of one provider is imported in its own transaction: a failure rolls back that
+ * provider only. Rows are expected grouped by provider and ordered by date; rows overlapping stored slots or
+ * earlier rows are rejected and reported, the rest are imported.
+ */
+@Slf4j
+@Service
+public class ScheduleImportService {
+
+    private static final Splitter CSV_SPLITTER = Splitter.on(',').trimResults();
+    private static final int CSV_COLUMNS = 4;
+
+    private final ServiceProviderRepository spRepository;
+    private final TimeSlotRepository timeSlotRepository;
+    private final TimeSlotBatchWriter timeSlotBatchWriter;
+    private final ScheduleTemplateService scheduleTemplateService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService importPool;
+    private final int chunkSize;
+    private final int maxErrors;
+    private final Cache<String, ScheduleImportJob> jobs;
+
+    @Autowired
+    public ScheduleImportService(ServiceProviderRepository spRepository,
+                                 TimeSlotRepository timeSlotRepository,
+                                 TimeSlotBatchWriter timeSlotBatchWriter,
+                                 ScheduleTemplateService scheduleTemplateService,
+                                 ApplicationEventPublisher eventPublisher,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${happytires.schedule-import.parallelism:2}") int parallelism,
+                                 @Value("${happytires.schedule-import.chunk-size:500}") int chunkSize,
+                                 @Value("${happytires.schedule-import.max-errors:100}") int maxErrors,
+                                 @Value("${happytires.schedule-import.job-retention:24h}") Duration jobRetention) {
+        this.spRepository = spRepository;
+        this.timeSlotRepository = timeSlotRepository;
+        this.timeSlotBatchWriter = timeSlotBatchWriter;
+        this.scheduleTemplateService = scheduleTemplateService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.importPool = Executors.newFixedThreadPool(parallelism);
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+        this.jobs = CacheBuilder.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(jobRetention)
+                .build();
+    }
+
+    /**
+     * Stores the upload in a temporary file and imports it in the background.
+     */
+    public ScheduleImportStatusDto startImport(final MultipartFile file) {
+        final Path csv;
+        try {
+            csv = Files.createTempFile("schedule-import-", ".csv");
+            file.transferTo(csv);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store uploaded schedule " + file.getOriginalFilename(), e);
+        }
+
+        final ScheduleImportJob job = newJob();
+        importPool.execute(() -> {
+            try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                run(job, reader);
+            } catch (IOException e) {
+                job.rejected(0, "Could not read uploaded schedule: " + e.getMessage());
+                job.finish(ImportStatus.FAILED);
+            } finally {
+                try {
+                    Files.deleteIfExists(csv);
+                } catch (IOException e) {
+                    log.warn("Could not delete {}", csv, e);
+                }
+            }
+        });
+
+        return job.toStatusDto();
+    }
+
+    /**
+     * Imports the rows in the calling thread.
+     */
+    public ScheduleImportStatusDto importSchedule(final Reader csv) {
+        final ScheduleImportJob job = newJob();
+        run(job, csv instanceof BufferedReader ? (BufferedReader) csv : new BufferedReader(csv));
+        return job.toStatusDto();
+    }
+
+    public Optional<ScheduleImportStatusDto> getStatus(final String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId)).map(ScheduleImportJob::toStatusDto);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        importPool.shutdown();
+    }
+
+    private ScheduleImportJob newJob() {
+        final ScheduleImportJob job = new ScheduleImportJob(maxErrors);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    private void run(final ScheduleImportJob job, final BufferedReader reader) {
+        try {
+            final PeekingIterator<ImportRow> rows = Iterators.peekingIterator(new ImportRowIterator(job, reader));
+            while (rows.hasNext()) {
+                importServiceProvider(job, rows.peek().serviceProviderId, rows);
+            }
+            job.finish(ImportStatus.COMPLETED);
+        } catch (RuntimeException e) {
+            log.error("Schedule import {} failed", job.getId(), e);
+            job.rejected(0, "Import aborted: " + e.getMessage());
+            job.finish(ImportStatus.FAILED);
+        }
+
+        final ScheduleImportStatusDto status = job.toStatusDto();
+        log.info("Schedule import {} {}: {} rows read, {} imported, {} rejected, {} time slots written, {} rows/s",
+                job.getId(), status.getStatus(), status.getRowsRead(), status.getRowsImported(),
+                status.getRowsRejected(), status.getTimeSlotsWritten(), String.format("%.1f", status.getRowsPerSecond()));
+    }
+
+    /**
+     * Imports the run of rows of the provider at the head of {@code rows} in one transaction.
+     */
+    private void importServiceProvider(final ScheduleImportJob job,
+                                       final long serviceProviderId,
+                                       final PeekingIterator<ImportRow> rows) {
+        final Iterator<ImportRow> serviceProviderRows = new AbstractIterator<ImportRow>() {
+            @Override
+            protected ImportRow computeNext() {
+                return rows.hasNext() && rows.peek().serviceProviderId == serviceProviderId ? rows.next() : endOfData();
+            }
+        };
+
+        final ImportCount imported = new ImportCount();
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    importRows(job, serviceProviderId, serviceProviderRows, imported));
+            job.imported(imported.rows, imported.timeSlots);
+        } catch (RuntimeException e) {
+            log.warn("Schedule import {} rolled back service provider {}", job.getId(), serviceProviderId, e);
+            job.rejected(imported.rows + Iterators.size(serviceProviderRows), String.format(
+                    "Rows of service provider with id=[%d] were rolled back: %s", serviceProviderId, e.getMessage()));
+        }
+    }
+
+    private void importRows(final ScheduleImportJob job,
+                            final long serviceProviderId,
+                            final Iterator<ImportRow> rows,
+                            final ImportCount imported) {
+        final Optional<ServiceProvider> spOpt = spRepository.findById(serviceProviderId);
+        if (!spOpt.isPresent()) {
+            rows.forEachRemaining(row -> job.rejected(1, row.error(
+                    String.format("Service provider with id=[%d] does not exist", serviceProviderId))));
+            return;
+        }
+
+        final ServiceProvider sp = spOpt.get();
+        final Set<LocalDate> dates = Sets.newHashSet();
+        final UnmodifiableIterator<List<ImportRow>> chunks = Iterators.partition(rows, chunkSize);
+        while (chunks.hasNext()) {
+            final List<ImportRow> chunk = chunks.next();
+            final Set<LocalDateTime> takenStarts = findStoredStarts(serviceProviderId, chunk);
+
+            final List<TimeSlot> timeSlots = Lists.newArrayList();
+            for (ImportRow row : chunk) {
+                final List<LocalDateTime> starts = row.timeSlotStarts();
+                if (starts.stream().anyMatch(takenStarts::contains)) {
+                    job.rejected(1, row.error("Interval overlaps existing time slots"));
+                    continue;
+                }
+
+                takenStarts.addAll(starts);
+                starts.forEach(start -> timeSlots.add(new TimeSlot(start, sp, DEFAULT_TIME_SLOT_DURATION, null)));
+                dates.add(row.date);
+                imported.rows++;
+            }
+
+            imported.timeSlots += timeSlotBatchWriter.insert(serviceProviderId, timeSlots.stream());
+        }
+
+        if (!dates.isEmpty()) {
+            scheduleTemplateService.addExceptions(serviceProviderId, dates);
+            eventPublisher.publishEvent(new AvailabilityChangedEvent(serviceProviderId, dates));
+        }
+    }
+
+    /**
+     * Starts of the stored slots between the earliest and the latest slot of the chunk. Slots written by earlier
+     * chunks of the same transaction are included.
+     */
+    private Set<LocalDateTime> findStoredStarts(final long serviceProviderId, final List<ImportRow> chunk) {
+        final List<LocalDateTime> chunkStarts = chunk.stream()
+                .flatMap(row -> row.timeSlotStarts().stream())
+                .collect(Collectors.toList());
+        if (chunkStarts.isEmpty()) {
+            return Sets.newHashSet();
+        }
+
+        return timeSlotRepository.findTimeSlotViewsStartingBetween(serviceProviderId,
+                Collections.min(chunkStarts), Collections.max(chunkStarts).plus(DEFAULT_TIME_SLOT_DURATION))
+                .stream()
+                .map(TimeSlotView::getStart)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Rows and slots written by the current transaction, counted on the job only once it commits.
+     */
+    private static class ImportCount {
+        private long rows;
+        private long timeSlots;
+    }
+
+    @AllArgsConstructor
+    private static class ImportRow {
+        private final long lineNumber;
+        private final long serviceProviderId;
+        private final LocalDate date;
+        private final LocalTime start;
+        private final Duration duration;
+
+        private List<LocalDateTime> timeSlotStarts() {
+            final List<LocalDateTime> starts = Lists.newArrayList();
+            final LocalDateTime intervalEnd = LocalDateTime.of(date, start).plus(duration);
+            for (LocalDateTime slotStart = LocalDateTime.of(date, start);
+                 slotStart.isBefore(intervalEnd);
+                 slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+                starts.add(slotStart);
+            }
+
+            return starts;
+        }
+
+        /**
+         * @return why the row cannot be imported on {@code today}: it lies in the past, is not aligned to the slot
+         * grid or runs past midnight
+         */
+        private Optional<String> validate(final LocalDate today) {
+            if (date.isBefore(today)) {
+                return Optional.of("Date must be today or later");
+            }
+            if (start.toNanoOfDay() % DEFAULT_TIME_SLOT_DURATION.toNanos() != 0
+                    || duration.toNanos() % DEFAULT_TIME_SLOT_DURATION.toNanos() != 0) {
+                return Optional.of(String.format("Start and duration must be multiples of %d minutes",
+                        DEFAULT_TIME_SLOT_DURATION.toMinutes()));
+            }
+            if (LocalDateTime.of(date, start).plus(duration).isAfter(date.plusDays(1).atStartOfDay())) {
+                return Optional.of("Interval must end by midnight");
+            }
+            return Optional.empty();
+        }
+
+        private String error(final String message) {
+            return String.format("Line %d: %s", lineNumber, message);
+        }
+    }
+
+    /**
+     * Parses lines lazily, skipping blank lines and a header. Malformed rows are rejected on the job and skipped.
+     */
+    private static class ImportRowIterator extends AbstractIterator<ImportRow> {
+
+        private final ScheduleImportJob job;
+        private final BufferedReader reader;
+        private long lineNumber;
+
+        private ImportRowIterator(final ScheduleImportJob job, final BufferedReader reader) {
+            this.job = job;
+            this.reader = reader;
+        }
+
+        @Override
+        protected ImportRow computeNext() {
+            String line;
+            while ((line = readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && !CharMatcher.inRange('0', '9').matches(line.trim().charAt(0)))) {
+                    continue;
+                }
+
+                job.rowRead();
+                final List<String> columns = CSV_SPLITTER.splitToList(line);
+                if (columns.size() != CSV_COLUMNS) {
+                    job.rejected(1, String.format("Line %d: Expected %d columns but got %d", lineNumber, CSV_COLUMNS, columns.size()));
+                    continue;
+                }
+
+                try {
+                    final Duration duration = Duration.ofMinutes(Long.parseLong(columns.get(3)));
+                    if (duration.isNegative() || duration.isZero()) {
+                        job.rejected(1, String.format("Line %d: Duration must be positive", lineNumber));
+                        continue;
+                    }
+
+                    final ImportRow row = new ImportRow(lineNumber, Long.parseLong(columns.get(0)), LocalDate.parse(columns.get(1)),
+                            LocalTime.parse(columns.get(2)), duration);
+                    final Optional<String> invalid = row.validate(LocalDate.now());
+                    if (invalid.isPresent()) {
+                        job.rejected(1, row.error(invalid.get()));
+                        continue;
+                    }
+
+                    return row;
+                } catch (RuntimeException e) {
+                    job.rejected(1, String.format("Line %d: %s", lineNumber, e.getMessage()));
+                }
+            }
+
+            return endOfData();
+        }
+
+        private String readLine() {
+            try {
+                return reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -1,35 +1,51 @@
 package com.github.vikusku.happytires.service;
 
 import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.dto.CustomerDto;
 import com.github.vikusku.happytires.dto.IntervalStatus;
 import com.github.vikusku.happytires.dto.ReservationDto;
 import com.github.vikusku.happytires.dto.ScheduleIntervalDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
 import com.github.vikusku.happytires.exception.InvalidScheduleException;
 import com.github.vikusku.happytires.exception.ServiceProviderNotFoundException;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
 import com.github.vikusku.happytires.model.ServiceProvider;
 import com.github.vikusku.happytires.model.TimeSlot;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.ReservationView;
 import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
 import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
 import com.github.vikusku.happytires.util.Constants;
+import com.github.vikusku.happytires.util.TimeSlotStreams;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
 import static java.time.temporal.ChronoUnit.MINUTES;
 import static java.util.stream.Collectors.groupingBy;
 
 // TODO Create parent interface for Reservation and Interval
+@Slf4j
 @AllArgsConstructor
 @Service
 public class ScheduleService {
@@ -40,18 +56,39 @@ public class ScheduleService {
     @Autowired
     private ServiceProviderRepository spRepository;
 
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TimeSlotBatchWriter timeSlotBatchWriter;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
     private final static Duration FULL_DAY = Duration.ofMinutes(13 * 60);
     private final static LocalTime START_OF_DAY = LocalTime.parse("08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_TIME);
     private final static LocalTime END_OF_DAY = LocalTime.parse("21:00:00+02:00", DateTimeFormatter.ISO_OFFSET_TIME);
+    private final static int PERSIST_BATCH_SIZE = 50;
 
+    @Transactional(readOnly = true)
     public Map<LocalDate, List<ScheduleIntervalDto>> getScheduleForServiceProvider(
             final long serviceProviderId,
             final LocalDate from,
             final LocalDate until) {
         return  spRepository.findById(serviceProviderId)
                 .map(sp -> {
-                    final List<TimeSlot> timeSlots = timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                            sp, LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+                    final List<TimeSlotView> storedTimeSlots = timeSlotRepository.findTimeSlotViews(
+                            sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+                    final List<TimeSlotView> timeSlots = scheduleTemplateService.findTemplate(sp.getId())
+                            .map(template -> scheduleTemplateService.expand(template, from, until, storedTimeSlots))
+                            .orElse(storedTimeSlots);
+                    final Map<Long, ReservationDto> reservations = findReservations(sp.getId(), timeSlots);
 
                     Map<LocalDate, List<ScheduleIntervalDto>> intervalsFromTimeSlots = timeSlots.stream()
                             .collect(groupingBy(ts -> ts.getStart().toLocalDate()))
@@ -59,75 +96,134 @@ public class ScheduleService {
                             .stream()
                             .collect(Collectors.toMap(
                                     Map.Entry::getKey,
-                                    e ->  parseTimeSlots(e.getValue())
+                                    e ->  parseTimeSlots(e.getValue(), reservations)
                             ));
 
                     return generateGrid(from, until, intervalsFromTimeSlots);
                 })
                 .orElseThrow(() -> new ServiceProviderNotFoundException(String.format("Service provider with %d does not exist", serviceProviderId)));
     }
+
+    /**
+     * Streaming variant of {@link #getScheduleForServiceProvider} handing one day at a time to the consumer.
+     */
+    @Transactional(readOnly = true)
+    public void streamScheduleForServiceProvider(
+            final long serviceProviderId,
+            final LocalDate from,
+            final LocalDate until,
+            final BiConsumer<LocalDate, List<ScheduleIntervalDto>> dayConsumer) {
+        final ServiceProvider sp = spRepository.findById(serviceProviderId)
+                .orElseThrow(() -> new ServiceProviderNotFoundException(String.format("Service provider with %d does not exist", serviceProviderId)));
+
+        final Optional<ScheduleTemplate> template = scheduleTemplateService.findTemplate(sp.getId());
+
+        try (Stream<TimeSlotView> timeSlots = timeSlotRepository.streamTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX))) {
+            TimeSlotStreams.forEachDay(timeSlots, from, until, (date, storedDayTimeSlots) -> {
+                final List<TimeSlotView> dayTimeSlots = template
+                        .map(t -> scheduleTemplateService.expandDay(t, date, storedDayTimeSlots))
+                        .orElse(storedDayTimeSlots);
+                dayConsumer.accept(date, generateDayGrid(dayTimeSlots.isEmpty()
+                        ? null
+                        : parseTimeSlots(dayTimeSlots, findReservations(sp.getId(), dayTimeSlots))));
+            });
+        }
+    }
+
+    private Map<Long, ReservationDto> findReservations(final long serviceProviderId, final List<TimeSlotView> timeSlots) {
+        final Set<Long> reservationIds = timeSlots.stream()
+                .filter(TimeSlotView::isReserved)
+                .map(TimeSlotView::getReservationId)
+                .collect(Collectors.toSet());
+
+        if (reservationIds.isEmpty()) {
+            return Maps.newHashMap();
+        }
+
+        return reservationRepository.findReservationViews(reservationIds).stream()
+                .collect(Collectors.toMap(ReservationView::getId, reservation -> toReservationDto(serviceProviderId, reservation)));
+    }
+
+    private ReservationDto toReservationDto(final long serviceProviderId, final ReservationView reservation) {
+        return new ReservationDto(
+                reservation.getId(),
+                serviceProviderId,
+                reservation.getStart(),
+                reservation.getDuration(),
+                reservation.getServiceType(),
+                new CustomerDto(
+                        reservation.getCustomerName(),
+                        reservation.getCustomerAddress(),
+                        reservation.getCustomerEmail(),
+                        reservation.getCustomerPhoneNumber()));
+    }
+
     private Map<LocalDate, List<ScheduleIntervalDto>> generateGrid(LocalDate from, LocalDate until, Map<LocalDate,
             List<ScheduleIntervalDto>> intervalsFromTimeSlots) {
         Map<LocalDate, List<ScheduleIntervalDto>> schedule = Maps.newLinkedHashMap();
 
         for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
-            final List<ScheduleIntervalDto> daySchedule = Lists.newArrayList();
-
-            final List<ScheduleIntervalDto> dayIntervalsFromTimeSlots = intervalsFromTimeSlots.get(date);
-            if (dayIntervalsFromTimeSlots == null) {
-                daySchedule.add(new ScheduleIntervalDto(START_OF_DAY, FULL_DAY, null, IntervalStatus.UNAVAILABLE));
-            } else {
-                ScheduleIntervalDto previousInterval = dayIntervalsFromTimeSlots.get(0);
-                if (START_OF_DAY.isBefore(previousInterval.getStart())) {
-                    daySchedule.add(new ScheduleIntervalDto(START_OF_DAY,
-                            Duration.ofMinutes(START_OF_DAY.until(previousInterval.getStart(), MINUTES)), null, IntervalStatus.UNAVAILABLE));
-                }
+            schedule.put(date, generateDayGrid(intervalsFromTimeSlots.get(date)));
+        }
 
-                for (int intervalIndex = 1; intervalIndex < dayIntervalsFromTimeSlots.size(); intervalIndex++) {
+        return schedule;
+    }
 
-                    daySchedule.add(previousInterval);
+    private List<ScheduleIntervalDto> generateDayGrid(final List<ScheduleIntervalDto> dayIntervalsFromTimeSlots) {
+        final List<ScheduleIntervalDto> daySchedule = Lists.newArrayList();
 
-                    final ScheduleIntervalDto currentInterval = dayIntervalsFromTimeSlots.get(intervalIndex);
-                    final LocalTime endOfPreviousInterval = previousInterval.getStart().plusMinutes(previousInterval.getDurationMin().toMinutes());
+        if (dayIntervalsFromTimeSlots == null) {
+            daySchedule.add(new ScheduleIntervalDto(START_OF_DAY, FULL_DAY, null, IntervalStatus.UNAVAILABLE));
+        } else {
+            ScheduleIntervalDto previousInterval = dayIntervalsFromTimeSlots.get(0);
+            if (START_OF_DAY.isBefore(previousInterval.getStart())) {
+                daySchedule.add(new ScheduleIntervalDto(START_OF_DAY,
+                        Duration.ofMinutes(START_OF_DAY.until(previousInterval.getStart(), MINUTES)), null, IntervalStatus.UNAVAILABLE));
+            }
 
-                    if (endOfPreviousInterval.isBefore(currentInterval.getStart())) {
-                        daySchedule.add(new ScheduleIntervalDto(endOfPreviousInterval,
-                                Duration.ofMinutes(endOfPreviousInterval.until(currentInterval.getStart(), MINUTES)),
-                                null, IntervalStatus.UNAVAILABLE));
-                    }
-                    previousInterval = currentInterval;
-                }
+            for (int intervalIndex = 1; intervalIndex < dayIntervalsFromTimeSlots.size(); intervalIndex++) {
 
                 daySchedule.add(previousInterval);
-                final LocalTime endOfLastInterval = previousInterval.getStart().plusMinutes(previousInterval.getDurationMin().toMinutes());
 
-                if (endOfLastInterval.isBefore(END_OF_DAY)) {
-                    daySchedule.add(new ScheduleIntervalDto(endOfLastInterval,
-                            Duration.ofMinutes(endOfLastInterval.until(END_OF_DAY, MINUTES)), null, IntervalStatus.UNAVAILABLE));
+                final ScheduleIntervalDto currentInterval = dayIntervalsFromTimeSlots.get(intervalIndex);
+                final LocalTime endOfPreviousInterval = previousInterval.getStart().plusMinutes(previousInterval.getDurationMin().toMinutes());
+
+                if (endOfPreviousInterval.isBefore(currentInterval.getStart())) {
+                    daySchedule.add(new ScheduleIntervalDto(endOfPreviousInterval,
+                            Duration.ofMinutes(endOfPreviousInterval.until(currentInterval.getStart(), MINUTES)),
+                            null, IntervalStatus.UNAVAILABLE));
                 }
+                previousInterval = currentInterval;
             }
 
-            schedule.put(date, daySchedule);
+            daySchedule.add(previousInterval);
+            final LocalTime endOfLastInterval = previousInterval.getStart().plusMinutes(previousInterval.getDurationMin().toMinutes());
+
+            if (endOfLastInterval.isBefore(END_OF_DAY)) {
+                daySchedule.add(new ScheduleIntervalDto(endOfLastInterval,
+                        Duration.ofMinutes(endOfLastInterval.until(END_OF_DAY, MINUTES)), null, IntervalStatus.UNAVAILABLE));
+            }
         }
 
-        return schedule;
+        return daySchedule;
     }
 
-    private List<ScheduleIntervalDto> parseTimeSlots(List<TimeSlot> timeSlots) {
+    private List<ScheduleIntervalDto> parseTimeSlots(List<TimeSlotView> timeSlots, Map<Long, ReservationDto> reservations) {
         List<ScheduleIntervalDto> dayGrid = new ArrayList<>();
 
 
-        final TimeSlot firstSlot = timeSlots.get(0);
-        ScheduleIntervalDto interval = createInterval(firstSlot);
+        final TimeSlotView firstSlot = timeSlots.get(0);
+        ScheduleIntervalDto interval = createInterval(firstSlot, reservations);
 
         for (int slotIndex = 1; slotIndex < timeSlots.size(); slotIndex++) {
-            final TimeSlot timeSlot = timeSlots.get(slotIndex);
+            final TimeSlotView timeSlot = timeSlots.get(slotIndex);
 
             if (isSameInterval(timeSlot, interval)) {
                 interval.setDurationMin(interval.getDurationMin().plusMinutes(timeSlot.getDuration().toMinutes()));
             } else {
                 dayGrid.add(interval);
-                interval = createInterval(timeSlot);
+                interval = createInterval(timeSlot, reservations);
             }
         }
 
@@ -135,65 +231,61 @@ public class ScheduleService {
         return dayGrid;
     }
 
-    private boolean isSameInterval(final TimeSlot nextTimeSlot, final ScheduleIntervalDto currentInterval) {
+    private boolean isSameInterval(final TimeSlotView nextTimeSlot, final ScheduleIntervalDto currentInterval) {
         final LocalTime endOfCurrentInterval = currentInterval.getStart().plusMinutes(currentInterval.getDurationMin().toMinutes());
         if (endOfCurrentInterval.until(nextTimeSlot.getStart(), MINUTES) >= DEFAULT_TIME_SLOT_DURATION.toMinutes()) {
             return false;
         }
 
         if (currentInterval.getStatus().equals(IntervalStatus.AVAILABLE)) {
-            return nextTimeSlot.getReservation() == null;
+            return !nextTimeSlot.isReserved();
         }
 
         if (currentInterval.getStatus().equals(IntervalStatus.RESERVED)) {
-            if (nextTimeSlot.getReservation() == null) {
+            if (!nextTimeSlot.isReserved()) {
                 return false;
             } else {
-                return currentInterval.getReservationDto().getId() == nextTimeSlot.getReservation().getId();
+                return currentInterval.getReservationDto().getId() == nextTimeSlot.getReservationId();
             }
         }
 
         return false;
     }
 
-    private ScheduleIntervalDto createInterval(final TimeSlot timeSlot) {
+    private ScheduleIntervalDto createInterval(final TimeSlotView timeSlot, final Map<Long, ReservationDto> reservations) {
         ScheduleIntervalDto interval = new ScheduleIntervalDto();
         interval.setStart(timeSlot.getStart().toLocalTime());
         interval.setDurationMin(timeSlot.getDuration());
 
-        if (timeSlot.getReservation() == null) {
+        if (!timeSlot.isReserved()) {
             interval.setStatus(IntervalStatus.AVAILABLE);
         } else {
             interval.setStatus(IntervalStatus.RESERVED);
-            // TODO improve this. User Model mapper.
-            interval.setReservationDto(new ReservationDto(
-                    timeSlot.getReservation().getId(),
-                    timeSlot.getReservation().getStart(),
-                    timeSlot.getReservation().getDuration(),
-                    timeSlot.getReservation().getServiceType(),
-                    timeSlot.getReservation().getCustomer().getName(),
-                    timeSlot.getReservation().getCustomer().getAddress(),
-                    timeSlot.getReservation().getCustomer().getEmail(),
-                    timeSlot.getReservation().getCustomer().getPhoneNumber()
-            ));
+            interval.setReservationDto(reservations.get(timeSlot.getReservationId()));
         }
 
         return interval;
     }
 
+    /**
+     * Slots are generated one day at a time and written by the {@link TimeSlotBatchWriter}, so a multi-month
+     * schedule is never held in memory as a whole.
+     */
+    @Transactional
     public void createScheduleForServiceProvider(final long serviceProviderId,
                                                  final LinkedHashMap<LocalDate, List<AvailabilityIntervalDto>> schedule) {
         final Optional<ServiceProvider> spOpt = spRepository.findById(serviceProviderId);
         if (spOpt.isPresent()) {
             final ServiceProvider sp = spOpt.get();
+            scheduleTemplateService.addExceptions(serviceProviderId, schedule.keySet());
 
-            List<TimeSlot> timeSlots = schedule.entrySet().stream()
-                    .map(dayAvailability -> createAvailableTimeSlotsForDay(dayAvailability.getKey(), dayAvailability.getValue(), sp))
-                    .flatMap(List::stream)
-                    .collect(Collectors.toList());
+            final long inserted = timeSlotBatchWriter.insert(serviceProviderId, schedule.entrySet().stream()
+                    .flatMap(dayAvailability -> createAvailableTimeSlotsForDay(dayAvailability.getKey(), dayAvailability.getValue(), sp).stream()),
+                    written -> log.debug("Wrote {} time slots of service provider {}", written, serviceProviderId));
+            log.info("Created schedule of {} days with {} time slots for service provider {}",
+                    schedule.size(), inserted, serviceProviderId);
 
-            sp.setTimeSlots(timeSlots);
-            spRepository.save(sp);
+            eventPublisher.publishEvent(new AvailabilityChangedEvent(serviceProviderId, Sets.newHashSet(schedule.keySet())));
         } else {
             throw new ServiceProviderNotFoundException(
                     String.format("Service provider with id=[%d] does not exist", serviceProviderId)
@@ -201,21 +293,38 @@ public class ScheduleService {
         }
     }
 
+    /**
+     * Replaces the free slots of the days in the schedule, leaving every other day untouched. Only those days are
+     * loaded, and only the {@link ScheduleDelta} is written: one bulk delete and batched inserts.
+     */
+    @Transactional
     public void updateScheduleForServiceProvider(final long serviceProviderId,
                                                  final LinkedHashMap<LocalDate, List<AvailabilityIntervalDto>> schedule) {
         final Optional<ServiceProvider> spOpt = spRepository.findById(serviceProviderId);
         if (spOpt.isPresent()) {
             final ServiceProvider sp = spOpt.get();
+            scheduleTemplateService.addExceptions(serviceProviderId, schedule.keySet());
 
             List<TimeSlot> updatedAvailableTimeSlots = schedule.entrySet().stream()
                     .map(dayAvailability -> createAvailableTimeSlotsForDay(dayAvailability.getKey(), dayAvailability.getValue(), sp))
                     .flatMap(List::stream)
                     .collect(Collectors.toList());
 
-            List<TimeSlot> merged = merge(updatedAvailableTimeSlots, sp.getTimeSlots());
+            final ScheduleDelta delta = ScheduleDelta.compute(
+                    findTimeSlotViewsForDates(serviceProviderId, schedule.keySet()), updatedAvailableTimeSlots);
+            if (delta.isEmpty()) {
+                return;
+            }
+
+            final int deleted = Lists.partition(delta.getDeletes(), PERSIST_BATCH_SIZE).stream()
+                    .mapToInt(starts -> timeSlotRepository.deleteFreeTimeSlots(serviceProviderId, starts))
+                    .sum();
+            if (deleted < delta.getDeletes().size()) {
+                throw new InvalidScheduleException("Time slots were reserved while updating the schedule");
+            }
+            persistInBatches(delta.getInserts());
 
-            sp.setTimeSlots(merged);
-            spRepository.save(sp);
+            eventPublisher.publishEvent(new AvailabilityChangedEvent(serviceProviderId, Sets.newHashSet(schedule.keySet())));
         } else {
             throw new ServiceProviderNotFoundException(
                     String.format("Service provider with id=[%d] does not exist", serviceProviderId)
@@ -223,6 +332,50 @@ public class ScheduleService {
         }
     }
 
+    /**
+     * One range query per run of consecutive dates, so a typical week-long update is a single query.
+     */
+    private List<TimeSlotView> findTimeSlotViewsForDates(final long serviceProviderId, final Set<LocalDate> dates) {
+        final List<TimeSlotView> timeSlots = Lists.newArrayList();
+
+        final Iterator<LocalDate> dateIterator = new TreeSet<>(dates).iterator();
+        LocalDate runStart = null;
+        LocalDate runEnd = null;
+        while (dateIterator.hasNext()) {
+            final LocalDate date = dateIterator.next();
+            if (runEnd != null && !date.equals(runEnd)) {
+                timeSlots.addAll(timeSlotRepository.findTimeSlotViewsStartingBetween(serviceProviderId,
+                        runStart.atStartOfDay(), runEnd.atStartOfDay()));
+                runStart = null;
+            }
+            if (runStart == null) {
+                runStart = date;
+            }
+            runEnd = date.plusDays(1);
+        }
+        if (runStart != null) {
+            timeSlots.addAll(timeSlotRepository.findTimeSlotViewsStartingBetween(serviceProviderId,
+                    runStart.atStartOfDay(), runEnd.atStartOfDay()));
+        }
+
+        return timeSlots;
+    }
+
+    /**
+     * Flushes every {@link #PERSIST_BATCH_SIZE} slots so that hibernate.jdbc.batch_size groups them into one
+     * statement batch and the persistence context stays small.
+     */
+    private void persistInBatches(final List<TimeSlot> timeSlots) {
+        for (int index = 0; index < timeSlots.size(); index++) {
+            entityManager.persist(timeSlots.get(index));
+            if ((index + 1) % PERSIST_BATCH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+    }
+
     private List<TimeSlot> createAvailableTimeSlotsForDay(
             final LocalDate date,
             final List<AvailabilityIntervalDto> daySchedule,
@@ -253,25 +406,4 @@ public class ScheduleService {
     private LocalDateTime calculateIntervalEnd(final LocalDateTime slotStart, final Duration intervalDuration) {
         return slotStart.plusMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes() * intervalDuration.toMinutes() / DEFAULT_TIME_SLOT_DURATION.toMinutes());
     }
-
-    private List<TimeSlot> merge(List<TimeSlot> updatedAvailableTimeSlots, List<TimeSlot> currentTimeSlots) {
-        final List<TimeSlot> merged = new ArrayList<>(currentTimeSlots);
-
-        currentTimeSlots.forEach(cTs -> {
-            if (cTs.getReservation() == null) {
-                if (updatedAvailableTimeSlots.contains(cTs)) {
-                    updatedAvailableTimeSlots.remove(cTs);
-                } else {
-                    merged.remove(cTs);
-                }
-            } else {
-                if (updatedAvailableTimeSlots.contains(cTs)) {
-                    throw new InvalidScheduleException("Updating time slots with reservation is not allowed");
-                }
-            }
-        });
-        merged.addAll(updatedAvailableTimeSlots);
-
-        return merged;
-    }
 }
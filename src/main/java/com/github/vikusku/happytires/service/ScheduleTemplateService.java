@@ -0,0 +1,315 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.dto.ScheduleTemplateDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.exception.InvalidScheduleException;
+import com.github.vikusku.happytires.exception.ServiceProviderNotFoundException;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.TemplateInterval;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.github.vikusku.happytires.repository.ScheduleTemplateRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Recurring weekly schedules. Template days are expanded into slots on read; the only rows written for them are
+ * the slots of days that get booked, see {@link #materialize}. Dates written through the explicit schedule API
+ * become template exceptions and are served from their stored slots alone.
+ */
+@Service
+public class ScheduleTemplateService {
+
+    private static final LocalDate OPEN_END = LocalDate.of(9999, 1, 1);
+
+    private final ScheduleTemplateRepository scheduleTemplateRepository;
+    private final ServiceProviderRepository spRepository;
+    private final TimeSlotRepository timeSlotRepository;
+    private final TimeSlotBatchWriter timeSlotBatchWriter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public ScheduleTemplateService(ScheduleTemplateRepository scheduleTemplateRepository,
+                                   ServiceProviderRepository spRepository,
+                                   TimeSlotRepository timeSlotRepository,
+                                   TimeSlotBatchWriter timeSlotBatchWriter,
+                                   ApplicationEventPublisher eventPublisher) {
+        this.scheduleTemplateRepository = scheduleTemplateRepository;
+        this.spRepository = spRepository;
+        this.timeSlotRepository = timeSlotRepository;
+        this.timeSlotBatchWriter = timeSlotBatchWriter;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<ScheduleTemplate> findTemplate(final long serviceProviderId) {
+        return scheduleTemplateRepository.findByServiceProviderId(serviceProviderId);
+    }
+
+    /**
+     * Templates valid on some day of [from, until).
+     */
+    @Transactional(readOnly = true)
+    public List<ScheduleTemplate> findTemplates(final LocalDate from, final LocalDate until) {
+        return scheduleTemplateRepository.findTemplatesValidBetween(from, until);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<ScheduleTemplateDto> getTemplate(final long serviceProviderId) {
+        return findTemplate(serviceProviderId).map(this::toScheduleTemplateDto);
+    }
+
+    /**
+     * Creates or replaces the provider's template. Slots materialized from a replaced template are deleted and
+     * materialized again from the new one.
+     */
+    @Transactional
+    public void saveTemplate(final long serviceProviderId, final ScheduleTemplateDto templateDto) {
+        final ServiceProvider sp = spRepository.findById(serviceProviderId)
+                .orElseThrow(() -> new ServiceProviderNotFoundException(
+                        String.format("Service provider with id=[%d] does not exist", serviceProviderId)));
+        if (templateDto.getValidUntil() != null && !templateDto.getValidUntil().isAfter(templateDto.getValidFrom())) {
+            throw new InvalidScheduleException("Template must be valid until a date after validFrom");
+        }
+
+        final ScheduleTemplate template = scheduleTemplateRepository.findByServiceProviderId(serviceProviderId)
+                .orElseGet(ScheduleTemplate::new);
+        final Set<LocalDate> dematerializedDates = template.getServiceProvider() != null
+                ? dematerialize(template)
+                : Sets.newHashSet();
+        template.setServiceProvider(sp);
+        template.setValidFrom(templateDto.getValidFrom());
+        template.setValidUntil(templateDto.getValidUntil());
+        template.setIntervals(templateDto.getWeeklyIntervals().entrySet().stream()
+                .flatMap(day -> day.getValue().stream()
+                        .map(interval -> new TemplateInterval(day.getKey(), interval.getStart(), interval.getDurationMin())))
+                .collect(Collectors.toList()));
+        template.setExceptionDates(templateDto.getExceptions() == null
+                ? Sets.newHashSet()
+                : Sets.newHashSet(templateDto.getExceptions()));
+        scheduleTemplateRepository.save(template);
+
+        publishTemplateChanged(serviceProviderId, dematerializedDates);
+    }
+
+    @Transactional
+    public void deleteTemplate(final long serviceProviderId) {
+        scheduleTemplateRepository.findByServiceProviderId(serviceProviderId).ifPresent(template -> {
+            final Set<LocalDate> dematerializedDates = dematerialize(template);
+            scheduleTemplateRepository.delete(template);
+            publishTemplateChanged(serviceProviderId, dematerializedDates);
+        });
+    }
+
+    /**
+     * Turns the template days among the dates into exceptions, so that their explicitly written slots take over.
+     */
+    @Transactional
+    public void addExceptions(final long serviceProviderId, final Collection<LocalDate> dates) {
+        scheduleTemplateRepository.findByServiceProviderId(serviceProviderId).ifPresent(template -> {
+            final Set<LocalDate> coveredDates = dates.stream().filter(template::covers).collect(Collectors.toSet());
+            if (!coveredDates.isEmpty()) {
+                template.getExceptionDates().addAll(coveredDates);
+                scheduleTemplateRepository.save(template);
+            }
+        });
+    }
+
+    /**
+     * Brings the stored slots of the date in line with the template, so that its slots can be booked: missing
+     * template slots are inserted and free slots the template no longer has are deleted.
+     * <p>
+     * Locks the template row like {@link TimeSlotMaterializer} does, so a booking and a materializer run on another
+     * node do not both insert the missing slots of one day.
+     *
+     * @return number of inserted slots
+     */
+    @Transactional
+    public long materialize(final long serviceProviderId, final LocalDate date) {
+        return scheduleTemplateRepository.findByServiceProviderIdForUpdate(serviceProviderId)
+                .filter(template -> template.covers(date))
+                .map(template -> {
+                    final Map<LocalDateTime, TimeSlotView> stored = timeSlotRepository.findTimeSlotViewsStartingBetween(
+                            serviceProviderId, date.atStartOfDay(), date.plusDays(1).atStartOfDay()).stream()
+                            .collect(Collectors.toMap(TimeSlotView::getStart, ts -> ts));
+                    final List<TimeSlotView> templateTimeSlots = templateTimeSlots(template, serviceProviderId, date);
+                    final Set<LocalDateTime> templateStarts = templateTimeSlots.stream()
+                            .map(TimeSlotView::getStart)
+                            .collect(Collectors.toSet());
+
+                    final List<LocalDateTime> stale = stored.values().stream()
+                            .filter(ts -> !ts.isReserved() && !templateStarts.contains(ts.getStart()))
+                            .map(TimeSlotView::getStart)
+                            .collect(Collectors.toList());
+                    if (!stale.isEmpty()) {
+                        timeSlotRepository.deleteFreeTimeSlots(serviceProviderId, stale);
+                    }
+
+                    final ServiceProvider sp = spRepository.getOne(serviceProviderId);
+                    return timeSlotBatchWriter.insert(serviceProviderId, templateTimeSlots.stream()
+                            .filter(ts -> !stored.containsKey(ts.getStart()))
+                            .map(ts -> new TimeSlot(ts.getStart(), sp, ts.getDuration(), null)));
+                })
+                .orElse(0L);
+    }
+
+    /**
+     * Effective slots of the provider starting in [from, until), ordered by start, see {@link #expand}.
+     */
+    @Transactional(readOnly = true)
+    public List<TimeSlotView> findTimeSlots(final long serviceProviderId, final LocalDateTime from, final LocalDateTime until) {
+        final List<TimeSlotView> storedTimeSlots = timeSlotRepository.findTimeSlotViewsStartingBetween(serviceProviderId, from, until);
+        return scheduleTemplateRepository.findByServiceProviderId(serviceProviderId)
+                .map(template -> expand(template, from.toLocalDate(), until.minusNanos(1).toLocalDate().plusDays(1), storedTimeSlots)
+                        .stream()
+                        .filter(ts -> !ts.getStart().isBefore(from) && ts.getStart().isBefore(until))
+                        .collect(Collectors.toList()))
+                .orElse(storedTimeSlots);
+    }
+
+    /**
+     * Effective slots of [from, until), ordered by start: stored slots on days the template does not cover, and the
+     * template's slots overlaid with stored reservations on days it does.
+     *
+     * @param storedTimeSlots stored slots of [from, until)
+     */
+    public List<TimeSlotView> expand(final ScheduleTemplate template,
+                                     final LocalDate from,
+                                     final LocalDate until,
+                                     final List<TimeSlotView> storedTimeSlots) {
+        final Map<LocalDate, List<TimeSlotView>> storedByDate = storedTimeSlots.stream()
+                .collect(groupingBy(ts -> ts.getStart().toLocalDate()));
+
+        final List<TimeSlotView> timeSlots = Lists.newArrayList();
+        for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+            timeSlots.addAll(expandDay(template, date, storedByDate.getOrDefault(date, Lists.newArrayList())));
+        }
+
+        return timeSlots;
+    }
+
+    /**
+     * {@link #expand} for a single day.
+     */
+    public List<TimeSlotView> expandDay(final ScheduleTemplate template,
+                                        final LocalDate date,
+                                        final List<TimeSlotView> storedDayTimeSlots) {
+        if (!template.covers(date)) {
+            return storedDayTimeSlots;
+        }
+
+        final long serviceProviderId = template.getServiceProvider().getId();
+        final TreeMap<LocalDateTime, TimeSlotView> timeSlots = Maps.newTreeMap();
+        templateTimeSlots(template, serviceProviderId, date).forEach(ts -> timeSlots.put(ts.getStart(), ts));
+        storedDayTimeSlots.stream()
+                .filter(TimeSlotView::isReserved)
+                .forEach(ts -> timeSlots.put(ts.getStart(), ts));
+
+        return Lists.newArrayList(timeSlots.values());
+    }
+
+    private List<TimeSlotView> templateTimeSlots(final ScheduleTemplate template, final long serviceProviderId, final LocalDate date) {
+        final List<TimeSlotView> timeSlots = Lists.newArrayList();
+
+        template.getIntervals().stream()
+                .filter(interval -> interval.getDayOfWeek() == date.getDayOfWeek())
+                .forEach(interval -> {
+                    final LocalDateTime intervalEnd = LocalDateTime.of(date, interval.getStart()).plus(interval.getDuration());
+                    for (LocalDateTime slotStart = LocalDateTime.of(date, interval.getStart());
+                         slotStart.isBefore(intervalEnd);
+                         slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+                        timeSlots.add(new TimeSlotView(serviceProviderId, slotStart, DEFAULT_TIME_SLOT_DURATION, null));
+                    }
+                });
+
+        return timeSlots;
+    }
+
+    /**
+     * Deletes the free slots stored on the template's future days and resets its watermark. One statement per run
+     * of days between exceptions, whose slots are left alone.
+     *
+     * @return days that had free slots deleted
+     */
+    private Set<LocalDate> dematerialize(final ScheduleTemplate template) {
+        final long serviceProviderId = template.getServiceProvider().getId();
+        final LocalDate today = LocalDate.now();
+        final LocalDate until = template.getValidUntil() == null ? OPEN_END : template.getValidUntil();
+        final Set<LocalDate> dates = Sets.newHashSet();
+
+        LocalDate runStart = today.isAfter(template.getValidFrom()) ? today : template.getValidFrom();
+        for (LocalDate exceptionDate : Sets.newTreeSet(template.getExceptionDates())) {
+            if (exceptionDate.isBefore(runStart) || !exceptionDate.isBefore(until)) {
+                continue;
+            }
+            if (runStart.isBefore(exceptionDate)) {
+                dates.addAll(deleteFreeTimeSlots(serviceProviderId, runStart, exceptionDate));
+            }
+            runStart = exceptionDate.plusDays(1);
+        }
+        if (runStart.isBefore(until)) {
+            dates.addAll(deleteFreeTimeSlots(serviceProviderId, runStart, until));
+        }
+
+        template.setMaterializedUntil(null);
+        return dates;
+    }
+
+    private Set<LocalDate> deleteFreeTimeSlots(final long serviceProviderId, final LocalDate from, final LocalDate until) {
+        final Set<LocalDate> dates = timeSlotRepository.findFreeTimeSlotStartsBetween(
+                serviceProviderId, from.atStartOfDay(), until.atStartOfDay()).stream()
+                .map(LocalDateTime::toLocalDate)
+                .collect(Collectors.toSet());
+        if (!dates.isEmpty()) {
+            timeSlotRepository.deleteFreeTimeSlotsStartingBetween(serviceProviderId, from.atStartOfDay(), until.atStartOfDay());
+        }
+
+        return dates;
+    }
+
+    /**
+     * The template itself is versioned per provider rather than per day, as it covers days without bound; only the
+     * days whose stored slots were deleted are published day by day.
+     */
+    private void publishTemplateChanged(final long serviceProviderId, final Set<LocalDate> dematerializedDates) {
+        if (!dematerializedDates.isEmpty()) {
+            eventPublisher.publishEvent(new AvailabilityChangedEvent(serviceProviderId, dematerializedDates));
+        }
+        eventPublisher.publishEvent(new ScheduleTemplateChangedEvent(serviceProviderId));
+    }
+
+    private ScheduleTemplateDto toScheduleTemplateDto(final ScheduleTemplate template) {
+        final Map<DayOfWeek, List<AvailabilityIntervalDto>> weeklyIntervals = Maps.newTreeMap();
+        template.getIntervals().forEach(interval -> weeklyIntervals
+                .computeIfAbsent(interval.getDayOfWeek(), day -> Lists.newArrayList())
+                .add(new AvailabilityIntervalDto(interval.getStart(), interval.getDuration())));
+
+        return new ScheduleTemplateDto(template.getValidFrom(), template.getValidUntil(), weeklyIntervals,
+                Sets.newTreeSet(template.getExceptionDates()));
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * Re-checks a window of {@code minimumAdjacentSlots} slots for every start index, O(n * k) per day.
+ * Kept as the reference implementation for {@link RunLengthReservableIntervalsEngine}.
+ */
+@Component
+@ConditionalOnProperty(name = "happytires.reservable-intervals.engine", havingValue = "sliding-window")
+public class SlidingWindowReservableIntervalsEngine implements ReservableIntervalsEngine {
+
+    @Override
+    public List<ReservableIntervalDto> createReservableIntervals(
+            int minimumAdjacentSlots, List<TimeSlotView> dateTimeSlots, long serviceProviderId) {
+        final List<ReservableIntervalDto> reservableIntervals = Lists.newArrayList();
+
+        for (int intervalStartIndex = 0; intervalStartIndex <= dateTimeSlots.size() - minimumAdjacentSlots; intervalStartIndex++ ) {
+            TimeSlotView intervalStartSlot = dateTimeSlots.get(intervalStartIndex);
+            TimeSlotView currentSlot = intervalStartSlot;
+            int adjacentSlotCount = 1;
+
+            List<TimeSlotView> timeSlotsSlice = dateTimeSlots.subList(intervalStartIndex + 1, intervalStartIndex + minimumAdjacentSlots);
+            for (int nextSlotIndex = 0; nextSlotIndex < timeSlotsSlice.size(); nextSlotIndex++ ) {
+                TimeSlotView nextSlot = timeSlotsSlice.get(nextSlotIndex);
+
+                if (currentSlot.getStart().plusMinutes(currentSlot.getDuration().toMinutes()).isEqual(nextSlot.getStart())) {
+                    adjacentSlotCount++;
+                }
+
+                currentSlot = nextSlot;
+            }
+
+            if (adjacentSlotCount == minimumAdjacentSlots) {
+                reservableIntervals.add(new ReservableIntervalDto(
+                        intervalStartSlot.getStart(),
+                        Duration.ofMinutes(DEFAULT_TIME_SLOT_DURATION.toMinutes() * minimumAdjacentSlots),
+                        serviceProviderId
+                ));
+            }
+        }
+
+        return reservableIntervals;
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.dto.SlotHoldDto;
+import com.github.vikusku.happytires.exception.InvalidSlotHoldException;
+import com.github.vikusku.happytires.exception.TimeSlotConflictException;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.github.vikusku.happytires.util.HashedTimingWheel;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * Short-lived leases on the slots a customer is checking out, so that a second customer does not see or race for
+ * them until the first one books or walks away. Holds only live in this JVM; they hide slots from the reservable
+ * intervals and turn away other bookings, the database claim still decides the booking itself.
+ * <p>
+ * Expiry runs on a {@link HashedTimingWheel} that every call and a periodic sweep advance, so there is no timer
+ * per hold.
+ */
+@Service
+public class SlotHoldService {
+
+    private final ScheduleTemplateService scheduleTemplateService;
+    private final Duration maximumDuration;
+    private final Duration timeToLive;
+    private final Ticker ticker;
+    private final HashedTimingWheel<Hold> timingWheel;
+
+    private final Map<String, Hold> holds = Maps.newHashMap();
+    private final Map<Long, TreeMap<LocalDateTime, Hold>> heldStarts = Maps.newHashMap();
+    private final Map<Long, Long> versions = Maps.newHashMap();
+
+    private final Counter createdHolds;
+    private final Counter convertedHolds;
+    private final Counter expiredHolds;
+    private final Counter rejectedHolds;
+
+    @Autowired
+    public SlotHoldService(ScheduleTemplateService scheduleTemplateService,
+                           DurationService durationService,
+                           MeterRegistry meterRegistry,
+                           @Value("${happytires.slot-hold.time-to-live:10m}") Duration timeToLive,
+                           @Value("${happytires.slot-hold.tick:1s}") Duration tick,
+                           @Value("${happytires.slot-hold.wheel-size:1024}") int wheelSize) {
+        this(scheduleTemplateService, durationService, meterRegistry, timeToLive, tick, wheelSize, Ticker.systemTicker());
+    }
+
+    SlotHoldService(ScheduleTemplateService scheduleTemplateService, DurationService durationService,
+                    MeterRegistry meterRegistry, Duration timeToLive, Duration tick, int wheelSize, Ticker ticker) {
+        this.scheduleTemplateService = scheduleTemplateService;
+        this.maximumDuration = Duration.ofMinutes(Arrays.stream(ServiceType.values())
+                .mapToInt(durationService::getServiceDuration)
+                .max()
+                .orElse(0));
+        this.timeToLive = timeToLive;
+        this.ticker = ticker;
+        this.timingWheel = new HashedTimingWheel<>(tick.toMillis(), wheelSize, nowMillis());
+
+        this.createdHolds = meterRegistry.counter("slot.holds.created");
+        this.convertedHolds = meterRegistry.counter("slot.holds.converted");
+        this.expiredHolds = meterRegistry.counter("slot.holds.expired");
+        this.rejectedHolds = meterRegistry.counter("slot.holds.rejected");
+        meterRegistry.gauge("slot.holds.active", holds, Map::size);
+    }
+
+    /**
+     * Holds the slots of [start, start + duration) of the provider for the time to live. The duration must be a
+     * whole number of slots and at most the longest service.
+     *
+     * @throws InvalidSlotHoldException  when the duration is not valid
+     * @throws TimeSlotConflictException when a slot does not exist, is reserved or is held by someone else
+     */
+    public SlotHoldDto hold(final long serviceProviderId, final LocalDateTime start, final Duration duration) {
+        if (duration.isZero() || duration.isNegative() || duration.compareTo(maximumDuration) > 0
+                || duration.toNanos() % DEFAULT_TIME_SLOT_DURATION.toNanos() != 0) {
+            throw new InvalidSlotHoldException(String.format("Hold duration must be a positive multiple of %d minutes up to %d minutes",
+                    DEFAULT_TIME_SLOT_DURATION.toMinutes(), maximumDuration.toMinutes()));
+        }
+
+        final List<LocalDateTime> starts = slotStarts(start, duration);
+        final Map<LocalDateTime, Boolean> free = scheduleTemplateService.findTimeSlots(serviceProviderId, start, start.plus(duration))
+                .stream()
+                .collect(Collectors.toMap(TimeSlotView::getStart, ts -> !ts.isReserved()));
+        if (!free.keySet().containsAll(starts)) {
+            rejectedHolds.increment();
+            throw new TimeSlotConflictException("NO_AVAILABLE_TIME_SLOTS");
+        }
+        if (!starts.stream().allMatch(free::get)) {
+            rejectedHolds.increment();
+            throw new TimeSlotConflictException("TIME_SLOTS_ALREADY_RESERVED");
+        }
+
+        synchronized (this) {
+            expire();
+            final TreeMap<LocalDateTime, Hold> providerHeldStarts = heldStarts.computeIfAbsent(serviceProviderId, id -> new TreeMap<>());
+            if (starts.stream().anyMatch(providerHeldStarts::containsKey)) {
+                rejectedHolds.increment();
+                throw new TimeSlotConflictException("TIME_SLOTS_HELD");
+            }
+
+            final long expiresAtMillis = nowMillis() + timeToLive.toMillis();
+            final Hold hold = new Hold(UUID.randomUUID().toString(), serviceProviderId, starts);
+            holds.put(hold.id, hold);
+            starts.forEach(slotStart -> providerHeldStarts.put(slotStart, hold));
+            timingWheel.schedule(hold, expiresAtMillis);
+            bumpVersion(serviceProviderId);
+            createdHolds.increment();
+
+            return new SlotHoldDto(hold.id, serviceProviderId, start, duration, Instant.now().plus(timeToLive));
+        }
+    }
+
+    /**
+     * @return whether the hold was still there
+     */
+    public synchronized boolean release(final String holdId) {
+        expire();
+        return remove(holdId) != null;
+    }
+
+    /**
+     * Drops the hold once its booking is stored.
+     */
+    public synchronized void convert(final String holdId) {
+        expire();
+        if (holdId != null && remove(holdId) != null) {
+            convertedHolds.increment();
+        }
+    }
+
+    /**
+     * @throws TimeSlotConflictException when a slot of [start, start + duration) is held by another hold than
+     *                                   {@code holdId}, which may be null
+     */
+    public synchronized void checkNotHeldByOthers(final long serviceProviderId, final LocalDateTime start,
+                                                  final Duration duration, final String holdId) {
+        expire();
+        final TreeMap<LocalDateTime, Hold> providerHeldStarts = heldStarts.get(serviceProviderId);
+        if (providerHeldStarts == null) {
+            return;
+        }
+
+        for (Hold hold : providerHeldStarts.subMap(start, start.plus(duration)).values()) {
+            if (!hold.id.equals(holdId)) {
+                throw new TimeSlotConflictException("TIME_SLOTS_HELD");
+            }
+        }
+    }
+
+    /**
+     * Whether a held slot of the provider starts in [from, until).
+     */
+    public synchronized boolean isHeld(final long serviceProviderId, final LocalDateTime from, final LocalDateTime until) {
+        expire();
+        final TreeMap<LocalDateTime, Hold> providerHeldStarts = heldStarts.get(serviceProviderId);
+        return providerHeldStarts != null && !providerHeldStarts.subMap(from, until).isEmpty();
+    }
+
+    /**
+     * Changes whenever the holds of the provider change, to be mixed into availability ETags.
+     */
+    public synchronized long version(final long serviceProviderId) {
+        expire();
+        return versions.getOrDefault(serviceProviderId, 0L);
+    }
+
+    /**
+     * The intervals that do not overlap a held slot. The given map and lists are left untouched.
+     */
+    public Map<LocalDate, List<ReservableIntervalDto>> withoutHeld(
+            final long serviceProviderId, final Map<LocalDate, List<ReservableIntervalDto>> intervals) {
+        final NavigableSet<LocalDateTime> held = heldStarts(serviceProviderId);
+        if (held.isEmpty()) {
+            return intervals;
+        }
+
+        final Map<LocalDate, List<ReservableIntervalDto>> available = Maps.newLinkedHashMap();
+        intervals.forEach((date, dateIntervals) -> available.put(date, withoutHeld(held, dateIntervals)));
+        return available;
+    }
+
+    public List<ReservableIntervalDto> withoutHeld(final long serviceProviderId, final List<ReservableIntervalDto> intervals) {
+        final NavigableSet<LocalDateTime> held = heldStarts(serviceProviderId);
+        return held.isEmpty() ? intervals : withoutHeld(held, intervals);
+    }
+
+    @Scheduled(fixedDelayString = "${happytires.slot-hold.sweep-interval:PT1S}")
+    public synchronized void expire() {
+        for (Hold hold : timingWheel.advance(nowMillis())) {
+            if (remove(hold.id) != null) {
+                expiredHolds.increment();
+            }
+        }
+    }
+
+    private synchronized NavigableSet<LocalDateTime> heldStarts(final long serviceProviderId) {
+        expire();
+        final TreeMap<LocalDateTime, Hold> providerHeldStarts = heldStarts.get(serviceProviderId);
+        return providerHeldStarts == null ? ImmutableSortedSet.of() : ImmutableSortedSet.copyOf(providerHeldStarts.keySet());
+    }
+
+    private static List<ReservableIntervalDto> withoutHeld(final NavigableSet<LocalDateTime> held,
+                                                           final List<ReservableIntervalDto> intervals) {
+        return intervals.stream()
+                .filter(interval -> held.subSet(interval.getStart(), interval.getStart().plus(interval.getDuration())).isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private Hold remove(final String holdId) {
+        final Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            return null;
+        }
+
+        final TreeMap<LocalDateTime, Hold> providerHeldStarts = heldStarts.get(hold.serviceProviderId);
+        hold.starts.forEach(start -> providerHeldStarts.remove(start, hold));
+        if (providerHeldStarts.isEmpty()) {
+            heldStarts.remove(hold.serviceProviderId);
+        }
+        bumpVersion(hold.serviceProviderId);
+
+        return hold;
+    }
+
+    private void bumpVersion(final long serviceProviderId) {
+        versions.merge(serviceProviderId, 1L, Long::sum);
+    }
+
+    private long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ticker.read());
+    }
+
+    private static List<LocalDateTime> slotStarts(final LocalDateTime start, final Duration duration) {
+        final List<LocalDateTime> starts = Lists.newArrayList();
+        final LocalDateTime end = start.plus(duration);
+        for (LocalDateTime slotStart = start; slotStart.isBefore(end); slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+            starts.add(slotStart);
+        }
+        return starts;
+    }
+
+    @AllArgsConstructor
+    private static final class Hold {
+        private final String id;
+        private final long serviceProviderId;
+        private final List<LocalDateTime> starts;
+    }
+}
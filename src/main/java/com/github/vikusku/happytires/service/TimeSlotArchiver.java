@@ -0,0 +1,151 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.DaySummaryDto;
+import com.github.vikusku.happytires.model.TimeSlotDaySummary;
+import com.github.vikusku.happytires.model.TimeSlotDaySummaryPK;
+import com.github.vikusku.happytires.repository.TimeSlotDayCount;
+import com.github.vikusku.happytires.repository.TimeSlotDaySummaryRepository;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Compacts past days: the slots of days older than {@code retentionDays} are counted into {@link TimeSlotDaySummary}
+ * rows and the free ones deleted, so the live table holds the bookable window plus reserved history, which the
+ * reservations still point to. Fully booked days get a summary too.
+ * <p>
+ * A run works through the past days oldest first, {@code batchSize} providers of one day per transaction, and
+ * resumes from the last archived day.
+ */
+@Slf4j
+@Service
+public class TimeSlotArchiver {
+
+    private final TimeSlotRepository timeSlotRepository;
+    private final TimeSlotDaySummaryRepository timeSlotDaySummaryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int retentionDays;
+    private final int batchSize;
+
+    private final Counter archivedTimeSlots;
+
+    @Autowired
+    public TimeSlotArchiver(TimeSlotRepository timeSlotRepository,
+                            TimeSlotDaySummaryRepository timeSlotDaySummaryRepository,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${happytires.time-slot-archiver.enabled:false}") boolean enabled,
+                            @Value("${happytires.time-slot-archiver.retention-days:30}") int retentionDays,
+                            @Value("${happytires.time-slot-archiver.batch-size:100}") int batchSize) {
+        this.timeSlotRepository = timeSlotRepository;
+        this.timeSlotDaySummaryRepository = timeSlotDaySummaryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+
+        this.archivedTimeSlots = meterRegistry.counter("time.slot.archiver.time.slots");
+    }
+
+    @Scheduled(cron = "${happytires.time-slot-archiver.cron:0 30 3 * * *}")
+    public void archiveScheduled() {
+        if (enabled) {
+            archive(LocalDate.now().minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * Archives the days before {@code until}.
+     *
+     * @return number of deleted free slots
+     */
+    public long archive(final LocalDate until) {
+        final LocalDateTime from = timeSlotDaySummaryRepository.findLastArchivedDate()
+                .map(LocalDate::atStartOfDay)
+                .orElse(LocalDateTime.of(1970, 1, 1, 0, 0));
+
+        long deleted = 0;
+        Optional<LocalDateTime> next = timeSlotRepository.findFirstTimeSlotStart(from, until.atStartOfDay());
+        while (next.isPresent()) {
+            final LocalDate date = next.get().toLocalDate();
+            Batch batch = new Batch(Long.MIN_VALUE, 0);
+            do {
+                final long afterServiceProviderId = batch.lastServiceProviderId;
+                batch = transactionTemplate.execute(status -> archiveBatch(date, afterServiceProviderId));
+                deleted += batch.deleted;
+            } while (batch.lastServiceProviderId != null);
+
+            next = timeSlotRepository.findFirstTimeSlotStart(date.plusDays(1).atStartOfDay(), until.atStartOfDay());
+        }
+
+        log.info("Archived {} free time slots before {}", deleted, until);
+        return deleted;
+    }
+
+    @Transactional(readOnly = true)
+    public List<DaySummaryDto> findDaySummaries(final long serviceProviderId, final LocalDate from, final LocalDate until) {
+        return timeSlotDaySummaryRepository.findDaySummaries(serviceProviderId, from, until).stream()
+                .map(summary -> new DaySummaryDto(summary.getDate(), summary.getFreeTimeSlots(), summary.getReservedTimeSlots()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Archives the day of the next providers after {@code afterServiceProviderId}.
+     */
+    private Batch archiveBatch(final LocalDate date, final long afterServiceProviderId) {
+        final LocalDateTime dayStart = date.atStartOfDay();
+        final LocalDateTime dayEnd = date.plusDays(1).atStartOfDay();
+        final List<Long> serviceProviderIds = timeSlotRepository.findServiceProviderIdsWithTimeSlots(
+                afterServiceProviderId, dayStart, dayEnd, PageRequest.of(0, batchSize));
+        if (serviceProviderIds.isEmpty()) {
+            return new Batch(null, 0);
+        }
+
+        final Map<Long, TimeSlotDaySummary> summaries = timeSlotDaySummaryRepository.findAllById(serviceProviderIds.stream()
+                .map(serviceProviderId -> new TimeSlotDaySummaryPK(serviceProviderId, date))
+                .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(TimeSlotDaySummary::getServiceProviderId, Function.identity()));
+        for (TimeSlotDayCount count : timeSlotRepository.countTimeSlotsStartingBetween(serviceProviderIds, dayStart, dayEnd)) {
+            final TimeSlotDaySummary summary = summaries.computeIfAbsent(count.getServiceProviderId(),
+                    serviceProviderId -> new TimeSlotDaySummary(serviceProviderId, date, 0, 0));
+            // free slots of an earlier archival of the day are gone, reserved slots are all still there
+            summary.setFreeTimeSlots(summary.getFreeTimeSlots() + count.getFreeTimeSlots());
+            summary.setReservedTimeSlots(count.getReservedTimeSlots());
+        }
+        timeSlotDaySummaryRepository.saveAll(summaries.values());
+
+        final int deleted = timeSlotRepository.deleteFreeTimeSlotsStartingBetween(serviceProviderIds, dayStart, dayEnd);
+        archivedTimeSlots.increment(deleted);
+        log.debug("Archived {} free time slots of {} service providers on {}", deleted, serviceProviderIds.size(), date);
+        return new Batch(serviceProviderIds.get(serviceProviderIds.size() - 1), deleted);
+    }
+
+    @AllArgsConstructor
+    private static class Batch {
+        /**
+         * Last archived provider of the day, null when the day is done.
+         */
+        private final Long lastServiceProviderId;
+        private final int deleted;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import com.github.vikusku.happytires.repository.ScheduleTemplateRepository;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the template days of the next {@code horizonDays} days stored as time slots ahead of time, so that booking a
+ * template day finds its slots in place instead of materializing the day first. Reads expand template days
+ * themselves and do not depend on it.
+ * <p>
+ * Each run picks up where the template's watermark stopped and materializes {@code batchDays} days per transaction,
+ * throttled to {@code daysPerSecond}, so a daily run writes one new day per provider instead of a schedule burst.
+ * A template that fails is logged, counted and retried on the next run from its watermark; the others go on.
+ */
+@Slf4j
+@Service
+public class TimeSlotMaterializer {
+
+    private final ScheduleTemplateRepository scheduleTemplateRepository;
+    private final ScheduleTemplateService scheduleTemplateService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int horizonDays;
+    private final int batchDays;
+    private final RateLimiter rateLimiter;
+
+    private final Timer runTimer;
+    private final Counter materializedDays;
+    private final Counter materializedTimeSlots;
+    private final Counter failedTemplates;
+
+    @Autowired
+    public TimeSlotMaterializer(ScheduleTemplateRepository scheduleTemplateRepository,
+                                ScheduleTemplateService scheduleTemplateService,
+                                ApplicationEventPublisher eventPublisher,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${happytires.time-slot-materializer.enabled:false}") boolean enabled,
+                                @Value("${happytires.time-slot-materializer.horizon-days:60}") int horizonDays,
+                                @Value("${happytires.time-slot-materializer.batch-days:7}") int batchDays,
+                                @Value("${happytires.time-slot-materializer.days-per-second:50}") double daysPerSecond) {
+        this.scheduleTemplateRepository = scheduleTemplateRepository;
+        this.scheduleTemplateService = scheduleTemplateService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.horizonDays = horizonDays;
+        this.batchDays = batchDays;
+        this.rateLimiter = RateLimiter.create(daysPerSecond);
+
+        this.runTimer = meterRegistry.timer("time.slot.materializer.run");
+        this.materializedDays = meterRegistry.counter("time.slot.materializer.days");
+        this.materializedTimeSlots = meterRegistry.counter("time.slot.materializer.time.slots");
+        this.failedTemplates = meterRegistry.counter("time.slot.materializer.failures");
+    }
+
+    @Scheduled(fixedDelayString = "${happytires.time-slot-materializer.interval:PT1H}",
+            initialDelayString = "${happytires.time-slot-materializer.initial-delay:PT1M}")
+    public void materializeScheduled() {
+        if (enabled) {
+            materialize(LocalDate.now());
+        }
+    }
+
+    /**
+     * Materializes every template up to {@code today + horizonDays}.
+     */
+    public void materialize(final LocalDate today) {
+        runTimer.record(() -> {
+            final LocalDate horizon = today.plusDays(horizonDays);
+            final List<Long> templateIds = scheduleTemplateRepository.findTemplateIdsToMaterialize(today, horizon);
+            log.info("Materializing {} schedule templates until {}", templateIds.size(), horizon);
+
+            for (long templateId : templateIds) {
+                try {
+                    boolean hasMore = true;
+                    while (hasMore) {
+                        rateLimiter.acquire(batchDays);
+                        hasMore = Boolean.TRUE.equals(transactionTemplate.execute(status -> materializeBatch(templateId, today, horizon)));
+                    }
+                } catch (RuntimeException e) {
+                    failedTemplates.increment();
+                    log.error("Failed to materialize schedule template {}", templateId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Materializes the next days of the template and advances its watermark. The template row stays locked until
+     * commit, so a concurrent template change waits and then resets the watermark.
+     *
+     * @return whether days are left before the horizon
+     */
+    private boolean materializeBatch(final long templateId, final LocalDate today, final LocalDate horizon) {
+        final ScheduleTemplate template = scheduleTemplateRepository.findByIdForUpdate(templateId).orElse(null);
+        if (template == null) {
+            return false;
+        }
+
+        LocalDate from = today.isAfter(template.getValidFrom()) ? today : template.getValidFrom();
+        if (template.getMaterializedUntil() != null && template.getMaterializedUntil().isAfter(from)) {
+            from = template.getMaterializedUntil();
+        }
+        final LocalDate until = template.getValidUntil() != null && template.getValidUntil().isBefore(horizon)
+                ? template.getValidUntil()
+                : horizon;
+        if (!from.isBefore(until)) {
+            return false;
+        }
+
+        final LocalDate batchEnd = from.plusDays(batchDays).isBefore(until) ? from.plusDays(batchDays) : until;
+        final long serviceProviderId = template.getServiceProvider().getId();
+        final Set<LocalDate> changedDates = Sets.newHashSet();
+        for (LocalDate date = from; date.isBefore(batchEnd); date = date.plusDays(1)) {
+            final long inserted = scheduleTemplateService.materialize(serviceProviderId, date);
+            if (inserted > 0) {
+                changedDates.add(date);
+                materializedTimeSlots.increment(inserted);
+            }
+            materializedDays.increment();
+        }
+        template.setMaterializedUntil(batchEnd);
+
+        if (!changedDates.isEmpty()) {
+            eventPublisher.publishEvent(new AvailabilityChangedEvent(serviceProviderId, changedDates));
+        }
+
+        return batchEnd.isBefore(until);
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.vikusku.happytires.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Deadlines hashed into a ring of tick buckets: scheduling is O(1) and advancing visits only the buckets of the
+ * elapsed ticks, so any number of timeouts is driven by whoever calls {@link #advance} instead of a timer each.
+ * Deadlines further away than one revolution stay in their bucket until their round comes. Entries are not
+ * cancelled; callers ignore the ones that are no longer current when they fire.
+ * <p>
+ * Not thread-safe.
+ */
+public class HashedTimingWheel<T> {
+
+    private final long tickMillis;
+    private final List<Entry<T>>[] buckets;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(final long tickMillis, final int wheelSize, final long nowMillis) {
+        Preconditions.checkArgument(tickMillis > 0 && wheelSize > 0, "tick and wheel size must be positive");
+        this.tickMillis = tickMillis;
+        this.buckets = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.buckets[i] = Lists.newArrayList();
+        }
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Fires {@code item} on the first {@link #advance} at or after {@code deadlineMillis}, rounded up to a tick.
+     */
+    public void schedule(final T item, final long deadlineMillis) {
+        final long deadlineTick = Math.max(-Math.floorDiv(-deadlineMillis, tickMillis), currentTick + 1);
+        buckets[(int) Math.floorMod(deadlineTick, (long) buckets.length)].add(new Entry<>(item, deadlineTick));
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis}.
+     *
+     * @return the items whose deadline has passed
+     */
+    public List<T> advance(final long nowMillis) {
+        final long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        final List<T> expired = Lists.newArrayList();
+        // after a full revolution every bucket has been visited once
+        final long lastTick = Math.min(nowTick, currentTick + buckets.length);
+        for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+            final Iterator<Entry<T>> entries = buckets[(int) Math.floorMod(tick, (long) buckets.length)].iterator();
+            while (entries.hasNext()) {
+                final Entry<T> entry = entries.next();
+                if (entry.deadlineTick <= nowTick) {
+                    expired.add(entry.item);
+                    entries.remove();
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+
+        return expired;
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long deadlineTick;
+
+        private Entry(final T item, final long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
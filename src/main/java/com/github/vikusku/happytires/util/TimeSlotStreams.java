@@ -0,0 +1,37 @@
+package com.github.vikusku.happytires.util;
+
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+public class TimeSlotStreams {
+
+    /**
+     * Hands the slots of each day in [from, until) to the consumer, days without slots included, holding only
+     * one day in memory. The stream must be ordered by start.
+     */
+    public static void forEachDay(final Stream<TimeSlotView> timeSlots,
+                                  final LocalDate from,
+                                  final LocalDate until,
+                                  final BiConsumer<LocalDate, List<TimeSlotView>> dayConsumer) {
+        final PeekingIterator<TimeSlotView> timeSlotIterator = Iterators.peekingIterator(timeSlots.iterator());
+
+        for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+            final List<TimeSlotView> dayTimeSlots = Lists.newArrayList();
+            while (timeSlotIterator.hasNext() && !timeSlotIterator.peek().getStart().toLocalDate().isAfter(date)) {
+                final TimeSlotView timeSlot = timeSlotIterator.next();
+                if (timeSlot.getStart().toLocalDate().equals(date)) {
+                    dayTimeSlots.add(timeSlot);
+                }
+            }
+
+            dayConsumer.accept(date, dayTimeSlots);
+        }
+    }
+}
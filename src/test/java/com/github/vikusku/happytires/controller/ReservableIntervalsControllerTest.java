@@ -0,0 +1,156 @@
+package com.github.vikusku.happytires.controller;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.exception.ServiceProviderNotFoundException;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.service.AvailabilitySearchService;
+import com.github.vikusku.happytires.service.AvailabilityVersionService;
+import com.github.vikusku.happytires.service.ReservableIntervalsService;
+import com.github.vikusku.happytires.service.SlotHoldService;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ReservableIntervalsController.class)
+@Import(NdjsonWriter.class)
+class ReservableIntervalsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ReservableIntervalsService reservableIntervalsService;
+
+    @MockBean
+    private AvailabilitySearchService availabilitySearchService;
+
+    @MockBean
+    private AvailabilityVersionService availabilityVersionService;
+
+    @MockBean
+    private SlotHoldService slotHoldService;
+
+    private final long serviceProviderId = 1L;
+    private final LocalDate from = LocalDate.now().plusDays(1);
+    private final LocalDate until = from.plusDays(2);
+    private final ReservableIntervalDto interval = new ReservableIntervalDto(
+            LocalDateTime.of(from, LocalTime.parse("08:00")), Duration.ofMinutes(30), serviceProviderId);
+
+    private final String eTag = "\"42\"";
+
+    @BeforeEach
+    void setUp() {
+        when(availabilityVersionService.eTag(serviceProviderId, from, until, ServiceType.TIRES_CHANGE, 0L)).thenReturn(eTag);
+    }
+
+    @Test
+    public void findReservableIntervalsReturnsJsonByDefault() throws Exception {
+        when(reservableIntervalsService.findReservableIntervals(serviceProviderId, ServiceType.TIRES_CHANGE, from, until))
+                .thenReturn(ImmutableMap.of(from, Lists.newArrayList(interval), from.plusDays(1), Lists.newArrayList()));
+
+        this.mockMvc.perform(get("/api/v1/reservable-intervals")
+                        .param("serviceProviderId", String.valueOf(serviceProviderId))
+                        .param("serviceType", ServiceType.TIRES_CHANGE.name())
+                        .param("from", from.toString())
+                        .param("until", until.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(jsonPath("$['" + from + "'][0].serviceProviderId").value(serviceProviderId))
+                .andExpect(jsonPath("$['" + from.plusDays(1) + "']").isEmpty());
+    }
+
+    @Test
+    public void findReservableIntervalsReturns304IfAvailabilityVersionsDidNotChange() throws Exception {
+        this.mockMvc.perform(get("/api/v1/reservable-intervals")
+                        .param("serviceProviderId", String.valueOf(serviceProviderId))
+                        .param("serviceType", ServiceType.TIRES_CHANGE.name())
+                        .param("from", from.toString())
+                        .param("until", until.toString())
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+
+        verifyNoInteractions(reservableIntervalsService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void findReservableIntervalsStreamsOneDayPerLineForNdjson() throws Exception {
+        doAnswer(invocation -> {
+            final BiConsumer<LocalDate, List<ReservableIntervalDto>> dayConsumer = invocation.getArgument(4);
+            dayConsumer.accept(from, Lists.newArrayList(interval));
+            dayConsumer.accept(from.plusDays(1), Lists.newArrayList());
+            return null;
+        }).when(reservableIntervalsService).streamReservableIntervals(
+                eq(serviceProviderId), eq(ServiceType.TIRES_CHANGE), eq(from), eq(until), any(BiConsumer.class));
+
+        final MvcResult mvcResult = this.mockMvc.perform(get("/api/v1/reservable-intervals")
+                        .param("serviceProviderId", String.valueOf(serviceProviderId))
+                        .param("serviceType", ServiceType.TIRES_CHANGE.name())
+                        .param("from", from.toString())
+                        .param("until", until.toString())
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"date\":\"" + from + "\",\"intervals\":[{\"start\":\"" + from + "T08:00:00\"," +
+                                "\"duration\":\"PT30M\",\"serviceProviderId\":1}]}\n" +
+                        "{\"date\":\"" + from.plusDays(1) + "\",\"intervals\":[]}\n"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void findReservableIntervalsStreamReturns404IfServiceProviderNotFound() throws Exception {
+        doThrow(new ServiceProviderNotFoundException("Service provider with 1 does not exist"))
+                .when(reservableIntervalsService).streamReservableIntervals(
+                        eq(serviceProviderId), eq(ServiceType.TIRES_CHANGE), eq(from), eq(until), any(BiConsumer.class));
+
+        final MvcResult mvcResult = this.mockMvc.perform(get("/api/v1/reservable-intervals")
+                        .param("serviceProviderId", String.valueOf(serviceProviderId))
+                        .param("serviceType", ServiceType.TIRES_CHANGE.name())
+                        .param("from", from.toString())
+                        .param("until", until.toString())
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.vikusku.happytires.controller;
+
+import com.github.vikusku.happytires.dto.CustomerDto;
+import com.github.vikusku.happytires.dto.ReservationDto;
+import com.github.vikusku.happytires.exception.InvalidIdempotencyKeyException;
+import com.github.vikusku.happytires.exception.TimeSlotConflictException;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.service.IdempotencyService;
+import com.github.vikusku.happytires.service.ReservationService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ReservationController.class)
+class ReservationControllerTest {
+
+    private static final String RESERVATION = "{\"serviceProviderId\": 1, \"start\": \"2099-03-11T08:00:00\", " +
+            "\"duration\": \"PT30M\", \"serviceType\": \"TIRES_CHANGE\", \"customerDto\": {\"name\": \"Foo Customer\", " +
+            "\"address\": \"foo street\", \"email\": \"foo@test.com\", \"phoneNumber\": \"1231231234\"}}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ReservationService reservationService;
+
+    @MockBean
+    private IdempotencyService idempotencyService;
+
+    @Test
+    public void createWithHoldLocatesTheReservationWithoutTheQuery() throws Exception {
+        when(reservationService.create(any(ReservationDto.class), eq("hold-1"))).thenReturn(Optional.of(new ReservationDto(
+                5L, 1L, LocalDateTime.parse("2099-03-11T08:00:00"), Duration.ofMinutes(30), ServiceType.TIRES_CHANGE,
+                new CustomerDto("Foo Customer", "foo street", "foo@test.com", "1231231234"))));
+
+        mockMvc.perform(post("/api/v1/reservations?holdId=hold-1")
+                .content(RESERVATION)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Location", "http://localhost/api/v1/reservations/5"));
+    }
+
+    @Test
+    public void slotsTakenBeforeTheClaimAreAConflict() throws Exception {
+        when(reservationService.create(any(ReservationDto.class), any()))
+                .thenThrow(new TimeSlotConflictException("TIME_SLOTS_ALREADY_RESERVED"));
+
+        mockMvc.perform(post("/api/v1/reservations")
+                .content(RESERVATION)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("TIME_SLOTS_ALREADY_RESERVED"));
+    }
+
+    @Test
+    public void invalidIdempotencyKeyIsABadRequest() throws Exception {
+        when(idempotencyService.execute(eq(" "), anyString(), any(), eq(ReservationDto.class), any()))
+                .thenThrow(new InvalidIdempotencyKeyException("Idempotency-Key must be a non-blank value of at most 255 characters"));
+
+        mockMvc.perform(post("/api/v1/reservations")
+                .header("Idempotency-Key", " ")
+                .content(RESERVATION)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+}
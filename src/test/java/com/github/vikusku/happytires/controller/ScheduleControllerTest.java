@@ -0,0 +1,52 @@
+package com.github.vikusku.happytires.controller;
+
+import com.github.vikusku.happytires.exception.InvalidScheduleException;
+import com.github.vikusku.happytires.service.AvailabilityVersionService;
+import com.github.vikusku.happytires.service.ScheduleImportService;
+import com.github.vikusku.happytires.service.ScheduleService;
+import com.github.vikusku.happytires.service.ScheduleTemplateService;
+import com.github.vikusku.happytires.service.TimeSlotArchiver;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ScheduleController.class)
+@Import(NdjsonWriter.class)
+class ScheduleControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ScheduleService scheduleService;
+
+    @MockBean
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @MockBean
+    private AvailabilityVersionService availabilityVersionService;
+
+    @MockBean
+    private ScheduleImportService scheduleImportService;
+
+    @MockBean
+    private TimeSlotArchiver timeSlotArchiver;
+
+    @Test
+    public void invalidScheduleIsAConflictRatherThanAServerError() throws Exception {
+        doThrow(new InvalidScheduleException("Time slots were reserved while updating the schedule"))
+                .when(scheduleTemplateService).deleteTemplate(1L);
+
+        mockMvc.perform(delete("/api/v1/schedules/1/template"))
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Time slots were reserved while updating the schedule"));
+    }
+}
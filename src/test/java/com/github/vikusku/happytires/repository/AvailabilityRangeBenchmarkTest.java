@@ -0,0 +1,155 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.service.AvailabilityRangeService;
+import com.github.vikusku.happytires.service.ServiceTestConfiguration;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Table size and read latency of time slot rows versus availability ranges. Opt-in, as the default size of
+ * 1000 providers x 365 days loads ~19M time slots; the data lives in a file database under target/ as it does not
+ * fit the heap:
+ * {@code mvn test -Dtest=AvailabilityRangeBenchmarkTest -Dhappytires.benchmark=true
+ * [-Dhappytires.benchmark.providers=1000] [-Dhappytires.benchmark.days=365]}
+ */
+@Slf4j
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {"spring.datasource.url=jdbc:h2:file:./target/availability-range-benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "happytires.availability-range.enabled=true"})
+@Import(ServiceTestConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "happytires.benchmark", matches = "true")
+class AvailabilityRangeBenchmarkTest {
+
+    private static final int QUERIES = 1000;
+    private static final int QUERY_DAYS = 7;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private AvailabilityRangeService availabilityRangeService;
+
+    private final int providers = Integer.getInteger("happytires.benchmark.providers", 1000);
+    private final int days = Integer.getInteger("happytires.benchmark.days", 365);
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+
+    @Test
+    public void compareTimeSlotAndAvailabilityRangeStorage() {
+        populate();
+
+        final long migrationStartedAt = System.nanoTime();
+        availabilityRangeService.migrate();
+        final long migrationMillis = (System.nanoTime() - migrationStartedAt) / 1_000_000;
+
+        final long timeSlotRows = count("time_slot");
+        final long availabilityRangeRows = count("availability_range");
+        log.info("{} providers x {} days: {} time slot rows, {} availability range rows ({} per provider-day), migrated in {} ms",
+                providers, days, timeSlotRows, availabilityRangeRows,
+                String.format("%.1f", (double) availabilityRangeRows / providers / days), migrationMillis);
+
+        final Random random = new Random(1);
+        final List<Long> serviceProviderIds = jdbcTemplate.queryForList("select id from service_provider", Long.class);
+        final long[] timeSlotNanos = new long[QUERIES];
+        final long[] availabilityRangeNanos = new long[QUERIES];
+        for (int query = 0; query < QUERIES; query++) {
+            final long serviceProviderId = serviceProviderIds.get(random.nextInt(serviceProviderIds.size()));
+            final LocalDate queryFrom = from.plusDays(random.nextInt(Math.max(1, days - QUERY_DAYS)));
+            final LocalDate queryUntil = queryFrom.plusDays(QUERY_DAYS);
+
+            timeSlotNanos[query] = time(() -> timeSlotRepository.findFreeTimeSlotViews(serviceProviderId,
+                    LocalDateTime.of(queryFrom, LocalTime.MIN), LocalDateTime.of(queryUntil, LocalTime.MIN)));
+            availabilityRangeNanos[query] = time(() -> availabilityRangeService.findFreeTimeSlotIslands(
+                    serviceProviderId, queryFrom, queryUntil));
+        }
+
+        log.info("free availability of one provider for {} days, time slots: {}", QUERY_DAYS, percentiles(timeSlotNanos));
+        log.info("free availability of one provider for {} days, availability ranges: {}", QUERY_DAYS, percentiles(availabilityRangeNanos));
+
+        assertThat(availabilityRangeRows).isLessThan(timeSlotRows);
+    }
+
+    /**
+     * Every provider-day is open 08:00-21:00 with four reservations of two slots each.
+     */
+    private void populate() {
+        jdbcTemplate.update("insert into customer (id, name, address, email, phone_number) values (1, 'Foo Customer', 'foo street', 'foo@test.com', '1231231234')");
+
+        long reservationId = 0;
+        for (long serviceProviderId = 1; serviceProviderId <= providers; serviceProviderId++) {
+            jdbcTemplate.update("insert into service_provider (id, name, email, phone_number) values (?, ?, ?, ?)",
+                    serviceProviderId, "Provider " + serviceProviderId, "provider" + serviceProviderId + "@test.com", "1231231234");
+
+            final List<Object[]> reservations = Lists.newArrayList();
+            final List<Object[]> timeSlots = Lists.newArrayList();
+            for (LocalDate date = from; date.isBefore(from.plusDays(days)); date = date.plusDays(1)) {
+                int slotIndex = 0;
+                for (LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+                     start.isBefore(LocalDateTime.of(date, LocalTime.parse("21:00")));
+                     start = start.plus(DEFAULT_TIME_SLOT_DURATION), slotIndex++) {
+                    Long slotReservationId = null;
+                    if (slotIndex % 13 == 4 || slotIndex % 13 == 5) {
+                        if (slotIndex % 13 == 4) {
+                            reservationId++;
+                            reservations.add(new Object[]{reservationId, Timestamp.valueOf(start),
+                                    DEFAULT_TIME_SLOT_DURATION.multipliedBy(2).toNanos(), "TIRES_CHANGE", 1L});
+                        }
+                        slotReservationId = reservationId;
+                    }
+                    timeSlots.add(new Object[]{Timestamp.valueOf(start), serviceProviderId,
+                            DEFAULT_TIME_SLOT_DURATION.toNanos(), slotReservationId});
+                }
+            }
+
+            jdbcTemplate.batchUpdate("insert into reservation (id, start, duration, service_type, customer_id) values (?, ?, ?, ?, ?)",
+                    reservations);
+            jdbcTemplate.batchUpdate("insert into time_slot (start, service_provider_id, duration, reservation_id, version) values (?, ?, ?, ?, 0)",
+                    timeSlots);
+        }
+    }
+
+    private long count(final String table) {
+        return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+    }
+
+    private static long time(final Supplier<List<?>> query) {
+        final long startedAt = System.nanoTime();
+        query.get();
+        return System.nanoTime() - startedAt;
+    }
+
+    private static String percentiles(final long[] nanos) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.2f ms, p95 %.2f ms, p99 %.2f ms",
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 95 / 100] / 1e6, sorted[sorted.length * 99 / 100] / 1e6);
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.vikusku.happytires.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class IdempotencyRecordRepositoryTest {
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Test
+    public void claimOfATakenKeyFailsOnTheDuplicateKey() {
+        final LocalDateTime lockedUntil = LocalDateTime.now().plusSeconds(30).truncatedTo(ChronoUnit.MILLIS);
+        idempotencyRecordRepository.claim("key", "hash", lockedUntil);
+
+        assertThatThrownBy(() -> idempotencyRecordRepository.claim("key", "hash", lockedUntil))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(idempotencyRecordRepository.release("key", lockedUntil)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.dto.CustomerDto;
+import com.github.vikusku.happytires.dto.ReservationDto;
+import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.github.vikusku.happytires.service.ReservationService;
+import com.github.vikusku.happytires.service.ServiceTestConfiguration;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many threads booking overlapping intervals of one provider-day against committed data. Sizes can be raised with
+ * {@code -Dhappytires.contention.threads=16 -Dhappytires.contention.bookings-per-thread=200}.
+ */
+@Slf4j
+@DataJpaTest(properties = {"happytires.booking-lock.timeout=30s", "happytires.transaction-retry.backoff=5ms"})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReservationContentionTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ServiceProviderRepository spRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    private final int threads = Integer.getInteger("happytires.contention.threads", 8);
+    private final int bookingsPerThread = Integer.getInteger("happytires.contention.bookings-per-thread", 25);
+    private final LocalDate date = LocalDate.parse("2030-01-07");
+
+    private ServiceProvider sp;
+    private List<LocalDateTime> slotStarts;
+
+    @BeforeEach
+    void setUp() {
+        sp = spRepository.save(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+
+        slotStarts = new TimeSlotFixture(jdbcTemplate, reservationRepository, sp)
+                .freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("21:00")).stream()
+                .map(TimeSlot::getStart)
+                .collect(Collectors.toList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from time_slot");
+        jdbcTemplate.update("delete from reservation");
+        jdbcTemplate.update("delete from customer");
+        jdbcTemplate.update("delete from service_provider");
+    }
+
+    @Test
+    public void concurrentBookingsNeverShareTimeSlots() throws InterruptedException {
+        final long[] latencyNanos = new long[threads * bookingsPerThread];
+        final AtomicInteger booked = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final List<Throwable> failures = Collections.synchronizedList(Lists.newArrayList());
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < threads; thread++) {
+            final int threadIndex = thread;
+            pool.execute(() -> {
+                final Random random = new Random(threadIndex);
+                awaitQuietly(start);
+                for (int booking = 0; booking < bookingsPerThread; booking++) {
+                    final int slots = 2 + random.nextInt(3);
+                    final LocalDateTime bookingStart = slotStarts.get(random.nextInt(slotStarts.size() - slots + 1));
+                    final ReservationDto reservationDto = new ReservationDto(0L, sp.getId(), bookingStart,
+                            DEFAULT_TIME_SLOT_DURATION.multipliedBy(slots), ServiceType.TIRES_CHANGE,
+                            new CustomerDto("Customer", "foo street", "customer-" + threadIndex + "-" + booking + "@test.com", "1231231234"));
+
+                    final long startedAt = System.nanoTime();
+                    try {
+                        reservationService.create(reservationDto);
+                        booked.incrementAndGet();
+                    } catch (ReservationPersistenceException e) {
+                        rejected.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failures.add(e);
+                    }
+                    latencyNanos[threadIndex * bookingsPerThread + booking] = System.nanoTime() - startedAt;
+                }
+            });
+        }
+
+        final long startedAt = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+        final double seconds = (System.nanoTime() - startedAt) / 1e9;
+
+        log.info("{} threads x {} bookings of one provider-day: {} booked, {} rejected, {} failed, {} bookings/s, {}",
+                threads, bookingsPerThread, booked.get(), rejected.get(), failures.size(),
+                String.format("%.0f", latencyNanos.length / seconds), percentiles(latencyNanos));
+
+        assertThat(failures).isEmpty();
+        assertThat(booked.get()).isPositive();
+        final List<Map<String, Object>> reservations = jdbcTemplate.queryForList(
+                "select r.id, r.start, r.duration, count(ts.start) as slots " +
+                        "from reservation r left join time_slot ts on ts.reservation_id = r.id " +
+                        "group by r.id, r.start, r.duration order by r.start");
+        assertThat(reservations).hasSize(booked.get());
+        LocalDateTime previousEnd = LocalDateTime.MIN;
+        for (Map<String, Object> reservation : reservations) {
+            final LocalDateTime reservationStart = ((java.sql.Timestamp) reservation.get("start")).toLocalDateTime();
+            final Duration duration = Duration.ofNanos(((Number) reservation.get("duration")).longValue());
+            assertThat(((Number) reservation.get("slots")).longValue())
+                    .isEqualTo(duration.toMinutes() / DEFAULT_TIME_SLOT_DURATION.toMinutes());
+            assertThat(reservationStart).isAfterOrEqualTo(previousEnd);
+            previousEnd = reservationStart.plus(duration);
+        }
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String percentiles(final long[] nanos) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.2f ms, p95 %.2f ms, p99 %.2f ms",
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 95 / 100] / 1e6, sorted[sorted.length * 99 / 100] / 1e6);
+    }
+}
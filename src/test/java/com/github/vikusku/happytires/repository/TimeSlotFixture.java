@@ -0,0 +1,86 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.Reservation;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.google.common.collect.Lists;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+
+/**
+ * Seeds the time slots of one service provider for database tests, written through {@link TimeSlotBatchWriter}.
+ */
+public class TimeSlotFixture {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReservationRepository reservationRepository;
+    private final ServiceProvider sp;
+
+    public TimeSlotFixture(final JdbcTemplate jdbcTemplate, final ReservationRepository reservationRepository,
+                           final ServiceProvider sp) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reservationRepository = reservationRepository;
+        this.sp = sp;
+    }
+
+    /**
+     * Inserts free slots starting in [from, until) of the date.
+     */
+    public List<TimeSlot> freeSlots(final LocalDate date, final LocalTime from, final LocalTime until) {
+        final List<TimeSlot> timeSlots = Lists.newArrayList();
+        for (LocalDateTime slotStart = LocalDateTime.of(date, from);
+             slotStart.isBefore(LocalDateTime.of(date, until));
+             slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+            timeSlots.add(new TimeSlot(slotStart, sp, DEFAULT_TIME_SLOT_DURATION, null));
+        }
+
+        return insert(timeSlots);
+    }
+
+    /**
+     * Inserts slots between 08:00 and 21:00 of every day in [from, until), with a fixed seed: a fifth of them are
+     * left out and another fifth belong to one reservation of the customer per day.
+     */
+    public List<TimeSlot> randomSlots(final LocalDate from, final LocalDate until, final Customer customer) {
+        final List<TimeSlot> timeSlots = Lists.newArrayList();
+        final Random random = new Random(7);
+        for (LocalDate date = from; date.isBefore(until); date = date.plusDays(1)) {
+            Reservation reservation = null;
+            for (LocalDateTime slotStart = LocalDateTime.of(date, LocalTime.parse("08:00"));
+                 slotStart.isBefore(LocalDateTime.of(date, LocalTime.parse("21:00")));
+                 slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+                final int roll = random.nextInt(10);
+                if (roll < 2) {
+                    continue;
+                }
+
+                final TimeSlot slot = new TimeSlot(slotStart, sp, DEFAULT_TIME_SLOT_DURATION, null);
+                if (roll < 4) {
+                    if (reservation == null) {
+                        reservation = reservationRepository.save(new Reservation(0L, slotStart, Duration.ofMinutes(30),
+                                ServiceType.TIRES_CHANGE, customer, Lists.newArrayList()));
+                    }
+                    slot.setReservation(reservation);
+                }
+                timeSlots.add(slot);
+            }
+        }
+
+        return insert(timeSlots);
+    }
+
+    private List<TimeSlot> insert(final List<TimeSlot> timeSlots) {
+        new TimeSlotBatchWriter(jdbcTemplate, 100).insert(sp.getId(), timeSlots.stream());
+        return timeSlots;
+    }
+}
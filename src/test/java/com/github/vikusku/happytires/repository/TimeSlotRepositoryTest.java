@@ -0,0 +1,108 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TimeSlotRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+    private final LocalDate until = LocalDate.parse("2021-03-08");
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        final Customer customer = entityManager.persist(
+                new Customer(0L, "Foo Customer", "foo street", "foo@test.com", "1231231234"));
+        new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).randomSlots(from, until, customer);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void findFreeTimeSlotIslandsReturnsRunsOfAdjacentFreeSlots() {
+        final List<TimeSlotIsland> islands = timeSlotRepository.findFreeTimeSlotIslands(sp.getId(),
+                LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX), DEFAULT_TIME_SLOT_DURATION.toMinutes());
+        final List<TimeSlotView> freeTimeSlots = timeSlotRepository.findFreeTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+
+        assertThat(islands).isNotEmpty();
+        assertThat(islands.stream().mapToLong(TimeSlotIsland::getRunLength).sum()).isEqualTo(freeTimeSlots.size());
+        for (int islandIndex = 1; islandIndex < islands.size(); islandIndex++) {
+            assertThat(islands.get(islandIndex).getStart()).isAfter(islands.get(islandIndex - 1).getStart());
+        }
+    }
+
+    @Test
+    public void streamTimeSlotViewsMatchesFindTimeSlotViews() {
+        final LocalDateTime after = LocalDateTime.of(from, LocalTime.MIN);
+        final LocalDateTime before = LocalDateTime.of(until, LocalTime.MAX);
+
+        try (Stream<TimeSlotView> timeSlots = timeSlotRepository.streamTimeSlotViews(sp.getId(), after, before)) {
+            assertThat(timeSlots.collect(Collectors.toList()))
+                    .isEqualTo(timeSlotRepository.findTimeSlotViews(sp.getId(), after, before));
+        }
+        try (Stream<TimeSlotView> freeTimeSlots = timeSlotRepository.streamFreeTimeSlotViews(sp.getId(), after, before)) {
+            assertThat(freeTimeSlots.collect(Collectors.toList()))
+                    .isEqualTo(timeSlotRepository.findFreeTimeSlotViews(sp.getId(), after, before));
+        }
+    }
+
+    @Test
+    public void timeSlotBatchWriterInsertsAllChunks() {
+        final LocalDate date = until.plusDays(1);
+        final List<TimeSlot> timeSlots = Lists.newArrayList();
+        for (LocalDateTime slotStart = LocalDateTime.of(date, LocalTime.parse("08:00"));
+             slotStart.isBefore(LocalDateTime.of(date, LocalTime.parse("10:00")));
+             slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+            timeSlots.add(new TimeSlot(slotStart, sp, DEFAULT_TIME_SLOT_DURATION, null));
+        }
+
+        final List<Long> progress = Lists.newArrayList();
+        final long inserted = new TimeSlotBatchWriter(jdbcTemplate, 3).insert(sp.getId(), timeSlots.stream(), progress::add);
+
+        assertThat(inserted).isEqualTo(timeSlots.size());
+        assertThat(progress).containsExactly(3L, 6L, 8L);
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX)))
+                .containsExactlyElementsOf(timeSlots.stream()
+                        .map(ts -> new TimeSlotView(sp.getId(), ts.getStart(), ts.getDuration(), null))
+                        .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.vikusku.happytires.repository;
+
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.TimeSlot;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements, loaded entities, allocated bytes and latency of reading a provider's week as managed {@link TimeSlot}
+ * entities versus {@link TimeSlotView} projections, both in a read-only transaction. Opt-in:
+ * {@code mvn test -Dtest=TimeSlotViewBenchmarkTest -Dhappytires.benchmark=true
+ * [-Dhappytires.benchmark.providers=50] [-Dhappytires.benchmark.days=28]}
+ */
+@Slf4j
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "happytires.benchmark", matches = "true")
+class TimeSlotViewBenchmarkTest {
+
+    private static final int QUERIES = 500;
+    private static final int QUERY_DAYS = 7;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ServiceProviderRepository spRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final int providers = Integer.getInteger("happytires.benchmark.providers", 50);
+    private final int days = Integer.getInteger("happytires.benchmark.days", 28);
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+
+    @Test
+    public void compareEntityAndProjectionReads() {
+        final List<Long> serviceProviderIds = populate();
+        final TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        final Statistics statistics = entityManager.unwrap(Session.class).getSessionFactory().getStatistics();
+
+        final Measurement entities = new Measurement();
+        final Measurement views = new Measurement();
+        final Random random = new Random(1);
+        for (int query = 0; query < QUERIES; query++) {
+            final long serviceProviderId = serviceProviderIds.get(random.nextInt(serviceProviderIds.size()));
+            final LocalDateTime queryFrom = LocalDateTime.of(from.plusDays(random.nextInt(Math.max(1, days - QUERY_DAYS))), LocalTime.MIN);
+            final LocalDateTime queryUntil = queryFrom.plusDays(QUERY_DAYS);
+
+            entities.add(statistics, () -> readOnly.execute(status -> entityManager.createQuery(
+                    "select ts from TimeSlot ts where ts.serviceProvider.id = :serviceProviderId " +
+                            "and ts.start >= :from and ts.start < :until order by ts.start", TimeSlot.class)
+                    .setParameter("serviceProviderId", serviceProviderId)
+                    .setParameter("from", queryFrom)
+                    .setParameter("until", queryUntil)
+                    .getResultList()));
+            views.add(statistics, () -> readOnly.execute(status ->
+                    timeSlotRepository.findTimeSlotViews(serviceProviderId, queryFrom, queryUntil)));
+        }
+
+        log.info("{} days of one provider as TimeSlot entities: {}", QUERY_DAYS, entities);
+        log.info("{} days of one provider as TimeSlotView projections: {}", QUERY_DAYS, views);
+
+        assertThat(views.statements).isLessThanOrEqualTo(entities.statements);
+        assertThat(views.loadedEntities).isZero();
+    }
+
+    private List<Long> populate() {
+        final Customer customer = customerRepository.save(new Customer(0L, "Foo Customer", "foo street", "foo@test.com", "1231231234"));
+        final List<Long> serviceProviderIds = Lists.newArrayList();
+        for (int provider = 0; provider < providers; provider++) {
+            final ServiceProvider sp = spRepository.save(new ServiceProvider(0L, "Provider " + provider,
+                    "provider" + provider + "@test.com", "12341231234", Lists.newArrayList()));
+            new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).randomSlots(from, from.plusDays(days), customer);
+            serviceProviderIds.add(sp.getId());
+        }
+
+        return serviceProviderIds;
+    }
+
+    private static class Measurement {
+        private long statements;
+        private long loadedEntities;
+        private long allocatedBytes;
+        private long nanos;
+        private long rows;
+
+        void add(final Statistics statistics, final Supplier<List<?>> read) {
+            final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            statistics.clear();
+            final long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            final long startedAt = System.nanoTime();
+
+            rows += read.get().size();
+
+            nanos += System.nanoTime() - startedAt;
+            allocatedBytes += threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+            statements += statistics.getPrepareStatementCount();
+            loadedEntities += statistics.getEntityLoadCount();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f rows, %.1f statements, %.1f loaded entities, %.1f KB allocated, %.2f ms per query",
+                    (double) rows / QUERIES, (double) statements / QUERIES, (double) loadedEntities / QUERIES,
+                    allocatedBytes / 1024.0 / QUERIES, nanos / 1e6 / QUERIES);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvailabilityCacheTest {
+
+    private final long serviceProviderId = 1L;
+    private final LocalDate date = LocalDate.parse("2021-03-01");
+    private final Map<LocalDate, List<ReservableIntervalDto>> intervals = ImmutableMap.of(
+            date, Lists.newArrayList(new ReservableIntervalDto(LocalDateTime.parse("2021-03-01T08:00:00"), Duration.ofMinutes(30), serviceProviderId)),
+            date.plusDays(1), Lists.newArrayList());
+
+    private final AvailabilityCache availabilityCache = new AvailabilityCache(true, 100, Duration.ofMinutes(10));
+
+    @Test
+    public void availabilityChangedEventInvalidatesOnlyChangedDays() {
+        availabilityCache.putAll(serviceProviderId, ServiceType.TIRES_CHANGE, intervals, availabilityCache.generation(serviceProviderId));
+        availabilityCache.putAll(serviceProviderId, ServiceType.TIRE_CHANGE_PLUS_STORAGE, intervals, availabilityCache.generation(serviceProviderId));
+
+        availabilityCache.onAvailabilityChanged(new AvailabilityChangedEvent(serviceProviderId, Sets.newHashSet(date)));
+
+        assertThat(availabilityCache.getAllPresent(serviceProviderId, ServiceType.TIRES_CHANGE, date, date.plusDays(2)))
+                .containsOnlyKeys(date.plusDays(1));
+        assertThat(availabilityCache.getAllPresent(serviceProviderId, ServiceType.TIRE_CHANGE_PLUS_STORAGE, date, date.plusDays(2)))
+                .containsOnlyKeys(date.plusDays(1));
+    }
+
+    @Test
+    public void scheduleTemplateChangedEventInvalidatesTheWholeProvider() {
+        availabilityCache.putAll(serviceProviderId, ServiceType.TIRES_CHANGE, intervals, availabilityCache.generation(serviceProviderId));
+        availabilityCache.putAll(serviceProviderId + 1, ServiceType.TIRES_CHANGE, intervals, availabilityCache.generation(serviceProviderId + 1));
+
+        availabilityCache.onScheduleTemplateChanged(new ScheduleTemplateChangedEvent(serviceProviderId));
+
+        assertThat(availabilityCache.getAllPresent(serviceProviderId, ServiceType.TIRES_CHANGE, date, date.plusDays(2))).isEmpty();
+        assertThat(availabilityCache.getAllPresent(serviceProviderId + 1, ServiceType.TIRES_CHANGE, date, date.plusDays(2)))
+                .containsOnlyKeys(date, date.plusDays(1));
+    }
+
+    @Test
+    public void resultsLoadedBeforeAvailabilityChangedAreNotStored() {
+        final long generation = availabilityCache.generation(serviceProviderId);
+        availabilityCache.onAvailabilityChanged(new AvailabilityChangedEvent(serviceProviderId, Sets.newHashSet(date)));
+
+        availabilityCache.putAll(serviceProviderId, ServiceType.TIRES_CHANGE, intervals, generation);
+
+        assertThat(availabilityCache.getAllPresent(serviceProviderId, ServiceType.TIRES_CHANGE, date, date.plusDays(2))).isEmpty();
+    }
+
+    @Test
+    public void disabledCacheIsBypassed() {
+        final AvailabilityCache disabledCache = new AvailabilityCache(false, 100, Duration.ofMinutes(10));
+
+        disabledCache.putAll(serviceProviderId, ServiceType.TIRES_CHANGE, intervals, disabledCache.generation(serviceProviderId));
+
+        assertThat(disabledCache.getAllPresent(serviceProviderId, ServiceType.TIRES_CHANGE, date, date.plusDays(2))).isEmpty();
+    }
+
+    @Test
+    public void hitsAndMissesAreRecorded() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        availabilityCache.bindTo(registry);
+
+        availabilityCache.putAll(serviceProviderId, ServiceType.TIRES_CHANGE, intervals, availabilityCache.generation(serviceProviderId));
+        availabilityCache.getAllPresent(serviceProviderId, ServiceType.TIRES_CHANGE, date, date.plusDays(3));
+
+        assertThat(registry.get("cache.gets").tag("cache", "availability").tag("result", "hit").functionCounter().count())
+                .isEqualTo(2);
+        assertThat(registry.get("cache.gets").tag("cache", "availability").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.repository.ScheduleTemplateRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Optional;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+class AvailabilityIndexTest {
+
+    @MockBean
+    private TimeSlotRepository timeSlotRepository;
+
+    @MockBean
+    private ServiceProviderRepository spRepository;
+
+    @MockBean
+    private ScheduleTemplateRepository scheduleTemplateRepository;
+
+    @MockBean
+    private SlotHoldService slotHoldService;
+
+    private final long serviceProviderId = 1L;
+    private final ServiceProvider sp = new ServiceProvider(
+            serviceProviderId, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList());
+    private final LocalDate date = LocalDate.now().plusDays(1);
+
+    private AvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    void setUp() {
+        availabilityIndex = new AvailabilityIndex(timeSlotRepository, spRepository, scheduleTemplateRepository, slotHoldService, true);
+        when(spRepository.findAll()).thenReturn(Lists.newArrayList(sp));
+    }
+
+    @Test
+    public void buildIndexesFreeTimeSlots() {
+        when(timeSlotRepository.findFreeTimeSlotViews(any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                slot("08:00"), slot("08:15"), slot("08:30"), slot("10:00"), slot("10:15")));
+
+        availabilityIndex.build();
+
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date, date.plusDays(1))).isTrue();
+        assertThat(availabilityIndex.isIndexed(2L, date, date.plusDays(1))).isFalse();
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 2)).containsExactly(
+                LocalDateTime.of(date, LocalTime.parse("08:00")),
+                LocalDateTime.of(date, LocalTime.parse("08:15")),
+                LocalDateTime.of(date, LocalTime.parse("10:00")));
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 3)).containsExactly(
+                LocalDateTime.of(date, LocalTime.parse("08:00")));
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date.plusDays(1), 1)).isEmpty();
+    }
+
+    @Test
+    public void findReservableStartsAcrossWordBoundary() {
+        // slot 63 (15:45) is the last bit of the first word, slot 64 (16:00) the first bit of the second
+        when(timeSlotRepository.findFreeTimeSlotViews(any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                slot("15:30"), slot("15:45"), slot("16:00"), slot("23:45")));
+
+        availabilityIndex.build();
+
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 3)).containsExactly(
+                LocalDateTime.of(date, LocalTime.parse("15:30")));
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 2)).containsExactly(
+                LocalDateTime.of(date, LocalTime.parse("15:30")),
+                LocalDateTime.of(date, LocalTime.parse("15:45")));
+    }
+
+    @Test
+    public void availabilityChangedEventRefreshesProviderDay() {
+        when(timeSlotRepository.findFreeTimeSlotViews(any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                slot("08:00"), slot("08:15"), slot("08:30")));
+        availabilityIndex.build();
+
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(slot("08:30")));
+        availabilityIndex.onAvailabilityChanged(new AvailabilityChangedEvent(serviceProviderId, Sets.newHashSet(date)));
+
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 1)).containsExactly(
+                LocalDateTime.of(date, LocalTime.parse("08:30")));
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 2)).isEmpty();
+    }
+
+    @Test
+    public void advanceDropsPastDays() {
+        when(timeSlotRepository.findFreeTimeSlotViews(any(LocalDateTime.class))).thenReturn(Lists.newArrayList(slot("08:00")));
+        availabilityIndex.build();
+
+        availabilityIndex.advance(date.plusDays(1));
+
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date, date.plusDays(1))).isFalse();
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date.plusDays(1), date.plusDays(2))).isTrue();
+        assertThat(availabilityIndex.findReservableStarts(serviceProviderId, date, 1)).isEmpty();
+    }
+
+    @Test
+    public void templateProvidersAndHeldRangesAreNotIndexed() {
+        availabilityIndex.build();
+
+        when(slotHoldService.isHeld(serviceProviderId, date.atStartOfDay(), date.plusDays(1).atStartOfDay())).thenReturn(true);
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date, date.plusDays(1))).isFalse();
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date.plusDays(1), date.plusDays(2))).isTrue();
+
+        when(scheduleTemplateRepository.findByServiceProviderId(serviceProviderId)).thenReturn(Optional.of(new ScheduleTemplate()));
+        availabilityIndex.onScheduleTemplateChanged(new ScheduleTemplateChangedEvent(serviceProviderId));
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date.plusDays(1), date.plusDays(2))).isFalse();
+
+        when(scheduleTemplateRepository.findByServiceProviderId(serviceProviderId)).thenReturn(Optional.empty());
+        availabilityIndex.onScheduleTemplateChanged(new ScheduleTemplateChangedEvent(serviceProviderId));
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date.plusDays(1), date.plusDays(2))).isTrue();
+    }
+
+    @Test
+    public void disabledIndexIsNeverUsed() {
+        availabilityIndex = new AvailabilityIndex(timeSlotRepository, spRepository, scheduleTemplateRepository, slotHoldService, false);
+        availabilityIndex.build();
+
+        assertThat(availabilityIndex.isIndexed(serviceProviderId, date, date.plusDays(1))).isFalse();
+    }
+
+    private TimeSlotView slot(final String start) {
+        return new TimeSlotView(serviceProviderId, LocalDateTime.of(date, LocalTime.parse(start)), DEFAULT_TIME_SLOT_DURATION, null);
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.model.AvailabilityVersion;
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.AvailabilityRangeBatchWriter;
+import com.github.vikusku.happytires.repository.AvailabilityRangeRepository;
+import com.github.vikusku.happytires.repository.AvailabilityVersionRepository;
+import com.github.vikusku.happytires.repository.CustomerRepository;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotFixture;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs against committed data, as refreshes replace the ranges of a day in their own transaction.
+ */
+@DataJpaTest(properties = {"happytires.availability-range.enabled=true", "happytires.availability-cache.enabled=false"})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AvailabilityRangeServiceTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ServiceProviderRepository spRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private AvailabilityRangeRepository availabilityRangeRepository;
+
+    @Autowired
+    private AvailabilityRangeBatchWriter availabilityRangeBatchWriter;
+
+    @Autowired
+    private AvailabilityVersionRepository availabilityVersionRepository;
+
+    @Autowired
+    private BookingLockManager bookingLockManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AvailabilityRangeService availabilityRangeService;
+
+    @Autowired
+    private ReservableIntervalsEngine reservableIntervalsEngine;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+    private final LocalDate until = LocalDate.parse("2021-03-08");
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = spRepository.save(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        final Customer customer = customerRepository.save(new Customer(0L, "Foo Customer", "foo street", "foo@test.com", "1231231234"));
+        new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).randomSlots(from, until, customer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from availability_range");
+        jdbcTemplate.update("delete from availability_version");
+        jdbcTemplate.update("delete from time_slot");
+        jdbcTemplate.update("delete from reservation");
+        jdbcTemplate.update("delete from customer");
+        jdbcTemplate.update("delete from service_provider");
+    }
+
+    @Test
+    public void availabilityRangePathMatchesTimeSlotPath() {
+        availabilityRangeService.migrate();
+
+        assertThat(availabilityRangeRepository.count()).isLessThan(timeSlotRepository.count());
+        assertThat(availabilityRangeService.findTimeSlotViews(sp.getId(), from, until)).isEqualTo(timeSlotViews());
+
+        final AvailabilityRangeService disabledAvailabilityRangeService = availabilityRangeService(availabilityRangeBatchWriter, false);
+        for (int serviceDuration = 15; serviceDuration <= 90; serviceDuration += 15) {
+            final DurationService durationService = durationService(serviceDuration);
+
+            final Map<LocalDate, List<ReservableIntervalDto>> fromTimeSlots = reservableIntervalsService(durationService,
+                    disabledAvailabilityRangeService)
+                    .findReservableIntervals(sp.getId(), ServiceType.TIRES_CHANGE, from, until);
+            final Map<LocalDate, List<ReservableIntervalDto>> fromRanges = reservableIntervalsService(durationService, availabilityRangeService)
+                    .findReservableIntervals(sp.getId(), ServiceType.TIRES_CHANGE, from, until);
+
+            assertThat(fromRanges).isEqualTo(fromTimeSlots);
+        }
+    }
+
+    @Test
+    public void availabilityChangedEventRefreshesAvailabilityRanges() {
+        availabilityRangeService.migrate();
+
+        jdbcTemplate.update("delete from time_slot where service_provider_id = ? and start >= ? and start < ?",
+                sp.getId(), LocalDateTime.of(from.plusDays(2), LocalTime.MIN), LocalDateTime.of(from.plusDays(2), LocalTime.NOON));
+        availabilityRangeService.onAvailabilityChanged(new AvailabilityChangedEvent(sp.getId(), Sets.newHashSet(from.plusDays(2))));
+
+        assertThat(availabilityRangeService.findTimeSlotViews(sp.getId(), from, until)).isEqualTo(timeSlotViews());
+    }
+
+    @Test
+    public void concurrentRefreshesOfOneDayDoNotDuplicateRanges() throws InterruptedException {
+        availabilityRangeService.migrate();
+        final AvailabilityChangedEvent event = new AvailabilityChangedEvent(sp.getId(), Sets.newHashSet(from.plusDays(2)));
+
+        final List<Throwable> failures = Collections.synchronizedList(Lists.newArrayList());
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int thread = 0; thread < 4; thread++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    for (int refresh = 0; refresh < 10; refresh++) {
+                        availabilityRangeService.onAvailabilityChanged(event);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        assertThat(failures).isEmpty();
+        assertThat(availabilityRangeService.findTimeSlotViews(sp.getId(), from, until)).isEqualTo(timeSlotViews());
+    }
+
+    @Test
+    public void staleDaysAreReadFromTimeSlotsAndRebuilt() {
+        availabilityRangeService.migrate();
+        final LocalDate changed = from.plusDays(2);
+        final double failures = meterRegistry.counter("availability.range.refresh.failures").count();
+
+        // a change whose refresh fails after its commit
+        jdbcTemplate.update("delete from time_slot where service_provider_id = ? and start >= ? and start < ?",
+                sp.getId(), LocalDateTime.of(changed, LocalTime.MIN), LocalDateTime.of(changed, LocalTime.NOON));
+        jdbcTemplate.update("insert into availability_version (service_provider_id, date, version, range_version) values (?, ?, 1, 0)",
+                sp.getId(), changed);
+        final AvailabilityRangeBatchWriter failingBatchWriter = mock(AvailabilityRangeBatchWriter.class);
+        when(failingBatchWriter.insert(any())).thenThrow(new IllegalStateException("Insert failed"));
+        availabilityRangeService(failingBatchWriter, true)
+                .onAvailabilityChanged(new AvailabilityChangedEvent(sp.getId(), Sets.newHashSet(changed)));
+
+        assertThat(meterRegistry.counter("availability.range.refresh.failures").count()).isEqualTo(failures + 1);
+        assertThat(availabilityVersionRepository.findAvailabilityVersions(sp.getId(), from, until))
+                .extracting(AvailabilityVersion::getVersion, AvailabilityVersion::getRangeVersion)
+                .containsExactly(tuple(1L, 0L));
+        assertThat(availabilityRangeService.findTimeSlotViews(sp.getId(), from, until)).isEqualTo(timeSlotViews());
+        assertThat(availabilityVersionRepository.findAvailabilityVersions(sp.getId(), from, until))
+                .extracting(AvailabilityVersion::getVersion, AvailabilityVersion::getRangeVersion)
+                .containsExactly(tuple(1L, 1L));
+        assertThat(availabilityRangeService.findTimeSlotViews(sp.getId(), from, until)).isEqualTo(timeSlotViews());
+    }
+
+    private List<TimeSlotView> timeSlotViews() {
+        return timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MIN));
+    }
+
+    private AvailabilityRangeService availabilityRangeService(final AvailabilityRangeBatchWriter batchWriter, final boolean enabled) {
+        return new AvailabilityRangeService(availabilityRangeRepository, batchWriter, availabilityVersionRepository,
+                timeSlotRepository, spRepository, bookingLockManager, transactionManager, meterRegistry, enabled);
+    }
+
+    private ReservableIntervalsService reservableIntervalsService(final DurationService durationService,
+                                                                  final AvailabilityRangeService availabilityRangeService) {
+        return new ReservableIntervalsService(timeSlotRepository, spRepository, durationService, reservableIntervalsEngine,
+                availabilityIndex, availabilityCache, availabilityRangeService, scheduleTemplateService, slotHoldService, false);
+    }
+
+    private DurationService durationService(final int serviceDuration) {
+        return new DurationService() {
+            @Override
+            public int getServiceDuration(ServiceType serviceType) {
+                return serviceDuration;
+            }
+        };
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.model.TemplateInterval;
+import com.github.vikusku.happytires.repository.ScheduleTemplateRepository;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+class AvailabilitySearchServiceTest {
+
+    @MockBean
+    private TimeSlotRepository timeSlotRepository;
+
+    @MockBean
+    private DurationService durationService;
+
+    @MockBean
+    private ScheduleTemplateRepository scheduleTemplateRepository;
+
+    @MockBean
+    private SlotHoldService slotHoldService;
+
+    private final ServiceProvider sp1 = new ServiceProvider(1L, "Foo Bar 1", "foo.bar1@test.com", "1231231234", Lists.newArrayList());
+    private final ServiceProvider sp2 = new ServiceProvider(2L, "Foo Bar 2", "foo.bar2@test.com", "1231231234", Lists.newArrayList());
+    private final Duration reservableIntervalDuration = Duration.ofMinutes(30);
+
+    private AvailabilitySearchService availabilitySearchService;
+
+    @BeforeEach
+    void setUp() {
+        availabilitySearchService = new AvailabilitySearchService(
+                timeSlotRepository, durationService, new RunLengthReservableIntervalsEngine(),
+                new ScheduleTemplateService(scheduleTemplateRepository, null, timeSlotRepository, null, mock(ApplicationEventPublisher.class)),
+                slotHoldService, 2, 5);
+        when(slotHoldService.withoutHeld(anyLong(), anyList())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
+        when(timeSlotRepository.findFreeTimeSlotViewsStartingBetween(
+                any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                slot("2021-03-01T08:00:00", sp2),
+                slot("2021-03-01T08:15:00", sp2),
+                slot("2021-03-01T08:15:00", sp1),
+                slot("2021-03-01T08:30:00", sp1),
+                slot("2021-03-01T08:45:00", sp1),
+                slot("2021-03-01T23:45:00", sp1),
+                slot("2021-03-02T00:00:00", sp1),
+                slot("2021-03-02T09:00:00", sp2),
+                slot("2021-03-02T09:15:00", sp2)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        availabilitySearchService.shutdown();
+    }
+
+    @Test
+    public void searchMergesServiceProvidersInTimeOrder() {
+        final List<ReservableIntervalDto> reservableIntervals = availabilitySearchService.searchReservableIntervals(
+                ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"), 100);
+
+        assertThat(reservableIntervals).containsExactly(
+                interval("2021-03-01T08:00:00", sp2),
+                interval("2021-03-01T08:15:00", sp1),
+                interval("2021-03-01T08:30:00", sp1),
+                interval("2021-03-02T09:00:00", sp2));
+
+        verify(timeSlotRepository, times(1)).findFreeTimeSlotViewsStartingBetween(
+                LocalDateTime.parse("2021-03-01T00:00:00"), LocalDateTime.parse("2021-03-03T00:00:00"));
+    }
+
+    @Test
+    public void searchReturnsAtMostLimitIntervals() {
+        final List<ReservableIntervalDto> reservableIntervals = availabilitySearchService.searchReservableIntervals(
+                ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"), 2);
+
+        assertThat(reservableIntervals).containsExactly(
+                interval("2021-03-01T08:00:00", sp2),
+                interval("2021-03-01T08:15:00", sp1));
+    }
+
+    @Test
+    public void heldIntervalsAreLeftOutOfSearchAndNextAvailable() {
+        when(slotHoldService.withoutHeld(eq(sp1.getId()), anyList())).thenAnswer(invocation -> {
+            final List<ReservableIntervalDto> intervals = invocation.getArgument(1);
+            return intervals.stream()
+                    .filter(interval -> !interval.getStart().equals(LocalDateTime.parse("2021-03-01T08:15:00")))
+                    .collect(Collectors.toList());
+        });
+
+        assertThat(availabilitySearchService.searchReservableIntervals(
+                ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"), 100)).containsExactly(
+                interval("2021-03-01T08:00:00", sp2),
+                interval("2021-03-01T08:30:00", sp1),
+                interval("2021-03-02T09:00:00", sp2));
+        assertThat(availabilitySearchService.findNextAvailable(
+                ServiceType.TIRES_CHANGE, LocalDateTime.parse("2021-03-01T00:00:00"), 2)).containsExactly(
+                interval("2021-03-01T08:00:00", sp2),
+                interval("2021-03-01T08:30:00", sp1));
+    }
+
+    @Test
+    public void findNextAvailableStopsOnFirstDayWithEnoughCandidates() {
+        when(timeSlotRepository.findFreeTimeSlotViewsStartingBetween(
+                eq(LocalDateTime.parse("2021-03-01T08:10:00")), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                slot("2021-03-01T08:15:00", sp2),
+                slot("2021-03-01T08:15:00", sp1),
+                slot("2021-03-01T08:30:00", sp1),
+                slot("2021-03-01T08:30:00", sp2),
+                slot("2021-03-01T08:45:00", sp1)));
+
+        final List<ReservableIntervalDto> nextAvailable = availabilitySearchService.findNextAvailable(
+                ServiceType.TIRES_CHANGE, LocalDateTime.parse("2021-03-01T08:10:00"), 3);
+
+        assertThat(nextAvailable).containsExactly(
+                interval("2021-03-01T08:15:00", sp1),
+                interval("2021-03-01T08:15:00", sp2),
+                interval("2021-03-01T08:30:00", sp1));
+        verify(timeSlotRepository, times(1)).findFreeTimeSlotViewsStartingBetween(
+                any(LocalDateTime.class), any(LocalDateTime.class));
+    }
+
+    @Test
+    public void findNextAvailableWalksForwardUntilHorizon() {
+        when(timeSlotRepository.findFreeTimeSlotViewsStartingBetween(
+                any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList());
+        when(timeSlotRepository.findFreeTimeSlotViewsStartingBetween(
+                eq(LocalDateTime.parse("2021-03-03T00:00:00")), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                slot("2021-03-03T10:00:00", sp2),
+                slot("2021-03-03T10:15:00", sp2)));
+
+        final List<ReservableIntervalDto> nextAvailable = availabilitySearchService.findNextAvailable(
+                ServiceType.TIRES_CHANGE, LocalDateTime.parse("2021-03-01T12:00:00"), 2);
+
+        assertThat(nextAvailable).containsExactly(interval("2021-03-03T10:00:00", sp2));
+        verify(timeSlotRepository, times(5)).findFreeTimeSlotViewsStartingBetween(
+                any(LocalDateTime.class), any(LocalDateTime.class));
+    }
+
+    @Test
+    public void templateDaysAreExpandedWithoutStoredSlots() {
+        final ScheduleTemplate template = new ScheduleTemplate(1L, sp1, LocalDate.parse("2021-03-01"), null,
+                Lists.newArrayList(new TemplateInterval(DayOfWeek.TUESDAY, LocalTime.parse("07:00"), Duration.ofMinutes(60))),
+                Sets.newHashSet(), null);
+        when(scheduleTemplateRepository.findTemplatesValidBetween(any(LocalDate.class), any(LocalDate.class)))
+                .thenReturn(Lists.newArrayList(template));
+        when(timeSlotRepository.findReservedTimeSlotViewsStartingBetween(
+                eq(Sets.newHashSet(sp1.getId())), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                new TimeSlotView(sp1.getId(), LocalDateTime.parse("2021-03-02T07:15:00"), DEFAULT_TIME_SLOT_DURATION, 5L)));
+
+        final List<ReservableIntervalDto> reservableIntervals = availabilitySearchService.searchReservableIntervals(
+                ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"), 100);
+
+        assertThat(reservableIntervals).containsExactly(
+                interval("2021-03-01T08:00:00", sp2),
+                interval("2021-03-02T07:30:00", sp1),
+                interval("2021-03-02T09:00:00", sp2));
+    }
+
+    private TimeSlotView slot(final String start, final ServiceProvider sp) {
+        return new TimeSlotView(sp.getId(), LocalDateTime.parse(start), DEFAULT_TIME_SLOT_DURATION, null);
+    }
+
+    private ReservableIntervalDto interval(final String start, final ServiceProvider sp) {
+        return new ReservableIntervalDto(LocalDateTime.parse(start), reservableIntervalDuration, sp.getId());
+    }
+}
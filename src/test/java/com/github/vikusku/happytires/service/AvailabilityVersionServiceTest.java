@@ -0,0 +1,82 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.model.AvailabilityVersion;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.AvailabilityVersionRepository;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+class AvailabilityVersionServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private AvailabilityVersionRepository availabilityVersionRepository;
+
+    @Autowired
+    private AvailabilityVersionService availabilityVersionService;
+
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+    private final LocalDate until = LocalDate.parse("2021-03-08");
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+    }
+
+    @Test
+    public void availabilityChangedEventBumpsOnlyChangedDays() {
+        final String firstWeek = availabilityVersionService.eTag(sp.getId(), from, until);
+        final String secondWeek = availabilityVersionService.eTag(sp.getId(), until, until.plusDays(7));
+
+        availabilityVersionService.onAvailabilityChanged(new AvailabilityChangedEvent(sp.getId(), Sets.newHashSet(from, from.plusDays(1))));
+        final String firstWeekChanged = availabilityVersionService.eTag(sp.getId(), from, until);
+        availabilityVersionService.onAvailabilityChanged(new AvailabilityChangedEvent(sp.getId(), Sets.newHashSet(from)));
+
+        assertThat(firstWeekChanged).isNotEqualTo(firstWeek);
+        assertThat(availabilityVersionService.eTag(sp.getId(), from, until)).isNotIn(firstWeek, firstWeekChanged);
+        assertThat(availabilityVersionService.eTag(sp.getId(), until, until.plusDays(7))).isEqualTo(secondWeek);
+        assertThat(availabilityVersionService.eTag(sp.getId(), from, until, ServiceType.TIRES_CHANGE))
+                .isNotEqualTo(availabilityVersionService.eTag(sp.getId(), from, until, ServiceType.TIRE_CHANGE_PLUS_STORAGE));
+        assertThat(availabilityVersionRepository.findAvailabilityVersions(sp.getId(), from, until))
+                .extracting(AvailabilityVersion::getDate, AvailabilityVersion::getVersion)
+                .containsExactlyInAnyOrder(tuple(from, 2L), tuple(from.plusDays(1), 1L));
+    }
+
+    @Test
+    public void scheduleTemplateChangedEventChangesETagsAnyDistanceAhead() {
+        final LocalDate farAhead = LocalDate.now().plusYears(2);
+        final String before = availabilityVersionService.eTag(sp.getId(), farAhead, farAhead.plusDays(7));
+
+        availabilityVersionService.onScheduleTemplateChanged(new ScheduleTemplateChangedEvent(sp.getId()));
+        final String changed = availabilityVersionService.eTag(sp.getId(), farAhead, farAhead.plusDays(7));
+        availabilityVersionService.onScheduleTemplateChanged(new ScheduleTemplateChangedEvent(sp.getId()));
+
+        assertThat(changed).isNotEqualTo(before);
+        assertThat(availabilityVersionService.eTag(sp.getId(), farAhead, farAhead.plusDays(7))).isNotIn(before, changed);
+        assertThat(availabilityVersionRepository.findAvailabilityVersions(sp.getId(), LocalDate.now(), farAhead.plusDays(7))).isEmpty();
+    }
+}
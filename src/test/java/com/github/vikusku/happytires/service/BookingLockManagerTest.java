@@ -0,0 +1,74 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BookingLockManagerTest {
+
+    private final LocalDate date = LocalDate.parse("2021-03-01");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BookingLockManager bookingLockManager = new BookingLockManager(meterRegistry, 64, Duration.ofMillis(100));
+
+    @Test
+    public void conflictingBookingTimesOutWhileProviderDayIsLocked() throws Exception {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> holder = CompletableFuture.supplyAsync(() -> bookingLockManager.withLocks(1L, Sets.newHashSet(date), () -> {
+            locked.countDown();
+            awaitQuietly(release);
+            return "booked";
+        }));
+        assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> bookingLockManager.withLocks(1L, Sets.newHashSet(date, date.plusDays(1)), () -> "booked"))
+                .isInstanceOf(ReservationPersistenceException.class)
+                .hasMessage("TIME_SLOTS_LOCK_TIMEOUT");
+        assertThat(meterRegistry.counter("booking.lock.timeouts").count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(holder.get(5, TimeUnit.SECONDS)).isEqualTo("booked");
+        assertThat(bookingLockManager.withLocks(1L, Sets.newHashSet(date, date.plusDays(1)), () -> "booked")).isEqualTo("booked");
+        assertThat(meterRegistry.timer("booking.lock.wait").count()).isEqualTo(2);
+    }
+
+    @Test
+    public void locksAreReleasedWhenActionFails() {
+        assertThatThrownBy(() -> bookingLockManager.withLocks(1L, Sets.newHashSet(date), () -> {
+            throw new ReservationPersistenceException("TIME_SLOTS_ALREADY_RESERVED");
+        })).hasMessage("TIME_SLOTS_ALREADY_RESERVED");
+
+        final CompletableFuture<String> otherThread = CompletableFuture.supplyAsync(
+                () -> bookingLockManager.withLocks(1L, Sets.newHashSet(date), () -> "booked"));
+        assertThat(otherThread.join()).isEqualTo("booked");
+    }
+
+    @Test
+    public void providerDaysAreSpreadOverStripes() {
+        final long distinctStripes = LongStream.range(0, 1000)
+                .mapToObj(serviceProviderId -> bookingLockManager.stripe(serviceProviderId, date))
+                .distinct()
+                .count();
+
+        assertThat(distinctStripes).isEqualTo(64);
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
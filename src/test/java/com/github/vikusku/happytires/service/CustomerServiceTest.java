@@ -0,0 +1,50 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.CustomerDto;
+import com.github.vikusku.happytires.repository.CustomerRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerServiceTest {
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final CustomerService customerService = new CustomerService(customerRepository, 100);
+
+    @Test
+    public void returningCustomerWritesItsDetailsOntoTheCachedId() {
+        when(customerRepository.findIdByEmail("foo@test.com")).thenReturn(Optional.of(7L));
+        when(customerRepository.updateDetails(7L, "Foo", "foo street", "foo@test.com", "9999999999")).thenReturn(1);
+
+        customerService.resolve(new CustomerDto("Foo", "foo street", "foo@test.com", "1231231234"));
+        customerService.resolve(new CustomerDto("Foo", "foo street", "foo@test.com", "9999999999"));
+
+        verify(customerRepository, times(1)).upsert(anyString(), anyString(), anyString(), anyString());
+        verify(customerRepository, times(1)).findIdByEmail(anyString());
+        verify(customerRepository, times(1)).updateDetails(7L, "Foo", "foo street", "foo@test.com", "9999999999");
+        verify(customerRepository, times(2)).getOne(7L);
+    }
+
+    @Test
+    public void cachedCustomerThatIsGoneIsUpsertedAgain() {
+        when(customerRepository.findIdByEmail("foo@test.com")).thenReturn(Optional.of(7L), Optional.of(8L));
+        when(customerRepository.updateDetails(8L, "Foo", "foo street", "foo@test.com", "1231231234")).thenReturn(1);
+        final CustomerDto customerDto = new CustomerDto("Foo", "foo street", "foo@test.com", "1231231234");
+
+        customerService.resolve(customerDto);
+        customerService.resolve(customerDto);
+        customerService.resolve(customerDto);
+
+        verify(customerRepository, times(2)).upsert("Foo", "foo street", "foo@test.com", "1231231234");
+        verify(customerRepository, times(1)).updateDetails(7L, "Foo", "foo street", "foo@test.com", "1231231234");
+        verify(customerRepository, times(1)).updateDetails(8L, "Foo", "foo street", "foo@test.com", "1231231234");
+        verify(customerRepository, times(1)).getOne(7L);
+        verify(customerRepository, times(2)).getOne(8L);
+    }
+}
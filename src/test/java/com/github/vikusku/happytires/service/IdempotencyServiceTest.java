@@ -0,0 +1,180 @@
+package com.github.vikusku.happytires.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.vikusku.happytires.dto.CustomerDto;
+import com.github.vikusku.happytires.dto.ReservationDto;
+import com.github.vikusku.happytires.exception.IdempotencyKeyConflictException;
+import com.github.vikusku.happytires.exception.InvalidIdempotencyKeyException;
+import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.github.vikusku.happytires.model.IdempotencyRecord;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.IdempotencyRecordRepository;
+import com.google.common.base.Strings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository = mock(IdempotencyRecordRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final IdempotencyService idempotencyService = new IdempotencyService(idempotencyRecordRepository,
+            objectMapper, mock(PlatformTransactionManager.class), Duration.ofHours(24), Duration.ofSeconds(30), 100, true);
+
+    private final ReservationDto reservationDto = new ReservationDto(0, 1, LocalDateTime.of(2030, 1, 1, 10, 0),
+            Duration.ofMinutes(30), ServiceType.TIRES_CHANGE, new CustomerDto("Foo", "foo street", "foo@test.com", "1231231234"));
+
+    @BeforeEach
+    void setUp() {
+        when(idempotencyRecordRepository.complete(anyString(), any(), any(Integer.class), any(), any(), any())).thenReturn(1);
+    }
+
+    @Test
+    public void retryReplaysTheOriginalResponseWithoutRunningTheRequestAgain() {
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.empty());
+        final AtomicInteger calls = new AtomicInteger();
+
+        final ResponseEntity<ReservationDto> first = idempotencyService.execute("key", "POST", reservationDto,
+                ReservationDto.class, () -> created(calls.incrementAndGet()));
+        final ResponseEntity<ReservationDto> retry = idempotencyService.execute("key", "POST", reservationDto,
+                ReservationDto.class, () -> created(calls.incrementAndGet()));
+
+        assertThat(calls).hasValue(1);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(retry.getHeaders().getLocation()).isEqualTo(first.getHeaders().getLocation());
+        assertThat(retry.getBody()).isEqualTo(first.getBody());
+        verify(idempotencyRecordRepository, times(1)).claim(eq("key"), anyString(), any());
+        verify(idempotencyRecordRepository, times(1)).complete(eq("key"), any(), eq(201), eq("/api/v1/reservations/1"), anyString(), any());
+    }
+
+    @Test
+    public void completedRecordIsReplayedFromTheDatabaseAndReuseForAnotherRequestConflicts() throws Exception {
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.empty());
+        final ResponseEntity<ReservationDto> first = idempotencyService.execute("key", "POST", reservationDto,
+                ReservationDto.class, () -> created(7));
+        final String requestHash = captureRequestHash();
+
+        final IdempotencyService restarted = new IdempotencyService(idempotencyRecordRepository,
+                objectMapper, mock(PlatformTransactionManager.class), Duration.ofHours(24), Duration.ofSeconds(30), 100, true);
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.of(new IdempotencyRecord("key", requestHash,
+                201, "/api/v1/reservations/7", objectMapper.writeValueAsString(first.getBody()), null, LocalDateTime.now().plusHours(1))));
+
+        final ResponseEntity<ReservationDto> retry = restarted.execute("key", "POST", reservationDto,
+                ReservationDto.class, () -> { throw new AssertionError("Request ran twice"); });
+        assertThat(retry.getBody()).isEqualTo(first.getBody());
+
+        assertThatThrownBy(() -> restarted.execute("key", "PUT /api/v1/reservations/7", reservationDto,
+                ReservationDto.class, () -> created(8)))
+                .isInstanceOf(IdempotencyKeyConflictException.class)
+                .hasMessage("IDEMPOTENCY_KEY_REUSED");
+    }
+
+    @Test
+    public void requestStillRunningConflictsAndFailedRequestReleasesItsKey() {
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.empty());
+        assertThatThrownBy(() -> idempotencyService.execute("key", "POST", reservationDto, ReservationDto.class,
+                () -> { throw new ReservationPersistenceException("TIME_SLOTS_ALREADY_RESERVED"); }))
+                .isInstanceOf(ReservationPersistenceException.class);
+        verify(idempotencyRecordRepository).release(eq("key"), any());
+        verify(idempotencyRecordRepository, never()).complete(anyString(), any(), any(Integer.class), any(), any(), any());
+
+        final String requestHash = captureRequestHash();
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.of(new IdempotencyRecord("key",
+                requestHash, 0, null, null, LocalDateTime.now().plusSeconds(10), LocalDateTime.now().plusSeconds(10))));
+        assertThatThrownBy(() -> idempotencyService.execute("key", "POST", reservationDto, ReservationDto.class,
+                () -> created(1)))
+                .isInstanceOf(IdempotencyKeyConflictException.class)
+                .hasMessage("IDEMPOTENCY_KEY_IN_PROGRESS");
+    }
+
+    @Test
+    public void claimIsLeasedBrieflyAndALapsedClaimIsTakenOverByARetry() {
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.empty());
+        final LocalDateTime before = LocalDateTime.now();
+        idempotencyService.execute("key", "POST", reservationDto, ReservationDto.class, () -> created(1));
+
+        final ArgumentCaptor<LocalDateTime> lockedUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+        final ArgumentCaptor<LocalDateTime> expiresAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(idempotencyRecordRepository).claim(eq("key"), anyString(), lockedUntil.capture());
+        verify(idempotencyRecordRepository).complete(eq("key"), eq(lockedUntil.getValue()), eq(201), any(), any(), expiresAt.capture());
+        assertThat(lockedUntil.getValue()).isBefore(before.plusMinutes(1));
+        assertThat(expiresAt.getValue()).isAfter(before.plusHours(23));
+
+        final String requestHash = captureRequestHash();
+        when(idempotencyRecordRepository.findById("other")).thenReturn(Optional.of(new IdempotencyRecord("other",
+                requestHash, 0, null, null, LocalDateTime.now().minusSeconds(1), LocalDateTime.now().minusSeconds(1))));
+        final AtomicInteger calls = new AtomicInteger();
+        idempotencyService.execute("other", "POST", reservationDto, ReservationDto.class, () -> created(calls.incrementAndGet()));
+
+        assertThat(calls).hasValue(1);
+        verify(idempotencyRecordRepository).releaseExpired(eq("other"), any());
+        verify(idempotencyRecordRepository).claim(eq("other"), eq(requestHash), any());
+    }
+
+    @Test
+    public void blankOrOverlongKeyIsRejectedBeforeAnyQuery() {
+        for (String key : new String[]{"", "  ", Strings.repeat("k", IdempotencyService.MAXIMUM_KEY_LENGTH + 1)}) {
+            assertThatThrownBy(() -> idempotencyService.execute(key, "POST", reservationDto, ReservationDto.class,
+                    () -> created(1)))
+                    .isInstanceOf(InvalidIdempotencyKeyException.class);
+        }
+        verifyNoInteractions(idempotencyRecordRepository);
+
+        when(idempotencyRecordRepository.findById(anyString())).thenReturn(Optional.empty());
+        idempotencyService.execute(Strings.repeat("k", IdempotencyService.MAXIMUM_KEY_LENGTH), "POST", reservationDto,
+                ReservationDto.class, () -> created(1));
+    }
+
+    @Test
+    public void onlyATakenKeyIsAConcurrentClaim() {
+        when(idempotencyRecordRepository.findById("key")).thenReturn(Optional.empty());
+        doThrow(new DuplicateKeyException("Duplicate entry 'key'"))
+                .when(idempotencyRecordRepository).claim(eq("key"), anyString(), any());
+        assertThatThrownBy(() -> idempotencyService.execute("key", "POST", reservationDto, ReservationDto.class,
+                () -> created(1)))
+                .isInstanceOf(IdempotencyKeyConflictException.class)
+                .hasMessage("IDEMPOTENCY_KEY_IN_PROGRESS");
+
+        doThrow(new DataIntegrityViolationException("Column 'request_hash' cannot be null"))
+                .when(idempotencyRecordRepository).claim(eq("key"), anyString(), any());
+        assertThatThrownBy(() -> idempotencyService.execute("key", "POST", reservationDto, ReservationDto.class,
+                () -> created(1)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private String captureRequestHash() {
+        final ArgumentCaptor<String> requestHash = ArgumentCaptor.forClass(String.class);
+        verify(idempotencyRecordRepository).claim(eq("key"), requestHash.capture(), any());
+        return requestHash.getValue();
+    }
+
+    private ResponseEntity<ReservationDto> created(final long id) {
+        final ReservationDto persisted = new ReservationDto(id, reservationDto.getServiceProviderId(), reservationDto.getStart(),
+                reservationDto.getDuration(), reservationDto.getServiceType(), reservationDto.getCustomerDto());
+        return ResponseEntity.created(URI.create("/api/v1/reservations/" + id)).body(persisted);
+    }
+}
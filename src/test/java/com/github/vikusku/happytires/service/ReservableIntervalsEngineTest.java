@@ -0,0 +1,74 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservableIntervalsEngineTest {
+
+    private final long serviceProviderId = 1L;
+
+    private final ReservableIntervalsEngine slidingWindowEngine = new SlidingWindowReservableIntervalsEngine();
+    private final ReservableIntervalsEngine runLengthEngine = new RunLengthReservableIntervalsEngine();
+
+    @Test
+    public void runLengthEngineEmitsEveryStartOfLongEnoughRun() {
+        final List<TimeSlotView> slots = Lists.newArrayList(
+                slot("2021-03-01T08:00:00"),
+                slot("2021-03-01T08:15:00"),
+                slot("2021-03-01T08:30:00"),
+                slot("2021-03-01T09:00:00"),
+                slot("2021-03-01T09:15:00"),
+                slot("2021-03-01T11:00:00"));
+
+        final List<ReservableIntervalDto> intervals = runLengthEngine.createReservableIntervals(2, slots, serviceProviderId);
+
+        assertThat(intervals).containsExactly(
+                new ReservableIntervalDto(LocalDateTime.parse("2021-03-01T08:00:00"), Duration.ofMinutes(30), serviceProviderId),
+                new ReservableIntervalDto(LocalDateTime.parse("2021-03-01T08:15:00"), Duration.ofMinutes(30), serviceProviderId),
+                new ReservableIntervalDto(LocalDateTime.parse("2021-03-01T09:00:00"), Duration.ofMinutes(30), serviceProviderId));
+    }
+
+    @Test
+    public void runLengthEngineHandlesEmptyDay() {
+        assertThat(runLengthEngine.createReservableIntervals(2, Lists.newArrayList(), serviceProviderId)).isEmpty();
+    }
+
+    @Test
+    public void runLengthEngineMatchesSlidingWindowEngine() {
+        final Random random = new Random(42);
+
+        for (int day = 0; day < 200; day++) {
+            final List<TimeSlotView> slots = Lists.newArrayList();
+            LocalDateTime slotStart = LocalDateTime.parse("2021-03-01T08:00:00");
+            for (int slotIndex = 0; slotIndex < 52; slotIndex++) {
+                if (random.nextInt(4) != 0) {
+                    slots.add(slot(slotStart));
+                }
+                slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION);
+            }
+
+            for (int minimumAdjacentSlots = 1; minimumAdjacentSlots <= 8; minimumAdjacentSlots++) {
+                assertThat(runLengthEngine.createReservableIntervals(minimumAdjacentSlots, slots, serviceProviderId))
+                        .isEqualTo(slidingWindowEngine.createReservableIntervals(minimumAdjacentSlots, slots, serviceProviderId));
+            }
+        }
+    }
+
+    private TimeSlotView slot(final String start) {
+        return slot(LocalDateTime.parse(start));
+    }
+
+    private TimeSlotView slot(final LocalDateTime start) {
+        return new TimeSlotView(serviceProviderId, start, DEFAULT_TIME_SLOT_DURATION, null);
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.dto.ScheduleTemplateDto;
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotFixture;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "happytires.availability-cache.enabled=false")
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+class ReservableIntervalsServiceJpaTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ServiceProviderRepository spRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ReservableIntervalsEngine reservableIntervalsEngine;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private AvailabilityCache availabilityCache;
+
+    @Autowired
+    private AvailabilityRangeService availabilityRangeService;
+
+    @Autowired
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+    private final LocalDate until = LocalDate.parse("2021-03-08");
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        final Customer customer = entityManager.persist(
+                new Customer(0L, "Foo Customer", "foo street", "foo@test.com", "1231231234"));
+        new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).randomSlots(from, until, customer);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void islandQueryPathMatchesTimeSlotPath() {
+        for (int serviceDuration = 15; serviceDuration <= 90; serviceDuration += 15) {
+            final DurationService durationService = durationService(serviceDuration);
+
+            final Map<LocalDate, List<ReservableIntervalDto>> fromTimeSlots = reservableIntervalsService(
+                    durationService, false).findReservableIntervals(sp.getId(), ServiceType.TIRES_CHANGE, from, until);
+            final Map<LocalDate, List<ReservableIntervalDto>> fromIslands = reservableIntervalsService(
+                    durationService, true).findReservableIntervals(sp.getId(), ServiceType.TIRES_CHANGE, from, until);
+
+            assertThat(fromIslands).isEqualTo(fromTimeSlots);
+        }
+    }
+
+    @Test
+    public void scheduleTemplateDaysAreExpandedOnReadAndMaterializedOnBooking() {
+        final LocalDate exceptionDate = from.plusDays(1);
+        final Map<DayOfWeek, List<AvailabilityIntervalDto>> weeklyIntervals = Maps.newHashMap();
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            weeklyIntervals.put(dayOfWeek, Lists.newArrayList(new AvailabilityIntervalDto(LocalTime.parse("06:00"), Duration.ofMinutes(60))));
+        }
+        final Map<LocalDate, List<ReservableIntervalDto>> withoutTemplate = reservableIntervalsService(
+                durationService(30), false).findReservableIntervals(sp.getId(), ServiceType.TIRES_CHANGE, from, until);
+
+        scheduleTemplateService.saveTemplate(sp.getId(), new ScheduleTemplateDto(from, until, weeklyIntervals, Sets.newHashSet(exceptionDate)));
+        entityManager.flush();
+        entityManager.clear();
+
+        final Map<LocalDate, List<ReservableIntervalDto>> withTemplate = reservableIntervalsService(
+                durationService(30), false).findReservableIntervals(sp.getId(), ServiceType.TIRES_CHANGE, from, until);
+        assertThat(withTemplate.get(from)).extracting(ReservableIntervalDto::getStart).containsExactly(
+                LocalDateTime.of(from, LocalTime.parse("06:00")),
+                LocalDateTime.of(from, LocalTime.parse("06:15")),
+                LocalDateTime.of(from, LocalTime.parse("06:30")));
+        assertThat(withTemplate.get(exceptionDate)).isEqualTo(withoutTemplate.get(exceptionDate));
+
+        final List<TimeSlotView> reservedTimeSlots = timeSlotRepository.findTimeSlotViews(sp.getId(),
+                LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(from, LocalTime.MAX)).stream()
+                .filter(TimeSlotView::isReserved)
+                .collect(Collectors.toList());
+        assertThat(scheduleTemplateService.materialize(sp.getId(), from)).isEqualTo(4);
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(from, LocalTime.MAX)))
+                .containsExactlyInAnyOrderElementsOf(scheduleTemplateService.expandDay(
+                        scheduleTemplateService.findTemplate(sp.getId()).get(), from, reservedTimeSlots));
+    }
+
+    /**
+     * With the given service durations and query path, the other collaborators from the context.
+     */
+    private ReservableIntervalsService reservableIntervalsService(final DurationService durationService, final boolean useIslandQuery) {
+        return new ReservableIntervalsService(timeSlotRepository, spRepository, durationService, reservableIntervalsEngine,
+                availabilityIndex, availabilityCache, availabilityRangeService, scheduleTemplateService, slotHoldService, useIslandQuery);
+    }
+
+    private DurationService durationService(final int serviceDuration) {
+        return new DurationService() {
+            @Override
+            public int getServiceDuration(ServiceType serviceType) {
+                return serviceDuration;
+            }
+        };
+    }
+}
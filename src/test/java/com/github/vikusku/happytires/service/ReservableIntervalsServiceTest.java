@@ -1,12 +1,16 @@
 package com.github.vikusku.happytires.service;
 
 import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
 import com.github.vikusku.happytires.model.ServiceProvider;
 import com.github.vikusku.happytires.model.ServiceType;
-import com.github.vikusku.happytires.model.TimeSlot;
 import com.github.vikusku.happytires.repository.ServiceProviderRepository;
 import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -27,6 +31,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @WebMvcTest(ReservableIntervalsServiceTest.class)
@@ -41,21 +48,35 @@ class ReservableIntervalsServiceTest {
     @MockBean
     private DurationService durationService;
 
+    @MockBean
+    private AvailabilityIndex availabilityIndex;
+
+    @MockBean
+    private AvailabilityRangeService availabilityRangeService;
+
+    @MockBean
+    private ScheduleTemplateService scheduleTemplateService;
+
     @Mock
     private ServiceProvider sp;
 
     private long serviceProviderId = 1L;
+    private AvailabilityCache availabilityCache;
     private ReservableIntervalsService reservableIntervalsService;
 
     @BeforeEach
     public void setUp() {
-        reservableIntervalsService = new ReservableIntervalsService(timeSlotRepository, spRepository, durationService);
+        availabilityCache = new AvailabilityCache(true, 100, Duration.ofMinutes(10));
+        reservableIntervalsService = new ReservableIntervalsService(timeSlotRepository, spRepository, durationService,
+                new RunLengthReservableIntervalsEngine(), availabilityIndex, availabilityCache, availabilityRangeService,
+                scheduleTemplateService, new SlotHoldService(scheduleTemplateService, new DurationService(),
+                new SimpleMeterRegistry(), Duration.ofMinutes(10), Duration.ofSeconds(1), 64), false);
         when(sp.getId()).thenReturn(serviceProviderId);
     }
 
     @AfterEach
     void tearDown() {
-        clearInvocations(timeSlotRepository, spRepository);
+        clearInvocations(timeSlotRepository, spRepository, availabilityIndex);
     }
 
 
@@ -65,23 +86,23 @@ class ReservableIntervalsServiceTest {
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
         when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
 
-        final TimeSlot slot1 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot2 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot3 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot4 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot5 = new TimeSlot(LocalDateTime.parse("2021-03-01T10:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot6 = new TimeSlot(LocalDateTime.parse("2021-03-01T10:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot7 = new TimeSlot(LocalDateTime.parse("2021-03-01T19:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                eq(sp), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(
+        final TimeSlotView slot1 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot2 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot3 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot4 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot5 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T10:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot6 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T10:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot7 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T19:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(
                 Lists.newArrayList(slot1, slot2, slot3, slot4, slot5, slot6, slot7)
         );
 
@@ -107,31 +128,31 @@ class ReservableIntervalsServiceTest {
         when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
 
         // DAY 1
-        final TimeSlot slot1 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot2 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot3 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot4 = new TimeSlot(LocalDateTime.parse("2021-03-01T10:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot5 = new TimeSlot(LocalDateTime.parse("2021-03-01T10:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot6 = new TimeSlot(LocalDateTime.parse("2021-03-01T19:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot1 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot2 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot3 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot4 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T10:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot5 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T10:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot6 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T19:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
 
         // DAY 2
-        final TimeSlot slot7 = new TimeSlot(LocalDateTime.parse("2021-03-02T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot8 = new TimeSlot(LocalDateTime.parse("2021-03-02T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot9 = new TimeSlot(LocalDateTime.parse("2021-03-02T08:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot10 = new TimeSlot(LocalDateTime.parse("2021-03-02T10:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                eq(sp), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(
+        final TimeSlotView slot7 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-02T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot8 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-02T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot9 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-02T08:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot10 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-02T10:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(
                 Lists.newArrayList(slot1, slot2, slot3, slot4, slot5, slot6, slot7, slot8, slot9, slot10)
         );
 
@@ -158,8 +179,8 @@ class ReservableIntervalsServiceTest {
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
         when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
 
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                eq(sp), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList());
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList());
 
         Map<LocalDate, List<ReservableIntervalDto>>  reservableIntervals = reservableIntervalsService.findReservableIntervals(
                 serviceProviderId,
@@ -177,17 +198,17 @@ class ReservableIntervalsServiceTest {
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
         when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
 
-        final TimeSlot slot1 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot2 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot3 = new TimeSlot(LocalDateTime.parse("2021-03-01T09:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot4 = new TimeSlot(LocalDateTime.parse("2021-03-01T14:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                eq(sp), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+        final TimeSlotView slot1 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot2 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot3 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T09:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot4 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T14:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
                         slot1, slot2, slot3, slot4
         ));
 
@@ -207,30 +228,30 @@ class ReservableIntervalsServiceTest {
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
         when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(45);
 
-        final TimeSlot slot1 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot2 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot3 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot4 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot5 = new TimeSlot(LocalDateTime.parse("2021-03-01T09:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot6 = new TimeSlot(LocalDateTime.parse("2021-03-01T11:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot7 = new TimeSlot(LocalDateTime.parse("2021-03-01T11:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot8 = new TimeSlot(LocalDateTime.parse("2021-03-01T11:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot9 = new TimeSlot(LocalDateTime.parse("2021-03-01T15:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot10 = new TimeSlot(LocalDateTime.parse("2021-03-01T15:45:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-
-
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                eq(sp), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+        final TimeSlotView slot1 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot2 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot3 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot4 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot5 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T09:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot6 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T11:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot7 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T11:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot8 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T11:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot9 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T15:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot10 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T15:45:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+
+
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
                 slot1, slot2, slot3, slot4, slot5, slot6, slot7, slot8, slot9, slot10
         ));
 
@@ -256,24 +277,24 @@ class ReservableIntervalsServiceTest {
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
         when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(15);
 
-        final TimeSlot slot1 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot2 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot3 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot4 = new TimeSlot(LocalDateTime.parse("2021-03-01T09:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot5 = new TimeSlot(LocalDateTime.parse("2021-03-01T11:00:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot6 = new TimeSlot(LocalDateTime.parse("2021-03-01T11:15:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-        final TimeSlot slot7 = new TimeSlot(LocalDateTime.parse("2021-03-01T15:30:00+02:00", ISO_OFFSET_DATE_TIME),
-                sp, DEFAULT_TIME_SLOT_DURATION, null);
-
-
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBeforeAndReservationIsNull(
-                eq(sp), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+        final TimeSlotView slot1 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot2 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot3 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot4 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T09:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot5 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T11:00:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot6 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T11:15:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+        final TimeSlotView slot7 = new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T15:30:00+02:00", ISO_OFFSET_DATE_TIME),
+                DEFAULT_TIME_SLOT_DURATION, null);
+
+
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
                 slot1, slot2, slot3, slot4, slot5, slot6, slot7
         ));
 
@@ -297,4 +318,77 @@ class ReservableIntervalsServiceTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void findReservableIntervalsFromAvailabilityIndexDoesNotQueryRepositories() {
+        when(availabilityIndex.isIndexed(serviceProviderId, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"))).thenReturn(true);
+        when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
+        when(availabilityIndex.findReservableStarts(serviceProviderId, LocalDate.parse("2021-03-01"), 2)).thenReturn(
+                Lists.newArrayList(LocalDateTime.parse("2021-03-01T08:00:00"), LocalDateTime.parse("2021-03-01T10:30:00")));
+
+        Map<LocalDate, List<ReservableIntervalDto>>  reservableIntervals = reservableIntervalsService.findReservableIntervals(
+                serviceProviderId,
+                ServiceType.TIRES_CHANGE,
+                LocalDate.parse("2021-03-01"),
+                LocalDate.parse("2021-03-03"));
+
+        assertThat(reservableIntervals).containsOnlyKeys(LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-02"));
+        assertThat(reservableIntervals.get(LocalDate.parse("2021-03-01"))).containsExactly(
+                new ReservableIntervalDto(LocalDateTime.parse("2021-03-01T08:00:00"), Duration.ofMinutes(30), serviceProviderId),
+                new ReservableIntervalDto(LocalDateTime.parse("2021-03-01T10:30:00"), Duration.ofMinutes(30), serviceProviderId));
+        assertThat(reservableIntervals.get(LocalDate.parse("2021-03-02"))).isEmpty();
+
+        verifyNoInteractions(timeSlotRepository, spRepository);
+    }
+
+    @Test
+    public void findReservableIntervalsIsCachedUntilAvailabilityChanges() {
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList(
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00"), DEFAULT_TIME_SLOT_DURATION, null),
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:15:00"), DEFAULT_TIME_SLOT_DURATION, null)));
+
+        final Map<LocalDate, List<ReservableIntervalDto>> reservableIntervals = reservableIntervalsService.findReservableIntervals(
+                serviceProviderId, ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"));
+
+        assertThat(reservableIntervalsService.findReservableIntervals(
+                serviceProviderId, ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03")))
+                .isEqualTo(reservableIntervals);
+        assertThat(reservableIntervalsService.findReservableIntervals(
+                serviceProviderId, ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-02"), LocalDate.parse("2021-03-03")))
+                .containsOnlyKeys(LocalDate.parse("2021-03-02"));
+        verify(timeSlotRepository, times(1)).findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class));
+
+        availabilityCache.onAvailabilityChanged(new AvailabilityChangedEvent(serviceProviderId, Sets.newHashSet(LocalDate.parse("2021-03-02"))));
+        reservableIntervalsService.findReservableIntervals(
+                serviceProviderId, ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-03"));
+
+        verify(timeSlotRepository, times(2)).findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class));
+    }
+
+    @Test
+    public void streamReservableIntervalsEmitsSameDaysAsFindReservableIntervals() {
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        when(durationService.getServiceDuration(any(ServiceType.class))).thenReturn(30);
+        final List<TimeSlotView> timeSlots = Lists.newArrayList(
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:00:00"), DEFAULT_TIME_SLOT_DURATION, null),
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-01T08:15:00"), DEFAULT_TIME_SLOT_DURATION, null),
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-03T10:00:00"), DEFAULT_TIME_SLOT_DURATION, null),
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-03T10:15:00"), DEFAULT_TIME_SLOT_DURATION, null),
+                new TimeSlotView(serviceProviderId, LocalDateTime.parse("2021-03-03T10:30:00"), DEFAULT_TIME_SLOT_DURATION, null));
+        when(timeSlotRepository.findFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots);
+        when(timeSlotRepository.streamFreeTimeSlotViews(
+                eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots.stream());
+
+        final Map<LocalDate, List<ReservableIntervalDto>> streamedIntervals = Maps.newLinkedHashMap();
+        reservableIntervalsService.streamReservableIntervals(serviceProviderId, ServiceType.TIRES_CHANGE,
+                LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-04"), streamedIntervals::put);
+
+        assertThat(streamedIntervals).containsExactlyEntriesOf(reservableIntervalsService.findReservableIntervals(
+                serviceProviderId, ServiceType.TIRES_CHANGE, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-04")));
+    }
+}
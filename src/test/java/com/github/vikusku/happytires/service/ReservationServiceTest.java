@@ -0,0 +1,328 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.BulkReservationItemDto;
+import com.github.vikusku.happytires.dto.BulkReservationItemStatus;
+import com.github.vikusku.happytires.dto.BulkReservationMode;
+import com.github.vikusku.happytires.dto.BulkReservationResultDto;
+import com.github.vikusku.happytires.dto.CustomerDto;
+import com.github.vikusku.happytires.dto.ReservationDto;
+import com.github.vikusku.happytires.dto.SlotHoldDto;
+import com.github.vikusku.happytires.exception.ReservationPersistenceException;
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.Reservation;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.ServiceType;
+import com.github.vikusku.happytires.repository.CustomerRepository;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
+import com.github.vikusku.happytires.repository.TimeSlotFixture;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs against committed data, so that bookings commit, roll back and retry in their own transactions.
+ */
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReservationServiceTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ServiceProviderRepository spRepository;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private SlotHoldService slotHoldService;
+
+    @SpyBean
+    private TimeSlotBatchWriter timeSlotBatchWriter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate date = LocalDate.parse("2021-03-11");
+
+    private ServiceProvider sp;
+    private TimeSlotFixture timeSlotFixture;
+
+    @BeforeEach
+    void setUp() {
+        sp = spRepository.save(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        timeSlotFixture = new TimeSlotFixture(jdbcTemplate, reservationRepository, sp);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from time_slot");
+        jdbcTemplate.update("delete from reservation");
+        jdbcTemplate.update("delete from customer");
+        jdbcTemplate.update("delete from availability_version");
+        jdbcTemplate.update("delete from service_provider");
+    }
+
+    @Test
+    public void createReservationStatementCountDoesNotGrowWithDuration() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("12:00"));
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        final long shortBookingStatements = countStatements(statistics, () -> reservationService.create(
+                reservationDto("first@test.com", LocalDateTime.of(date, LocalTime.parse("08:00")), Duration.ofMinutes(30))));
+        final long longBookingStatements = countStatements(statistics, () -> reservationService.create(
+                reservationDto("second@test.com", LocalDateTime.of(date, LocalTime.parse("09:00")), Duration.ofMinutes(120))));
+
+        assertThat(longBookingStatements).isEqualTo(shortBookingStatements);
+        assertThat(timeSlotRepository.findTimeSlotViewsStartingBetween(sp.getId(), date.atStartOfDay(), date.plusDays(1).atStartOfDay()))
+                .filteredOn(TimeSlotView::isReserved)
+                .hasSize(10);
+        assertThatThrownBy(() -> reservationService.create(
+                reservationDto("third@test.com", LocalDateTime.of(date, LocalTime.parse("11:30")), Duration.ofMinutes(60))))
+                .isInstanceOf(ReservationPersistenceException.class)
+                .hasMessage("NO_AVAILABLE_TIME_SLOTS");
+        assertThatThrownBy(() -> reservationService.create(
+                reservationDto("fourth@test.com", LocalDateTime.of(date, LocalTime.parse("08:15")), Duration.ofMinutes(30))))
+                .isInstanceOf(ReservationPersistenceException.class)
+                .hasMessage("TIME_SLOTS_ALREADY_RESERVED");
+    }
+
+    @Test
+    public void heldSlotsCanOnlyBeBookedWithTheHold() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:30"));
+
+        final SlotHoldDto hold = slotHoldService.hold(sp.getId(), start, Duration.ofMinutes(30));
+
+        assertThatThrownBy(() -> reservationService.create(reservationDto("other@test.com", start.minusMinutes(15), Duration.ofMinutes(30))))
+                .isInstanceOf(ReservationPersistenceException.class)
+                .hasMessage("TIME_SLOTS_HELD");
+        assertThat(reservationService.create(reservationDto("holder@test.com", start, Duration.ofMinutes(30)), hold.getId())).isPresent();
+        assertThat(slotHoldService.release(hold.getId())).isFalse();
+        assertThatThrownBy(() -> slotHoldService.hold(sp.getId(), start, Duration.ofMinutes(30)))
+                .isInstanceOf(ReservationPersistenceException.class)
+                .hasMessage("TIME_SLOTS_ALREADY_RESERVED");
+    }
+
+    @Test
+    public void bulkReservationsArePlannedInMemoryAndClaimedTogether() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+        final List<ReservationDto> fleet = Lists.newArrayList(
+                reservationDto("fleet@test.com", start, Duration.ofMinutes(30)),
+                reservationDto("fleet@test.com", start.plusMinutes(30), Duration.ofMinutes(30)),
+                reservationDto("fleet@test.com", start.plusMinutes(45), Duration.ofMinutes(30)),
+                reservationDto("fleet@test.com", start.plusMinutes(105), Duration.ofMinutes(30)));
+
+        final BulkReservationResultDto allOrNothing = reservationService.createAll(fleet, BulkReservationMode.ALL_OR_NOTHING);
+
+        assertThat(allOrNothing.getCreated()).isZero();
+        assertThat(allOrNothing.getItems()).extracting(BulkReservationItemDto::getStatus).containsExactly(
+                BulkReservationItemStatus.NOT_CREATED, BulkReservationItemStatus.NOT_CREATED,
+                BulkReservationItemStatus.REJECTED, BulkReservationItemStatus.REJECTED);
+        assertThat(reservedCount(timeSlotRepository.findTimeSlotViewsStartingBetween(
+                sp.getId(), date.atStartOfDay(), date.plusDays(1).atStartOfDay()), date)).isZero();
+
+        final BulkReservationResultDto bestEffort = reservationService.createAll(fleet, BulkReservationMode.BEST_EFFORT);
+
+        assertThat(bestEffort.getCreated()).isEqualTo(2);
+        assertThat(bestEffort.getRejected()).isEqualTo(2);
+        assertThat(bestEffort.getItems()).extracting(BulkReservationItemDto::getError)
+                .containsExactly(null, null, "TIME_SLOTS_ALREADY_RESERVED", "NO_AVAILABLE_TIME_SLOTS");
+        assertThat(bestEffort.getItems().get(0).getReservation().getId()).isPositive();
+        assertThat(reservedCount(timeSlotRepository.findTimeSlotViewsStartingBetween(
+                sp.getId(), date.atStartOfDay(), date.plusDays(1).atStartOfDay()), date)).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from customer where email = ?", Long.class, "fleet@test.com"))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void bulkReservationPlansAgainWhenAPlannedSlotIsBookedBeforeTheClaim() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+        final Reservation other = reservationRepository.save(new Reservation(0L, start.plusMinutes(30), Duration.ofMinutes(15),
+                ServiceType.TIRES_CHANGE, customerRepository.save(new Customer(0L, "Other", "other street", "other@test.com", "1231231234")),
+                Lists.newArrayList()));
+        final AtomicBoolean booked = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (booked.compareAndSet(false, true)) {
+                // another instance books a planned slot between the plan and the claim
+                final TransactionTemplate otherInstance = new TransactionTemplate(transactionManager);
+                otherInstance.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                otherInstance.execute(status -> jdbcTemplate.update("update time_slot set reservation_id = ? where service_provider_id = ? and start = ?",
+                        other.getId(), sp.getId(), start.plusMinutes(30)));
+            }
+            return invocation.callRealMethod();
+        }).when(timeSlotBatchWriter).claim(anyList());
+
+        final BulkReservationResultDto result = reservationService.createAll(Lists.newArrayList(
+                reservationDto("retried@test.com", start, Duration.ofMinutes(30)),
+                reservationDto("retried@test.com", start.plusMinutes(30), Duration.ofMinutes(30))), BulkReservationMode.BEST_EFFORT);
+
+        verify(timeSlotBatchWriter, times(2)).claim(anyList());
+        assertThat(result.getItems()).extracting(BulkReservationItemDto::getError).containsExactly(null, "TIME_SLOTS_ALREADY_RESERVED");
+        assertThat(reservedStarts(date)).containsExactly(start, start.plusMinutes(15), start.plusMinutes(30));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from reservation", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    public void bulkReservationRejectsConflictingDetailsForOneEmail() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+        final ReservationDto conflicting = reservationDto("conflicting@test.com", start.plusMinutes(30), Duration.ofMinutes(30));
+        conflicting.getCustomerDto().setPhoneNumber("9999999999");
+
+        final BulkReservationResultDto result = reservationService.createAll(Lists.newArrayList(
+                reservationDto("conflicting@test.com", start, Duration.ofMinutes(30)), conflicting), BulkReservationMode.BEST_EFFORT);
+
+        assertThat(result.getItems()).extracting(BulkReservationItemDto::getError).containsExactly(null, "CONFLICTING_CUSTOMER_DETAILS");
+        assertThat(result.getItems().get(0).getReservation().getCustomerDto().getPhoneNumber()).isEqualTo("1231231234");
+        assertThat(jdbcTemplate.queryForObject("select phone_number from customer where email = ?", String.class, "conflicting@test.com"))
+                .isEqualTo("1231231234");
+    }
+
+    @Test
+    public void movingReservationReassignsOnlyTheChangedSlotsAndDeleteFreesThemAll() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+        final ReservationDto reservation = reservationService.create(reservationDto("mover@test.com", start, Duration.ofMinutes(45))).get();
+
+        reservationService.update(reservation.getId(), reservationDto("mover@test.com", start.plusMinutes(15), Duration.ofMinutes(45)));
+
+        assertThat(reservedStarts(date)).containsExactly(start.plusMinutes(15), start.plusMinutes(30), start.plusMinutes(45));
+        assertThat(jdbcTemplate.queryForList("select version from time_slot where service_provider_id = ? and start between ? and ? order by start",
+                Long.class, sp.getId(), start, start.plusMinutes(60)))
+                .containsExactly(2L, 1L, 1L, 1L, 0L);
+
+        reservationService.delete(reservation.getId());
+
+        assertThat(reservedStarts(date)).isEmpty();
+        assertThat(reservationRepository.findById(reservation.getId())).isEmpty();
+        reservationService.delete(reservation.getId());
+    }
+
+    @Test
+    public void returningCustomerIsUpsertedByEmail() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+
+        final ReservationDto first = reservationService.create(reservationDto("returning@test.com", start, Duration.ofMinutes(30))).get();
+        final ReservationDto repeat = reservationDto("returning@test.com", start.plusMinutes(60), Duration.ofMinutes(30));
+        repeat.getCustomerDto().setPhoneNumber("9999999999");
+        reservationService.create(repeat);
+
+        final Long customerId = customerRepository.findIdByEmail("returning@test.com").get();
+        assertThat(customerRepository.findById(customerId).get().getPhoneNumber()).isEqualTo("9999999999");
+        assertThat(reservationRepository.findById(first.getId()).get().getCustomer().getId()).isEqualTo(customerId);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from customer where email = ?", Long.class, "returning@test.com"))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void cachedCustomerStillWritesItsDetailsOverAnotherNodesChange() {
+        timeSlotFixture.freeSlots(date, LocalTime.parse("08:00"), LocalTime.parse("10:00"));
+        final LocalDateTime start = LocalDateTime.of(date, LocalTime.parse("08:00"));
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        reservationService.create(reservationDto("cached@test.com", start, Duration.ofMinutes(30)));
+        jdbcTemplate.update("update customer set phone_number = '5555555555' where email = ?", "cached@test.com");
+        statistics.clear();
+        reservationService.create(reservationDto("cached@test.com", start.plusMinutes(30), Duration.ofMinutes(30)));
+
+        assertThat(statistics.getQueryStatistics(CustomerRepository.FIND_ID_BY_EMAIL).getExecutionCount()).isZero();
+        assertThat(jdbcTemplate.queryForObject("select phone_number from customer where email = ?", String.class, "cached@test.com"))
+                .isEqualTo("1231231234");
+
+        jdbcTemplate.update("update customer set email = 'moved@test.com' where email = ?", "cached@test.com");
+        reservationService.create(reservationDto("cached@test.com", start.plusMinutes(60), Duration.ofMinutes(30)));
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from customer where email = ?", Long.class, "cached@test.com"))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void reservationWithoutSlotsIsNotFound() {
+        final Reservation orphan = reservationRepository.save(new Reservation(0L, LocalDateTime.of(date, LocalTime.parse("08:00")),
+                Duration.ofMinutes(30), ServiceType.TIRES_CHANGE,
+                customerRepository.save(new Customer(0L, "Orphan", "orphan street", "orphan@test.com", "1231231234")),
+                Lists.newArrayList()));
+
+        assertThat(reservationService.get(orphan.getId())).isEmpty();
+    }
+
+    private long countStatements(final Statistics statistics, final Runnable action) {
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long reservedCount(final List<TimeSlotView> timeSlots, final LocalDate date) {
+        return timeSlots.stream().filter(ts -> ts.isReserved() && ts.getStart().toLocalDate().equals(date)).count();
+    }
+
+    private List<LocalDateTime> reservedStarts(final LocalDate date) {
+        return timeSlotRepository.findTimeSlotViewsStartingBetween(sp.getId(), date.atStartOfDay(), date.plusDays(1).atStartOfDay())
+                .stream()
+                .filter(TimeSlotView::isReserved)
+                .map(TimeSlotView::getStart)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private ReservationDto reservationDto(final String email, final LocalDateTime start, final Duration duration) {
+        return new ReservationDto(0L, sp.getId(), start, duration, ServiceType.TIRES_CHANGE,
+                new CustomerDto("Foo Customer", "foo street", email, "1231231234"));
+    }
+}
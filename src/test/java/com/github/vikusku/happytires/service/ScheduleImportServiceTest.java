@@ -0,0 +1,118 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ImportStatus;
+import com.github.vikusku.happytires.dto.ScheduleImportStatusDto;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.TimeSlotFixture;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {"happytires.schedule-import.parallelism=1", "happytires.schedule-import.chunk-size=2"})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+class ScheduleImportServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ScheduleImportService scheduleImportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate from = LocalDate.now().plusDays(1);
+    private final LocalDate until = from.plusDays(7);
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).freeSlots(from, LocalTime.parse("08:00"), LocalTime.parse("21:00"));
+    }
+
+    @Test
+    public void scheduleImportRejectsRowsOverlappingStoredOrEarlierRows() {
+        final LocalDate date = until.plusDays(2);
+        final String csv = String.join("\n",
+                "serviceProviderId,date,start,durationMin",
+                sp.getId() + "," + date + ",08:00,60",
+                sp.getId() + "," + date + ",08:30,30",
+                sp.getId() + "," + date.plusDays(1) + ",09:00,30",
+                sp.getId() + "," + date + ",08:45,15",
+                sp.getId() + "," + from + ",08:00,780",
+                sp.getId() + ",not-a-date,08:00,15",
+                "",
+                "999999," + date + ",08:00,15");
+
+        final ScheduleImportStatusDto importStatus = scheduleImportService.importSchedule(new StringReader(csv));
+
+        assertThat(importStatus.getStatus()).isEqualTo(ImportStatus.COMPLETED);
+        assertThat(importStatus.getRowsRead()).isEqualTo(7);
+        assertThat(importStatus.getRowsImported()).isEqualTo(2);
+        assertThat(importStatus.getRowsRejected()).isEqualTo(5);
+        assertThat(importStatus.getTimeSlotsWritten()).isEqualTo(6);
+        assertThat(importStatus.getErrors()).hasSize(5).allMatch(error -> error.startsWith("Line "));
+        assertThat(scheduleImportService.getStatus(importStatus.getJobId())).contains(importStatus);
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date.plusDays(1), LocalTime.MAX)))
+                .extracting(TimeSlotView::getStart)
+                .containsExactly(
+                        LocalDateTime.of(date, LocalTime.parse("08:00")),
+                        LocalDateTime.of(date, LocalTime.parse("08:15")),
+                        LocalDateTime.of(date, LocalTime.parse("08:30")),
+                        LocalDateTime.of(date, LocalTime.parse("08:45")),
+                        LocalDateTime.of(date.plusDays(1), LocalTime.parse("09:00")),
+                        LocalDateTime.of(date.plusDays(1), LocalTime.parse("09:15")));
+    }
+
+    @Test
+    public void scheduleImportRejectsPastUnalignedAndOvernightRows() {
+        final LocalDate date = until.plusDays(2);
+        final String csv = String.join("\n",
+                sp.getId() + "," + LocalDate.now().minusDays(1) + ",08:00,15",
+                sp.getId() + "," + date + ",08:10,15",
+                sp.getId() + "," + date + ",09:00,20",
+                sp.getId() + "," + date + ",23:30,45",
+                sp.getId() + "," + date + ",23:30,30");
+
+        final ScheduleImportStatusDto importStatus = scheduleImportService.importSchedule(new StringReader(csv));
+
+        assertThat(importStatus.getRowsImported()).isEqualTo(1);
+        assertThat(importStatus.getErrors()).containsExactly(
+                "Line 1: Date must be today or later",
+                "Line 2: Start and duration must be multiples of 15 minutes",
+                "Line 3: Start and duration must be multiples of 15 minutes",
+                "Line 4: Interval must end by midnight");
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date.plusDays(1), LocalTime.MAX)))
+                .extracting(TimeSlotView::getStart)
+                .containsExactly(
+                        LocalDateTime.of(date, LocalTime.parse("23:30")),
+                        LocalDateTime.of(date, LocalTime.parse("23:45")));
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.TimeSlotFixture;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+class ScheduleServiceJpaTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+    private final LocalDate until = LocalDate.parse("2021-03-08");
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        final Customer customer = entityManager.persist(
+                new Customer(0L, "Foo Customer", "foo street", "foo@test.com", "1231231234"));
+        new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).randomSlots(from, until, customer);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void getScheduleStatementCountDoesNotGrowWithReservations() {
+        final Statistics statistics = entityManager.getEntityManager().unwrap(Session.class).getSessionFactory().getStatistics();
+
+        final long oneDayStatements = countStatements(statistics, () -> scheduleService.getScheduleForServiceProvider(sp.getId(), from, from.plusDays(1)));
+        final long weekStatements = countStatements(statistics, () -> scheduleService.getScheduleForServiceProvider(sp.getId(), from, until));
+
+        assertThat(reservationCount(from, from.plusDays(1))).isPositive().isLessThan(reservationCount(from, until));
+        assertThat(weekStatements).isEqualTo(oneDayStatements);
+    }
+
+    @Test
+    public void updateScheduleRewritesOnlyFreeSlotsOfUpdatedDays() {
+        final LocalDate updatedDate = from.plusDays(2);
+        final List<TimeSlotView> before = timeSlotRepository.findTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+        final LinkedHashMap<LocalDate, List<AvailabilityIntervalDto>> schedule = new LinkedHashMap<>();
+        schedule.put(updatedDate, Lists.newArrayList(new AvailabilityIntervalDto(LocalTime.parse("06:00"), Duration.ofMinutes(60))));
+
+        scheduleService.updateScheduleForServiceProvider(sp.getId(), schedule);
+        entityManager.clear();
+
+        final List<TimeSlotView> after = timeSlotRepository.findTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+        final List<TimeSlotView> expected = before.stream()
+                .filter(ts -> !ts.getStart().toLocalDate().equals(updatedDate) || ts.isReserved())
+                .collect(Collectors.toList());
+        for (LocalDateTime slotStart = LocalDateTime.of(updatedDate, LocalTime.parse("06:00"));
+             slotStart.isBefore(LocalDateTime.of(updatedDate, LocalTime.parse("07:00")));
+             slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+            expected.add(new TimeSlotView(sp.getId(), slotStart, DEFAULT_TIME_SLOT_DURATION, null));
+        }
+
+        assertThat(after).containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    private long countStatements(final Statistics statistics, final Runnable read) {
+        entityManager.clear();
+        statistics.clear();
+        read.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long reservationCount(final LocalDate from, final LocalDate until) {
+        return timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MIN)).stream()
+                .filter(TimeSlotView::isReserved)
+                .map(TimeSlotView::getReservationId)
+                .distinct()
+                .count();
+    }
+}
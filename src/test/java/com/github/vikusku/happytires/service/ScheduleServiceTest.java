@@ -1,24 +1,33 @@
 package com.github.vikusku.happytires.service;
 
 import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.dto.CustomerDto;
 import com.github.vikusku.happytires.dto.IntervalStatus;
 import com.github.vikusku.happytires.dto.ReservationDto;
 import com.github.vikusku.happytires.dto.ScheduleIntervalDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
 import com.github.vikusku.happytires.exception.InvalidScheduleException;
 import com.github.vikusku.happytires.exception.ServiceProviderNotFoundException;
 import com.github.vikusku.happytires.model.*;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.ReservationView;
 import com.github.vikusku.happytires.repository.ServiceProviderRepository;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
 import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
 import com.google.common.collect.Lists;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.Mock;
 import org.modelmapper.ModelMapper;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
 
+import javax.persistence.EntityManager;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -27,7 +36,10 @@ import java.time.format.DateTimeFormatter;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.as;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,9 +55,33 @@ class ScheduleServiceTest {
     @MockBean
     private ServiceProviderRepository spRepository;
 
+    @MockBean
+    private ReservationRepository reservationRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private TimeSlotBatchWriter timeSlotBatchWriter;
+
+    @Mock
+    private ScheduleTemplateService scheduleTemplateService;
+
     @Captor
     ArgumentCaptor<ServiceProvider> serviceProviderArgumentCaptor;
 
+    @Captor
+    ArgumentCaptor<AvailabilityChangedEvent> availabilityChangedEventArgumentCaptor;
+
+    @Captor
+    ArgumentCaptor<TimeSlot> timeSlotArgumentCaptor;
+
+    @Captor
+    ArgumentCaptor<List<LocalDateTime>> startsArgumentCaptor;
+
     private ScheduleService scheduleService;
 
     final Duration duration = Duration.ofMinutes(15);
@@ -56,7 +92,8 @@ class ScheduleServiceTest {
 
     @BeforeEach
     void setUp() {
-        scheduleService = new ScheduleService(timeSlotRepository, spRepository);
+        scheduleService = new ScheduleService(timeSlotRepository, spRepository, reservationRepository, eventPublisher, entityManager,
+                timeSlotBatchWriter, scheduleTemplateService);
     }
 
     @AfterEach
@@ -89,11 +126,15 @@ class ScheduleServiceTest {
 
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
 
-        scheduleService.createScheduleForServiceProvider(serviceProviderId, schedule);
+        final List<TimeSlot> timeSlots = Lists.newArrayList();
+        when(timeSlotBatchWriter.insert(eq(serviceProviderId), any(), any())).thenAnswer(invocation -> {
+            invocation.<Stream<TimeSlot>>getArgument(1).forEach(timeSlots::add);
+            return (long) timeSlots.size();
+        });
 
-        verify(spRepository, times(1)).save(serviceProviderArgumentCaptor.capture());
+        scheduleService.createScheduleForServiceProvider(serviceProviderId, schedule);
 
-        final List<TimeSlot> timeSlots = serviceProviderArgumentCaptor.getValue().getTimeSlots();
+        verify(spRepository, never()).save(any());
 
         assertThat(timeSlots).hasSize(7);
         assertThat(timeSlots).containsExactly(
@@ -112,6 +153,11 @@ class ScheduleServiceTest {
                 new TimeSlot(LocalDateTime.parse("2021-03-02T16:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null)
         );
+
+        verify(eventPublisher, times(1)).publishEvent(availabilityChangedEventArgumentCaptor.capture());
+        assertThat(availabilityChangedEventArgumentCaptor.getValue().getServiceProviderId()).isEqualTo(serviceProviderId);
+        assertThat(availabilityChangedEventArgumentCaptor.getValue().getDates())
+                .containsExactlyInAnyOrder(LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-02"));
     }
 
     @Test
@@ -140,30 +186,30 @@ class ScheduleServiceTest {
                                 Duration.ofMinutes(60))
                 ));
 
-        sp.setTimeSlots(Lists.newArrayList(
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList(
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null),
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null)));
 
-        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-
         scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
-        verify(spRepository, times(1)).save(serviceProviderArgumentCaptor.capture());
 
-        final List<TimeSlot> updatedTimeSlots = serviceProviderArgumentCaptor.getValue().getTimeSlots();
+        verify(timeSlotRepository).findTimeSlotViewsStartingBetween(serviceProviderId,
+                LocalDateTime.parse("2021-03-01T00:00:00"), LocalDateTime.parse("2021-03-02T00:00:00"));
+        verify(timeSlotRepository, never()).deleteFreeTimeSlots(anyLong(), any());
+        verify(spRepository, never()).save(any());
+        verify(entityManager, times(2)).persist(timeSlotArgumentCaptor.capture());
 
-        assertThat(updatedTimeSlots).hasSize(4);
-        assertThat(updatedTimeSlots).containsExactly(
-                new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                        sp, duration, null),
-                new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                        sp, duration, null),
+        assertThat(timeSlotArgumentCaptor.getAllValues()).containsExactly(
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null),
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:45:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null)
         );
+
+        verify(eventPublisher, times(1)).publishEvent(availabilityChangedEventArgumentCaptor.capture());
+        assertThat(availabilityChangedEventArgumentCaptor.getValue().getDates()).containsExactly(LocalDate.parse("2021-03-01"));
     }
 
     @Test
@@ -176,7 +222,8 @@ class ScheduleServiceTest {
                                 Duration.ofMinutes(30))
                 ));
 
-        sp.setTimeSlots(Lists.newArrayList(
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList(
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null),
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
@@ -185,20 +232,36 @@ class ScheduleServiceTest {
                         sp, duration, null),
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:45:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
                         sp, duration, null)));
+        when(timeSlotRepository.deleteFreeTimeSlots(eq(serviceProviderId), any())).thenReturn(2);
+
+        scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
+
+        verify(timeSlotRepository).deleteFreeTimeSlots(eq(serviceProviderId), startsArgumentCaptor.capture());
+        verify(entityManager, never()).persist(any());
+
+        assertThat(startsArgumentCaptor.getValue()).containsExactlyInAnyOrder(
+                LocalDateTime.parse("2021-03-01T08:30:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
+                LocalDateTime.parse("2021-03-01T08:45:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+    }
+
+    @Test
+    public void updateTimeSlotsForServiceProviderShouldLoadOnlyUpdatedDates() {
+        final LinkedHashMap<LocalDate, List<AvailabilityIntervalDto>> schedule = new LinkedHashMap<>();
+        schedule.put(LocalDate.parse("2021-03-02"), Lists.newArrayList());
+        schedule.put(LocalDate.parse("2021-03-01"), Lists.newArrayList());
+        schedule.put(LocalDate.parse("2021-03-05"), Lists.newArrayList());
 
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList());
 
         scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
-        verify(spRepository, times(1)).save(serviceProviderArgumentCaptor.capture());
-
-        final List<TimeSlot> updatedTimeSlots = serviceProviderArgumentCaptor.getValue().getTimeSlots();
 
-        assertThat(updatedTimeSlots).hasSize(2);
-        assertThat(updatedTimeSlots).containsExactly(
-                new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                        sp, duration, null),
-                new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                        sp, duration, null));
+        verify(timeSlotRepository).findTimeSlotViewsStartingBetween(serviceProviderId,
+                LocalDateTime.parse("2021-03-01T00:00:00"), LocalDateTime.parse("2021-03-03T00:00:00"));
+        verify(timeSlotRepository).findTimeSlotViewsStartingBetween(serviceProviderId,
+                LocalDateTime.parse("2021-03-05T00:00:00"), LocalDateTime.parse("2021-03-06T00:00:00"));
+        verifyNoMoreInteractions(timeSlotRepository);
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -206,22 +269,19 @@ class ScheduleServiceTest {
         final LinkedHashMap<LocalDate, List<AvailabilityIntervalDto>> schedule = new LinkedHashMap<>();
         schedule.put(LocalDate.parse("2021-03-01"), Lists.newArrayList());
 
-        sp.setTimeSlots(Lists.newArrayList(
+        final Reservation reservation = new Reservation();
+        reservation.setId(2L);
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList(
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                        sp, duration, new Reservation()),
+                        sp, duration, reservation),
                 new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
-                        sp, duration, new Reservation())));
-
-        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+                        sp, duration, reservation)));
 
         scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
-        verify(spRepository, times(1)).save(serviceProviderArgumentCaptor.capture());
-
-        final List<TimeSlot> updatedTimeSlots = serviceProviderArgumentCaptor.getValue().getTimeSlots();
-        assertThat(updatedTimeSlots).hasSize(2);
 
-        assertNotNull(updatedTimeSlots.get(0).getReservation());
-        assertNotNull(updatedTimeSlots.get(1).getReservation());
+        verify(timeSlotRepository, never()).deleteFreeTimeSlots(anyLong(), any());
+        verify(entityManager, never()).persist(any());
     }
 
     @Test
@@ -242,9 +302,8 @@ class ScheduleServiceTest {
         slot1.setReservation(reservation);
         slot2.setReservation(reservation);
 
-        sp.setTimeSlots(Lists.newArrayList(slot1, slot2));
-
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList(slot1, slot2));
 
         Exception exception = assertThrows(InvalidScheduleException.class, () -> {
             scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
@@ -254,6 +313,36 @@ class ScheduleServiceTest {
         String actualMessage = exception.getMessage();
 
         assertTrue(actualMessage.contains(expectedMessage));
+        verify(entityManager, never()).persist(any());
+    }
+
+    @Test
+    public void updateTimeSlotsForServiceProviderFailsWhenSlotWasReservedSinceItWasRead() {
+        final LinkedHashMap<LocalDate, List<AvailabilityIntervalDto>> schedule = new LinkedHashMap<>();
+        schedule.put(LocalDate.parse("2021-03-01"),
+                Lists.newArrayList(
+                        new AvailabilityIntervalDto(
+                                LocalTime.parse("08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_TIME),
+                                Duration.ofMinutes(30))
+                ));
+
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList(
+                new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
+                        sp, duration, null),
+                new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
+                        sp, duration, null),
+                new TimeSlot(LocalDateTime.parse("2021-03-01T08:30:00+02:00", DateTimeFormatter.ISO_OFFSET_DATE_TIME),
+                        sp, duration, null)));
+        when(timeSlotRepository.deleteFreeTimeSlots(eq(serviceProviderId), any())).thenReturn(0);
+
+        Exception exception = assertThrows(InvalidScheduleException.class, () -> {
+            scheduleService.updateScheduleForServiceProvider(serviceProviderId, schedule);
+        });
+
+        assertTrue(exception.getMessage().contains("Time slots were reserved while updating the schedule"));
+        verify(entityManager, never()).persist(any());
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
@@ -284,8 +373,7 @@ class ScheduleServiceTest {
         List<TimeSlot> timeSlots = Lists.newArrayList(ts1, ts2, ts3, ts4, ts5, ts6, ts7, ts8);
         sp.setTimeSlots(timeSlots);
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                any(ServiceProvider.class), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots);
+        mockTimeSlots(timeSlots);
 
         final Map<LocalDate, List<ScheduleIntervalDto>> actualSchedule = scheduleService.getScheduleForServiceProvider(
                 serviceProviderId,
@@ -348,8 +436,7 @@ class ScheduleServiceTest {
         List<TimeSlot> timeSlots = Lists.newArrayList(ts1, ts2, ts3, ts4, ts5, ts6, ts7);
         sp.setTimeSlots(timeSlots);
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                any(ServiceProvider.class), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots);
+        mockTimeSlots(timeSlots);
 
         final Map<LocalDate, List<ScheduleIntervalDto>> actualSchedule = scheduleService.getScheduleForServiceProvider(
                 serviceProviderId,
@@ -422,8 +509,7 @@ class ScheduleServiceTest {
         List<TimeSlot> timeSlots = Lists.newArrayList(ts1, ts2, ts3, ts4, ts5, ts6, ts7, ts8, ts9, ts10);
         sp.setTimeSlots(timeSlots);
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                any(ServiceProvider.class), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots);
+        mockTimeSlots(timeSlots);
 
         final Map<LocalDate, List<ScheduleIntervalDto>> actualSchedule = scheduleService.getScheduleForServiceProvider(
                 serviceProviderId,
@@ -492,8 +578,7 @@ class ScheduleServiceTest {
         List<TimeSlot> timeSlots = Lists.newArrayList(ts1, ts2, ts3, ts4, ts5, ts6, ts7, ts8);
         sp.setTimeSlots(timeSlots);
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                any(ServiceProvider.class), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots);
+        mockTimeSlots(timeSlots);
 
         final Map<LocalDate, List<ScheduleIntervalDto>> actualSchedule = scheduleService.getScheduleForServiceProvider(
                 serviceProviderId,
@@ -527,8 +612,7 @@ class ScheduleServiceTest {
     @Test
     public void getScheduleForServiceProviderHandlesNoTimeSlots() {
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                any(ServiceProvider.class), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(Lists.newArrayList());
+        mockTimeSlots(Lists.newArrayList());
 
         final Map<LocalDate, List<ScheduleIntervalDto>> actualSchedule = scheduleService.getScheduleForServiceProvider(
                 serviceProviderId,
@@ -554,8 +638,7 @@ class ScheduleServiceTest {
         List<TimeSlot> timeSlots = Lists.newArrayList(ts1);
         sp.setTimeSlots(timeSlots);
         when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
-        when(timeSlotRepository.findByServiceProviderAndStartAfterAndStartBefore(
-                any(ServiceProvider.class), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(timeSlots);
+        mockTimeSlots(timeSlots);
 
         final Map<LocalDate, List<ScheduleIntervalDto>> actualSchedule = scheduleService.getScheduleForServiceProvider(
                 serviceProviderId,
@@ -571,16 +654,73 @@ class ScheduleServiceTest {
         );
     }
 
+    @Test
+    public void streamScheduleForServiceProviderEmitsSameDaysAsGetSchedule() {
+        final Customer customer = new Customer(10L, "Foo Bar", "foo street", "foo@test.com", "12312341231");
+
+        final TimeSlot ts1 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:00:00"), sp, duration, null);
+        final TimeSlot ts2 = new TimeSlot(LocalDateTime.parse("2021-03-01T08:15:00"), sp, duration, null);
+        final TimeSlot ts3 = new TimeSlot(LocalDateTime.parse("2021-03-03T10:00:00"), sp, duration, null);
+        final TimeSlot ts4 = new TimeSlot(LocalDateTime.parse("2021-03-03T10:15:00"), sp, duration, null);
+        final Reservation r1 = new Reservation(100L, ts3.getStart(), Duration.ofMinutes(30), ServiceType.TIRES_CHANGE,
+                customer, Lists.newArrayList(ts3, ts4));
+        ts3.setReservation(r1);
+        ts4.setReservation(r1);
+
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.of(sp));
+        mockTimeSlots(Lists.newArrayList(ts1, ts2, ts3, ts4));
+
+        final Map<LocalDate, List<ScheduleIntervalDto>> streamedSchedule = new LinkedHashMap<>();
+        scheduleService.streamScheduleForServiceProvider(
+                serviceProviderId, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-04"), streamedSchedule::put);
+
+        assertThat(streamedSchedule).containsExactlyEntriesOf(scheduleService.getScheduleForServiceProvider(
+                serviceProviderId, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-04")));
+        verify(reservationRepository, never()).findAllById(any());
+    }
+
+    @Test
+    public void streamScheduleForServiceProviderThrowsServiceProviderNotFoundException() {
+        when(spRepository.findById(serviceProviderId)).thenReturn(Optional.empty());
+
+        assertThrows(ServiceProviderNotFoundException.class, () -> scheduleService.streamScheduleForServiceProvider(
+                serviceProviderId, LocalDate.parse("2021-03-01"), LocalDate.parse("2021-03-04"), (date, intervals) -> { }));
+        verifyNoInteractions(timeSlotRepository);
+    }
+
     private ReservationDto createReservationDto(final Reservation reservation) {
         return new ReservationDto(
                 reservation.getId(),
+                serviceProviderId,
                 reservation.getStart(),
                 reservation.getDuration(),
                 reservation.getServiceType(),
-                reservation.getCustomer().getName(),
-                reservation.getCustomer().getAddress(),
-                reservation.getCustomer().getEmail(),
-                reservation.getCustomer().getPhoneNumber()
+                new CustomerDto(
+                        reservation.getCustomer().getName(),
+                        reservation.getCustomer().getAddress(),
+                        reservation.getCustomer().getEmail(),
+                        reservation.getCustomer().getPhoneNumber())
         );
     }
+
+    private void mockTimeSlots(final List<TimeSlot> timeSlots) {
+        final List<TimeSlotView> timeSlotViews = timeSlots.stream()
+                .map(ts -> new TimeSlotView(ts.getServiceProvider().getId(), ts.getStart(), ts.getDuration(),
+                        Optional.ofNullable(ts.getReservation()).map(Reservation::getId).orElse(null)))
+                .collect(Collectors.toList());
+        when(timeSlotRepository.findTimeSlotViews(eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(timeSlotViews);
+        when(timeSlotRepository.streamTimeSlotViews(eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> timeSlotViews.stream());
+        when(timeSlotRepository.findTimeSlotViewsStartingBetween(eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(timeSlotViews);
+        when(reservationRepository.findReservationViews(any())).thenAnswer(invocation -> timeSlots.stream()
+                .map(TimeSlot::getReservation)
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(r -> new ReservationView(r.getId(), r.getStart(), r.getDuration(), r.getServiceType(),
+                        r.getCustomer().getName(), r.getCustomer().getAddress(), r.getCustomer().getEmail(),
+                        r.getCustomer().getPhoneNumber()))
+                .collect(Collectors.toList()));
+    }
 }
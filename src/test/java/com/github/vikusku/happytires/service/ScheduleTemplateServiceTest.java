@@ -0,0 +1,62 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.model.ScheduleTemplate;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.model.TemplateInterval;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ScheduleTemplateServiceTest {
+
+    private final long serviceProviderId = 1L;
+    // a Monday
+    private final LocalDate monday = LocalDate.parse("2021-03-01");
+
+    private final ScheduleTemplateService scheduleTemplateService = new ScheduleTemplateService(
+            null, null, null, null, mock(ApplicationEventPublisher.class));
+
+    private final ScheduleTemplate template = new ScheduleTemplate(1L,
+            new ServiceProvider(serviceProviderId, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()),
+            monday, monday.plusDays(14),
+            Lists.newArrayList(new TemplateInterval(DayOfWeek.MONDAY, LocalTime.parse("08:00"), Duration.ofMinutes(60))),
+            Sets.newHashSet(monday.plusDays(7)), null);
+
+    @Test
+    public void templateSlotsAreOverlaidWithStoredReservations() {
+        final TimeSlotView reserved = view("2021-03-01T08:15:00", 5L);
+        final TimeSlotView staleFree = view("2021-03-01T12:00:00", null);
+
+        assertThat(scheduleTemplateService.expandDay(template, monday, Lists.newArrayList(reserved, staleFree))).containsExactly(
+                view("2021-03-01T08:00:00", null),
+                reserved,
+                view("2021-03-01T08:30:00", null),
+                view("2021-03-01T08:45:00", null));
+    }
+
+    @Test
+    public void exceptionAndUncoveredDatesKeepStoredSlots() {
+        final List<TimeSlotView> stored = Lists.newArrayList(view("2021-03-08T12:00:00", null));
+
+        assertThat(scheduleTemplateService.expandDay(template, monday.plusDays(7), stored)).isEqualTo(stored);
+        assertThat(scheduleTemplateService.expandDay(template, monday.plusDays(14), Lists.newArrayList())).isEmpty();
+        assertThat(scheduleTemplateService.expandDay(template, monday.plusDays(1), Lists.newArrayList())).isEmpty();
+    }
+
+    private TimeSlotView view(final String start, final Long reservationId) {
+        return new TimeSlotView(serviceProviderId, LocalDateTime.parse(start), DEFAULT_TIME_SLOT_DURATION, reservationId);
+    }
+}
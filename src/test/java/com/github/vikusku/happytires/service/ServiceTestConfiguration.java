@@ -0,0 +1,30 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.config.MapperConfig;
+import com.github.vikusku.happytires.repository.AvailabilityRangeBatchWriter;
+import com.github.vikusku.happytires.repository.TimeSlotBatchWriter;
+import com.github.vikusku.happytires.util.ModelMapperUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Adds the services to a {@code @DataJpaTest} slice, so database tests take them from the context. Services are
+ * configured through the usual {@code happytires.*} properties; scheduled jobs do not run.
+ */
+@TestConfiguration
+@ComponentScan(basePackageClasses = ReservationService.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({TimeSlotBatchWriter.class, AvailabilityRangeBatchWriter.class, MapperConfig.class, ModelMapperUtil.class})
+public class ServiceTestConfiguration {
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+}
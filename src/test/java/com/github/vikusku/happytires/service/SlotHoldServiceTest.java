@@ -0,0 +1,146 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.ReservableIntervalDto;
+import com.github.vikusku.happytires.dto.SlotHoldDto;
+import com.github.vikusku.happytires.exception.InvalidSlotHoldException;
+import com.github.vikusku.happytires.exception.TimeSlotConflictException;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.vikusku.happytires.util.Constants.DEFAULT_TIME_SLOT_DURATION;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlotHoldServiceTest {
+
+    private final long serviceProviderId = 1L;
+    private final LocalDateTime start = LocalDateTime.parse("2030-03-01T08:00:00");
+    private final Duration duration = Duration.ofMinutes(30);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final ScheduleTemplateService scheduleTemplateService = mock(ScheduleTemplateService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SlotHoldService slotHoldService = new SlotHoldService(scheduleTemplateService, new DurationService(),
+            meterRegistry, Duration.ofMinutes(10), Duration.ofSeconds(1), 8, new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    });
+
+    @BeforeEach
+    void setUp() {
+        when(scheduleTemplateService.findTimeSlots(eq(serviceProviderId), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> freeSlots(invocation.getArgument(1), invocation.getArgument(2)));
+    }
+
+    @Test
+    public void heldSlotsAreHiddenAndRefusedToOthersUntilTheHoldExpires() {
+        final SlotHoldDto hold = slotHoldService.hold(serviceProviderId, start, duration);
+        final long version = slotHoldService.version(serviceProviderId);
+
+        assertThat(slotHoldService.withoutHeld(serviceProviderId, intervals()).get(start.toLocalDate()))
+                .extracting(ReservableIntervalDto::getStart)
+                .containsExactly(start.plusMinutes(30), start.plusMinutes(45));
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start.plusMinutes(15), duration))
+                .isInstanceOf(TimeSlotConflictException.class)
+                .hasMessage("TIME_SLOTS_HELD");
+        assertThatThrownBy(() -> slotHoldService.checkNotHeldByOthers(serviceProviderId, start.plusMinutes(15), duration, null))
+                .hasMessage("TIME_SLOTS_HELD");
+        slotHoldService.checkNotHeldByOthers(serviceProviderId, start, duration, hold.getId());
+        slotHoldService.checkNotHeldByOthers(serviceProviderId + 1, start, duration, null);
+        assertThat(slotHoldService.isHeld(serviceProviderId, start.toLocalDate().atStartOfDay(), start.toLocalDate().plusDays(1).atStartOfDay())).isTrue();
+        assertThat(slotHoldService.isHeld(serviceProviderId, start.plus(duration), start.toLocalDate().plusDays(1).atStartOfDay())).isFalse();
+
+        // longer than the wheel's revolution of 8 ticks
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(9));
+        assertThat(slotHoldService.withoutHeld(serviceProviderId, intervals()).get(start.toLocalDate())).hasSize(2);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(slotHoldService.withoutHeld(serviceProviderId, intervals())).isEqualTo(intervals());
+        assertThat(slotHoldService.version(serviceProviderId)).isGreaterThan(version);
+        assertThat(slotHoldService.release(hold.getId())).isFalse();
+        assertThat(meterRegistry.counter("slot.holds.expired").count()).isEqualTo(1);
+        slotHoldService.hold(serviceProviderId, start.plusMinutes(15), duration);
+    }
+
+    @Test
+    public void convertedAndReleasedHoldsFreeTheirSlots() {
+        final SlotHoldDto hold = slotHoldService.hold(serviceProviderId, start, duration);
+        slotHoldService.convert(hold.getId());
+        final SlotHoldDto nextHold = slotHoldService.hold(serviceProviderId, start, duration);
+
+        assertThat(slotHoldService.release(nextHold.getId())).isTrue();
+        assertThat(slotHoldService.withoutHeld(serviceProviderId, intervals())).isEqualTo(intervals());
+        assertThat(meterRegistry.counter("slot.holds.converted").count()).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(20));
+        slotHoldService.expire();
+        assertThat(meterRegistry.counter("slot.holds.expired").count()).isZero();
+    }
+
+    @Test
+    public void missingAndReservedSlotsCannotBeHeld() {
+        when(scheduleTemplateService.findTimeSlots(serviceProviderId, start, start.plus(duration))).thenReturn(Lists.newArrayList(
+                new TimeSlotView(serviceProviderId, start, DEFAULT_TIME_SLOT_DURATION, null)));
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, duration))
+                .isInstanceOf(TimeSlotConflictException.class)
+                .hasMessage("NO_AVAILABLE_TIME_SLOTS");
+
+        when(scheduleTemplateService.findTimeSlots(serviceProviderId, start, start.plus(duration))).thenReturn(Lists.newArrayList(
+                new TimeSlotView(serviceProviderId, start, DEFAULT_TIME_SLOT_DURATION, null),
+                new TimeSlotView(serviceProviderId, start.plusMinutes(15), DEFAULT_TIME_SLOT_DURATION, 5L)));
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, duration))
+                .isInstanceOf(TimeSlotConflictException.class)
+                .hasMessage("TIME_SLOTS_ALREADY_RESERVED");
+    }
+
+    @Test
+    public void holdDurationMustBeWholeSlotsUpToTheLongestService() {
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, Duration.ZERO))
+                .isInstanceOf(InvalidSlotHoldException.class);
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, Duration.ofMinutes(-15)))
+                .isInstanceOf(InvalidSlotHoldException.class);
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, Duration.ofMinutes(20)))
+                .isInstanceOf(InvalidSlotHoldException.class);
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, Duration.ofMinutes(45)))
+                .isInstanceOf(InvalidSlotHoldException.class);
+        assertThatThrownBy(() -> slotHoldService.hold(serviceProviderId, start, Duration.ofDays(365)))
+                .isInstanceOf(InvalidSlotHoldException.class);
+
+        assertThat(slotHoldService.hold(serviceProviderId, start, Duration.ofMinutes(30)).getDuration()).isEqualTo(Duration.ofMinutes(30));
+    }
+
+    private List<TimeSlotView> freeSlots(final LocalDateTime from, final LocalDateTime until) {
+        final List<TimeSlotView> timeSlots = Lists.newArrayList();
+        for (LocalDateTime slotStart = from; slotStart.isBefore(until); slotStart = slotStart.plus(DEFAULT_TIME_SLOT_DURATION)) {
+            timeSlots.add(new TimeSlotView(serviceProviderId, slotStart, DEFAULT_TIME_SLOT_DURATION, null));
+        }
+        return timeSlots;
+    }
+
+    private Map<LocalDate, List<ReservableIntervalDto>> intervals() {
+        return ImmutableMap.of(start.toLocalDate(), Lists.newArrayList(
+                new ReservableIntervalDto(start, duration, serviceProviderId),
+                new ReservableIntervalDto(start.plusMinutes(15), duration, serviceProviderId),
+                new ReservableIntervalDto(start.plusMinutes(30), duration, serviceProviderId),
+                new ReservableIntervalDto(start.plusMinutes(45), duration, serviceProviderId)));
+    }
+}
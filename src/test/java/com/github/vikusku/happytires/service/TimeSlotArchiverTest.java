@@ -0,0 +1,116 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.DaySummaryDto;
+import com.github.vikusku.happytires.model.Customer;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.repository.ReservationRepository;
+import com.github.vikusku.happytires.repository.TimeSlotFixture;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.github.vikusku.happytires.repository.TimeSlotView;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@DataJpaTest(properties = "happytires.time-slot-archiver.batch-size=1")
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+class TimeSlotArchiverTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private TimeSlotArchiver timeSlotArchiver;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate from = LocalDate.parse("2021-03-01");
+    private final LocalDate until = LocalDate.parse("2021-03-08");
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+        final Customer customer = entityManager.persist(
+                new Customer(0L, "Foo Customer", "foo street", "foo@test.com", "1231231234"));
+        new TimeSlotFixture(jdbcTemplate, reservationRepository, sp).randomSlots(from, until, customer);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void timeSlotArchiverCompactsFreeSlotsOfPastDaysIntoSummaries() {
+        final LocalDate archivedUntil = from.plusDays(2);
+        final List<TimeSlotView> before = timeSlotRepository.findTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+
+        final long archived = timeSlotArchiver.archive(archivedUntil);
+
+        assertThat(archived).isEqualTo(before.stream()
+                .filter(ts -> !ts.isReserved() && ts.getStart().toLocalDate().isBefore(archivedUntil))
+                .count());
+        assertThat(timeSlotArchiver.archive(archivedUntil)).isZero();
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX)))
+                .containsExactlyElementsOf(before.stream()
+                        .filter(ts -> ts.isReserved() || !ts.getStart().toLocalDate().isBefore(archivedUntil))
+                        .collect(Collectors.toList()));
+        assertThat(timeSlotArchiver.findDaySummaries(sp.getId(), from, until))
+                .extracting(DaySummaryDto::getDate, DaySummaryDto::getFreeTimeSlots, DaySummaryDto::getReservedTimeSlots)
+                .containsExactly(
+                        tuple(from, freeCount(before, from), reservedCount(before, from)),
+                        tuple(from.plusDays(1), freeCount(before, from.plusDays(1)), reservedCount(before, from.plusDays(1))));
+    }
+
+    @Test
+    public void fullyBookedDaysAreSummarizedToo() {
+        final LocalDate fullyBooked = from.plusDays(1);
+        jdbcTemplate.update("delete from time_slot where reservation_id is null and start >= ? and start < ?",
+                fullyBooked.atStartOfDay(), fullyBooked.plusDays(1).atStartOfDay());
+        final List<TimeSlotView> before = timeSlotRepository.findTimeSlotViews(
+                sp.getId(), LocalDateTime.of(from, LocalTime.MIN), LocalDateTime.of(until, LocalTime.MAX));
+
+        timeSlotArchiver.archive(from.plusDays(3));
+
+        assertThat(reservedCount(before, fullyBooked)).isPositive();
+        assertThat(timeSlotArchiver.findDaySummaries(sp.getId(), from, until))
+                .extracting(DaySummaryDto::getDate, DaySummaryDto::getFreeTimeSlots, DaySummaryDto::getReservedTimeSlots)
+                .containsExactly(
+                        tuple(from, freeCount(before, from), reservedCount(before, from)),
+                        tuple(fullyBooked, 0L, reservedCount(before, fullyBooked)),
+                        tuple(from.plusDays(2), freeCount(before, from.plusDays(2)), reservedCount(before, from.plusDays(2))));
+    }
+
+    private long freeCount(final List<TimeSlotView> timeSlots, final LocalDate date) {
+        return timeSlots.stream().filter(ts -> !ts.isReserved() && ts.getStart().toLocalDate().equals(date)).count();
+    }
+
+    private long reservedCount(final List<TimeSlotView> timeSlots, final LocalDate date) {
+        return timeSlots.stream().filter(ts -> ts.isReserved() && ts.getStart().toLocalDate().equals(date)).count();
+    }
+}
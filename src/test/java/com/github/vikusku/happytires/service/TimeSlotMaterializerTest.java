@@ -0,0 +1,128 @@
+package com.github.vikusku.happytires.service;
+
+import com.github.vikusku.happytires.dto.AvailabilityIntervalDto;
+import com.github.vikusku.happytires.dto.ScheduleTemplateDto;
+import com.github.vikusku.happytires.event.AvailabilityChangedEvent;
+import com.github.vikusku.happytires.event.ScheduleTemplateChangedEvent;
+import com.github.vikusku.happytires.model.ServiceProvider;
+import com.github.vikusku.happytires.repository.ScheduleTemplateRepository;
+import com.github.vikusku.happytires.repository.TimeSlotRepository;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+
+@DataJpaTest(properties = {"happytires.time-slot-materializer.horizon-days=5", "happytires.time-slot-materializer.batch-days=2",
+        "happytires.time-slot-materializer.days-per-second=1000"})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ServiceTestConfiguration.class)
+@RecordApplicationEvents
+class TimeSlotMaterializerTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TimeSlotRepository timeSlotRepository;
+
+    @Autowired
+    private ScheduleTemplateRepository scheduleTemplateRepository;
+
+    @SpyBean
+    private ScheduleTemplateService scheduleTemplateService;
+
+    @Autowired
+    private TimeSlotMaterializer timeSlotMaterializer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    private ServiceProvider sp;
+
+    @BeforeEach
+    void setUp() {
+        sp = entityManager.persist(new ServiceProvider(0L, "Foo Bar", "foo.bar@test.com", "12341231234", Lists.newArrayList()));
+    }
+
+    @Test
+    public void failingTemplateDoesNotStopTheOthers() {
+        final LocalDate today = LocalDate.now();
+        final ServiceProvider failing = entityManager.persist(
+                new ServiceProvider(0L, "Failing", "failing@test.com", "12341231234", Lists.newArrayList()));
+        scheduleTemplateService.saveTemplate(sp.getId(), dailyTemplate(today));
+        scheduleTemplateService.saveTemplate(failing.getId(), dailyTemplate(today));
+        doThrow(new IllegalStateException("Materialization failed"))
+                .when(scheduleTemplateService).materialize(eq(failing.getId()), any(LocalDate.class));
+        final double failures = meterRegistry.counter("time.slot.materializer.failures").count();
+
+        timeSlotMaterializer.materialize(today);
+
+        assertThat(meterRegistry.counter("time.slot.materializer.failures").count()).isEqualTo(failures + 1);
+        assertThat(scheduleTemplateRepository.findByServiceProviderId(sp.getId()).get().getMaterializedUntil())
+                .isEqualTo(today.plusDays(5));
+        assertThat(scheduleTemplateRepository.findByServiceProviderId(failing.getId()).get().getMaterializedUntil()).isNull();
+    }
+
+    @Test
+    public void timeSlotMaterializerStoresTemplateDaysUntilHorizon() {
+        final LocalDate today = LocalDate.now();
+        final LocalDate horizon = today.plusDays(5);
+        final ScheduleTemplateDto template = dailyTemplate(today);
+        template.getExceptions().add(today.plusDays(1));
+        scheduleTemplateService.saveTemplate(sp.getId(), template);
+
+        timeSlotMaterializer.materialize(today);
+        timeSlotMaterializer.materialize(today);
+
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), today.atStartOfDay(), horizon.atStartOfDay()))
+                .hasSize(16)
+                .noneMatch(ts -> ts.getStart().toLocalDate().equals(today.plusDays(1)));
+        assertThat(meterRegistry.counter("time.slot.materializer.time.slots").count()).isEqualTo(16);
+        assertThat(meterRegistry.counter("time.slot.materializer.days").count()).isEqualTo(5);
+        assertThat(scheduleTemplateRepository.findByServiceProviderId(sp.getId()).get().getMaterializedUntil()).isEqualTo(horizon);
+
+        applicationEvents.clear();
+        scheduleTemplateService.deleteTemplate(sp.getId());
+
+        assertThat(timeSlotRepository.findTimeSlotViews(sp.getId(), today.atStartOfDay(), horizon.atStartOfDay())).isEmpty();
+        assertThat(applicationEvents.stream(AvailabilityChangedEvent.class))
+                .flatExtracting(AvailabilityChangedEvent::getDates)
+                .containsExactlyInAnyOrder(today, today.plusDays(2), today.plusDays(3), today.plusDays(4));
+        assertThat(applicationEvents.stream(ScheduleTemplateChangedEvent.class)).hasSize(1);
+    }
+
+    private ScheduleTemplateDto dailyTemplate(final LocalDate validFrom) {
+        final Map<DayOfWeek, List<AvailabilityIntervalDto>> weeklyIntervals = Maps.newHashMap();
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            weeklyIntervals.put(dayOfWeek, Lists.newArrayList(new AvailabilityIntervalDto(LocalTime.parse("06:00"), Duration.ofMinutes(60))));
+        }
+        return new ScheduleTemplateDto(validFrom, null, weeklyIntervals, Sets.newHashSet());
+    }
+}